@@ -0,0 +1,56 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json"; //$NON-NLS-1$
+
+	private BenchmarkRunner() {
+
+	}
+
+	// Accepts the usual JMH arguments, the results are written as JSON unless another format (-rf) or file (-rff) is given
+	public static void main(String[] args) throws Exception {
+
+		System.setProperty("java.awt.headless", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+		Options options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.resultFormat(commandLineOptions.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(commandLineOptions.getResult().orElse(DEFAULT_RESULT_FILE))
+				.build();
+
+		new Runner(options).run();
+
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.benchmarks;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.table.TableCellRenderer;
+
+import org.glasspath.common.swing.table.BooleanCellRenderer;
+import org.glasspath.common.swing.table.CurrencyCellRenderer;
+import org.glasspath.common.swing.table.DateCellRenderer;
+import org.glasspath.common.swing.table.DecimalFormatCellRenderer;
+import org.glasspath.common.swing.table.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CellRendererBenchmark {
+
+	public static final int ROW_COUNT = 10000;
+	public static final int CELL_WIDTH = 150;
+	public static final int CELL_HEIGHT = 22;
+
+	@Param({ "date", "decimal", "currency", "boolean" })
+	public String renderer;
+
+	private Table table;
+	private TableCellRenderer cellRenderer;
+	private int column;
+	private int row = 0;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	@Setup
+	public void setup() {
+
+		table = new Table(new SyntheticTableModel(ROW_COUNT));
+
+		switch (renderer) {
+		case "date": //$NON-NLS-1$
+			cellRenderer = new DateCellRenderer();
+			column = SyntheticTableModel.DATE_COLUMN;
+			break;
+		case "decimal": //$NON-NLS-1$
+			cellRenderer = new DecimalFormatCellRenderer();
+			column = SyntheticTableModel.RATIO_COLUMN;
+			break;
+		case "currency": //$NON-NLS-1$
+			cellRenderer = new CurrencyCellRenderer();
+			column = SyntheticTableModel.AMOUNT_COLUMN;
+			break;
+		case "boolean": //$NON-NLS-1$
+			cellRenderer = new BooleanCellRenderer();
+			column = SyntheticTableModel.ACTIVE_COLUMN;
+			break;
+		default:
+			throw new IllegalArgumentException(renderer);
+		}
+
+		image = new BufferedImage(CELL_WIDTH, CELL_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		graphics = image.createGraphics();
+
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	// The rows are cycled, so both the value caches of the renderers and the formatting are part of the measurement
+	@Benchmark
+	public Component getRendererComponent() {
+		row = (row + 1) % ROW_COUNT;
+		return cellRenderer.getTableCellRendererComponent(table, table.getValueAt(row, column), false, false, row, column);
+	}
+
+	@Benchmark
+	public int paintCell() {
+
+		row = (row + 1) % ROW_COUNT;
+
+		Component component = cellRenderer.getTableCellRendererComponent(table, table.getValueAt(row, column), false, false, row, column);
+		component.setBounds(0, 0, CELL_WIDTH, CELL_HEIGHT);
+		component.paint(graphics);
+
+		return image.getRGB(CELL_WIDTH / 2, CELL_HEIGHT / 2);
+
+	}
+
+}
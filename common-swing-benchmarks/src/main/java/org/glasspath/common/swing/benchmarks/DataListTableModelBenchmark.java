@@ -0,0 +1,123 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.glasspath.common.swing.table.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DataListTableModelBenchmark {
+
+	public static final int ROW_COUNT = 100000;
+
+	@Param({ "1000", "10000", "100000" })
+	public int updateCount;
+
+	@Param({ "false", "true" })
+	public boolean coalesced;
+
+	private SyntheticTableModel model;
+	private double value = 0.0;
+
+	// The model is shown in a table, so the updates go through the sorter and the table listeners
+	@Setup
+	public void setup() throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				model = new SyntheticTableModel(ROW_COUNT);
+				new Table(model);
+				model.setCellUpdatesCoalesced(coalesced);
+			}
+		});
+	}
+
+	// The updates are done on the event dispatch thread, where the coalesced updates are flushed
+	@Benchmark
+	public double setValues() throws Exception {
+
+		value++;
+
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+
+				for (int i = 0; i < updateCount; i++) {
+					model.setValueAt(value, i, SyntheticTableModel.AMOUNT_COLUMN);
+				}
+
+				model.flushCellUpdates();
+
+			}
+		});
+
+		return value;
+
+	}
+
+	@Benchmark
+	public double setRowValues() throws Exception {
+
+		value++;
+
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+
+				for (int i = 0; i < updateCount; i++) {
+					model.setValueAt(value, i, SyntheticTableModel.AMOUNT_COLUMN);
+					model.setValueAt(value, i, SyntheticTableModel.RATIO_COLUMN);
+				}
+
+				model.flushCellUpdates();
+
+			}
+		});
+
+		return value;
+
+	}
+
+}
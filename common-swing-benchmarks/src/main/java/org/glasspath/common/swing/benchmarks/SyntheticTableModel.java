@@ -0,0 +1,154 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.benchmarks;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.glasspath.common.swing.table.DataListTableModel;
+
+public class SyntheticTableModel extends DataListTableModel {
+
+	public static final int NAME_COLUMN = 0;
+	public static final int DATE_COLUMN = 1;
+	public static final int AMOUNT_COLUMN = 2;
+	public static final int RATIO_COLUMN = 3;
+	public static final int ACTIVE_COLUMN = 4;
+	public static final int COLUMN_COUNT = 5;
+
+	private static final String[] WORDS = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliett" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+	private static final long START_TIME = 1640995200000L; // 2022-01-01
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	private final Object[][] rows;
+
+	// The values are generated with a fixed seed, so every run uses the same data
+	public SyntheticTableModel(int rowCount) {
+
+		rows = new Object[rowCount][];
+
+		Random random = new Random(rowCount);
+		for (int i = 0; i < rowCount; i++) {
+
+			Object[] row = new Object[COLUMN_COUNT];
+			row[NAME_COLUMN] = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i; //$NON-NLS-1$ //$NON-NLS-2$
+			row[DATE_COLUMN] = new Date(START_TIME + random.nextInt(3650) * DAY);
+			row[AMOUNT_COLUMN] = Math.round(random.nextDouble() * 1000000.0) / 100.0;
+			row[RATIO_COLUMN] = random.nextDouble();
+			row[ACTIVE_COLUMN] = random.nextBoolean();
+
+			rows[i] = row;
+
+		}
+
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.length;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_COUNT;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		switch (column) {
+		case NAME_COLUMN:
+			return "Name"; //$NON-NLS-1$
+		case DATE_COLUMN:
+			return "Date"; //$NON-NLS-1$
+		case AMOUNT_COLUMN:
+			return "Amount"; //$NON-NLS-1$
+		case RATIO_COLUMN:
+			return "Ratio"; //$NON-NLS-1$
+		case ACTIVE_COLUMN:
+			return "Active"; //$NON-NLS-1$
+		default:
+			return ""; //$NON-NLS-1$
+		}
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column) {
+		switch (column) {
+		case NAME_COLUMN:
+			return String.class;
+		case DATE_COLUMN:
+			return Date.class;
+		case AMOUNT_COLUMN:
+		case RATIO_COLUMN:
+			return Double.class;
+		case ACTIVE_COLUMN:
+			return Boolean.class;
+		default:
+			return Object.class;
+		}
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int column) {
+		return true;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		return rows[row][column];
+	}
+
+	@Override
+	public void setValueAt(Object value, int row, int column) {
+		super.setValueAt(value, row, column);
+		rows[row][column] = value;
+		fireTableCellUpdated(row, column);
+	}
+
+	@Override
+	public void reorder(int fromIndex, int toIndex) {
+
+		Object[] row = rows[fromIndex];
+		if (fromIndex < toIndex) {
+			System.arraycopy(rows, fromIndex + 1, rows, fromIndex, toIndex - fromIndex - 1);
+			rows[toIndex - 1] = row;
+		} else {
+			System.arraycopy(rows, toIndex, rows, toIndex + 1, fromIndex - toIndex);
+			rows[toIndex] = row;
+		}
+
+		fireTableRowsUpdated(Math.min(fromIndex, toIndex), Math.max(fromIndex, toIndex));
+
+	}
+
+	@Override
+	public void setSomethingChanged(boolean somethingChanged) {
+
+	}
+
+	@Override
+	public void dispose() {
+
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JScrollPane;
+
+import org.glasspath.common.swing.table.Table;
+import org.glasspath.common.swing.table.ui.TableUI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx4g" })
+public class TablePaintBenchmark {
+
+	public static final int WIDTH = 1200;
+	public static final int HEIGHT = 800;
+
+	@Param({ "10000", "1000000" })
+	public int rowCount;
+
+	@Param({ "true", "false" })
+	public boolean striped;
+
+	private JScrollPane scrollPane;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	// The viewport is scrolled to the middle of the table, the whole scroll pane (including the striped
+	// viewport border) is painted into an image, like a repaint of a visible table
+	@Setup
+	public void setup() {
+
+		Table table = new Table(new SyntheticTableModel(rowCount));
+		table.setUI(new TableUI(striped));
+
+		scrollPane = new JScrollPane(table);
+		scrollPane.setSize(WIDTH, HEIGHT);
+		scrollPane.doLayout();
+		scrollPane.getViewport().doLayout();
+		scrollPane.getViewport().setViewPosition(new Point(0, (rowCount / 2) * table.getRowHeight()));
+
+		image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		graphics = image.createGraphics();
+
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public int paint() {
+		graphics.setClip(0, 0, WIDTH, HEIGHT);
+		scrollPane.paint(graphics);
+		return image.getRGB(WIDTH / 2, HEIGHT / 2);
+	}
+
+}
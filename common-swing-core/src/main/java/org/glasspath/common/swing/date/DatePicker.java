@@ -174,6 +174,10 @@ public class DatePicker extends JXDatePicker {
 		configureLinkPanel(this); // TODO: Setting time-zone causes issues with link panel background
 	}
 
+	public void setFormatter(LocalDateFormatter formatter) {
+		setFormats(formatter.toDateFormat());
+	}
+
 	public void setFlaggedDates(List<Date> flaggedDates) {
 		getMonthView().setFlaggedDates(flaggedDates.toArray(new Date[0]));
 	}
@@ -0,0 +1,453 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.date;
+
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.FormatStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalField;
+import java.time.temporal.WeekFields;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.glasspath.common.format.FormatUtils;
+
+// Immutable and thread-safe replacement for the (day/month/year) java.text.DateFormat instances,
+// the formatted text is cached per epoch-day so every distinct day is only formatted once. Formats
+// which can't be expressed as a DateTimeFormatter (see of()) use a copy of the DateFormat per thread
+public class LocalDateFormatter {
+
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+	public static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+	private static volatile LocalDateFormatter defaultFormatter = null;
+
+	private final String pattern;
+	private final Locale locale;
+	private final ZoneId zoneId;
+	private final DateTimeFormatter formatter;
+	private final DateTimeFormatter parser;
+	private final DateFormat fallbackFormat;
+	private final ThreadLocal<DateFormat> fallbackFormats;
+	private final long fixedOffsetMillis;
+	private final boolean fixedOffset;
+	private final AtomicReferenceArray<Entry> cache;
+	private final int mask;
+
+	private String sourcePattern = null;
+	private TimeZone sourceTimeZone = null;
+
+	public LocalDateFormatter(String pattern, Locale locale, ZoneId zoneId) {
+		this(pattern, locale, zoneId, DEFAULT_CACHE_SIZE);
+	}
+
+	public LocalDateFormatter(String pattern, Locale locale, ZoneId zoneId, int cacheSize) {
+		this(pattern, locale, zoneId, cacheSize, pattern != null ? DateTimeFormatter.ofPattern(pattern, locale) : DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(locale), null);
+	}
+
+	private LocalDateFormatter(String pattern, Locale locale, ZoneId zoneId, int cacheSize, DateTimeFormatter formatter, DateFormat fallbackFormat) {
+
+		this.pattern = pattern;
+		this.locale = locale;
+		this.zoneId = zoneId;
+		this.formatter = formatter;
+
+		if (formatter != null) {
+			parser = new DateTimeFormatterBuilder().parseCaseInsensitive().parseLenient().append(formatter).toFormatter(locale);
+			this.fallbackFormat = null;
+			fallbackFormats = null;
+		} else {
+
+			parser = null;
+
+			// DateFormat isn't thread-safe, every thread formats with it's own copy
+			this.fallbackFormat = (DateFormat) fallbackFormat.clone();
+			this.fallbackFormat.setTimeZone(TimeZone.getTimeZone(zoneId));
+			fallbackFormats = new ThreadLocal<DateFormat>() {
+
+				@Override
+				protected DateFormat initialValue() {
+					return (DateFormat) LocalDateFormatter.this.fallbackFormat.clone();
+				}
+			};
+
+		}
+
+		if (zoneId.getRules().isFixedOffset()) {
+			fixedOffset = true;
+			fixedOffsetMillis = zoneId.getRules().getOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+		} else {
+			fixedOffset = false;
+			fixedOffsetMillis = 0;
+		}
+
+		int size = Integer.highestOneBit(Math.max(cacheSize, 16) - 1) << 1;
+		cache = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+
+	}
+
+	public static LocalDateFormatter getDefault() {
+
+		// The default formatter mirrors FormatUtils.DATE_FORMAT_DAY_MONTH_YEAR, it is re-created
+		// when that format is replaced, when it's time-zone changes or when the locale changes
+		DateFormat dateFormat = FormatUtils.DATE_FORMAT_DAY_MONTH_YEAR;
+		LocalDateFormatter formatter = defaultFormatter;
+		if (formatter == null || !formatter.matches(dateFormat)) {
+			formatter = of(dateFormat);
+			defaultFormatter = formatter;
+		}
+
+		return formatter;
+
+	}
+
+	// The pattern of a SimpleDateFormat is translated (the pattern letters of SimpleDateFormat and DateTimeFormatter
+	// differ), patterns with time fields or letters which can't be translated and other DateFormat implementations
+	// are formatted and parsed with a copy of the DateFormat per thread (without the epoch-day cache)
+	public static LocalDateFormatter of(DateFormat dateFormat) {
+
+		Locale locale = Locale.getDefault();
+		TimeZone timeZone = dateFormat.getTimeZone();
+
+		String pattern = null;
+		DateTimeFormatter formatter = null;
+		if (dateFormat instanceof SimpleDateFormat) {
+			pattern = ((SimpleDateFormat) dateFormat).toPattern();
+			formatter = translatePattern(pattern, locale, ((SimpleDateFormat) dateFormat).get2DigitYearStart().toInstant().atZone(timeZone.toZoneId()).toLocalDate());
+		}
+
+		LocalDateFormatter localDateFormatter = new LocalDateFormatter(null, locale, timeZone.toZoneId(), DEFAULT_CACHE_SIZE, formatter, formatter == null ? dateFormat : null);
+		localDateFormatter.sourcePattern = pattern;
+		localDateFormatter.sourceTimeZone = timeZone;
+
+		return localDateFormatter;
+
+	}
+
+	// Returns null if the pattern contains time fields or letters which can't be translated, the letters which
+	// differ are translated: u is the day number of the week (not the year), yy and YY are parsed relative to the
+	// two digit year start of the SimpleDateFormat (not 2000) and 4 or more letters of text fields are the full text
+	private static DateTimeFormatter translatePattern(String pattern, Locale locale, LocalDate twoDigitYearStart) {
+
+		DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+		WeekFields weekFields = WeekFields.of(locale);
+
+		int i = 0;
+		while (i < pattern.length()) {
+
+			char c = pattern.charAt(i);
+
+			if (c == '\'') {
+
+				// Quoted text, two quotes are a quote (also inside quoted text)
+				StringBuilder text = new StringBuilder();
+				if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+					text.append('\'');
+					i += 2;
+				} else {
+					i++;
+					while (i < pattern.length()) {
+						if (pattern.charAt(i) != '\'') {
+							text.append(pattern.charAt(i++));
+						} else if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+							text.append('\'');
+							i += 2;
+						} else {
+							i++;
+							break;
+						}
+					}
+				}
+				builder.appendLiteral(text.toString());
+
+			} else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+
+				int count = 1;
+				while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+					count++;
+				}
+				i += count;
+
+				switch (c) {
+				case 'G':
+				case 'E':
+					builder.appendPattern(repeat(c, count >= 4 ? 4 : 3));
+					break;
+				case 'M':
+				case 'L':
+					if (count >= 3) {
+						builder.appendPattern(repeat(c, count >= 4 ? 4 : 3));
+					} else {
+						appendNumber(builder, ChronoField.MONTH_OF_YEAR, count);
+					}
+					break;
+				case 'y':
+					if (count == 2) {
+						builder.appendValueReduced(ChronoField.YEAR_OF_ERA, 2, 2, twoDigitYearStart);
+					} else {
+						builder.appendPattern(repeat(c, count));
+					}
+					break;
+				case 'Y':
+					if (count == 2) {
+						builder.appendValueReduced(weekFields.weekBasedYear(), 2, 2, twoDigitYearStart);
+					} else {
+						builder.appendPattern(repeat(c, count));
+					}
+					break;
+				case 'd':
+					appendNumber(builder, ChronoField.DAY_OF_MONTH, count);
+					break;
+				case 'D':
+					appendNumber(builder, ChronoField.DAY_OF_YEAR, count);
+					break;
+				case 'u':
+					appendNumber(builder, ChronoField.DAY_OF_WEEK, count);
+					break;
+				case 'w':
+					appendNumber(builder, weekFields.weekOfWeekBasedYear(), count);
+					break;
+				case 'W':
+					appendNumber(builder, weekFields.weekOfMonth(), count);
+					break;
+				default:
+					return null;
+				}
+
+			} else {
+				builder.appendLiteral(c);
+				i++;
+			}
+
+		}
+
+		try {
+			DateTimeFormatter formatter = builder.toFormatter(locale);
+			formatter.format(LocalDate.now());
+			return formatter;
+		} catch (IllegalArgumentException | DateTimeException e) {
+			return null;
+		}
+
+	}
+
+	// Like SimpleDateFormat one letter is the minimum number of digits, more letters are padded with zeros
+	private static void appendNumber(DateTimeFormatterBuilder builder, TemporalField field, int count) {
+		if (count == 1) {
+			builder.appendValue(field);
+		} else {
+			builder.appendValue(field, count);
+		}
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	private boolean matches(DateFormat dateFormat) {
+
+		// Only identity checks here, this method is called for every formatted cell
+		if (locale != Locale.getDefault() || sourceTimeZone != dateFormat.getTimeZone()) {
+			return false;
+		} else if (dateFormat instanceof SimpleDateFormat) {
+			return sourcePattern == ((SimpleDateFormat) dateFormat).toPattern();
+		} else {
+			return sourcePattern == null;
+		}
+
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	public ZoneId getZoneId() {
+		return zoneId;
+	}
+
+	// Returns null if the formatter uses a copy of a DateFormat (see of())
+	public DateTimeFormatter getFormatter() {
+		return formatter;
+	}
+
+	public LocalDateFormatter withZone(ZoneId zoneId) {
+		return this.zoneId.equals(zoneId) ? this : new LocalDateFormatter(pattern, locale, zoneId, cache.length(), formatter, fallbackFormat);
+	}
+
+	public long toEpochDay(long millis) {
+		if (fixedOffset) {
+			return Math.floorDiv(millis + fixedOffsetMillis, MILLIS_PER_DAY);
+		} else {
+			return Instant.ofEpochMilli(millis).atZone(zoneId).toLocalDate().toEpochDay();
+		}
+	}
+
+	public long toMillis(long epochDay) {
+		if (fixedOffset) {
+			return epochDay * MILLIS_PER_DAY - fixedOffsetMillis;
+		} else {
+			return LocalDate.ofEpochDay(epochDay).atStartOfDay(zoneId).toInstant().toEpochMilli();
+		}
+	}
+
+	public String format(Date date) {
+		if (date == null) {
+			return ""; //$NON-NLS-1$
+		} else if (fallbackFormats != null) {
+			return fallbackFormats.get().format(date);
+		} else {
+			return formatEpochDay(toEpochDay(date.getTime()));
+		}
+	}
+
+	public String format(long millis) {
+		return fallbackFormats != null ? fallbackFormats.get().format(new Date(millis)) : formatEpochDay(toEpochDay(millis));
+	}
+
+	public String formatEpochDay(long epochDay) {
+
+		if (fallbackFormats != null) {
+			return fallbackFormats.get().format(new Date(toMillis(epochDay)));
+		}
+
+		int index = (int) (epochDay ^ (epochDay >>> 32)) & mask;
+
+		Entry entry = cache.get(index);
+		if (entry == null || entry.epochDay != epochDay) {
+			entry = new Entry(epochDay, formatter.format(LocalDate.ofEpochDay(epochDay)));
+			cache.set(index, entry);
+		}
+
+		return entry.text;
+
+	}
+
+	public Date parse(String text) {
+		ParsePosition position = new ParsePosition(0);
+		Date date = parse(text, position);
+		return position.getErrorIndex() < 0 ? date : null;
+	}
+
+	public Date parse(String text, ParsePosition position) {
+
+		if (fallbackFormats != null) {
+			return fallbackFormats.get().parse(text, position);
+		}
+
+		try {
+
+			TemporalAccessor temporal = parser.parse(text, position);
+			return new Date(toMillis(LocalDate.from(temporal).toEpochDay()));
+
+		} catch (DateTimeException e) {
+			if (position.getErrorIndex() < 0) {
+				position.setErrorIndex(position.getIndex());
+			}
+			return null;
+		}
+
+	}
+
+	public DateFormat toDateFormat() {
+		return new DateFormatAdapter(this);
+	}
+
+	private static class Entry {
+
+		private final long epochDay;
+		private final String text;
+
+		private Entry(long epochDay, String text) {
+			this.epochDay = epochDay;
+			this.text = text;
+		}
+
+	}
+
+	// Components like JXDatePicker only accept java.text.DateFormat instances, this
+	// adapter delegates formatting and parsing to the (cached) LocalDateFormatter
+	public static class DateFormatAdapter extends DateFormat {
+
+		private LocalDateFormatter formatter;
+
+		public DateFormatAdapter(LocalDateFormatter formatter) {
+			this.formatter = formatter;
+			this.calendar = Calendar.getInstance(TimeZone.getTimeZone(formatter.getZoneId()), formatter.getLocale());
+			this.numberFormat = NumberFormat.getIntegerInstance(formatter.getLocale());
+		}
+
+		public LocalDateFormatter getFormatter() {
+			return formatter;
+		}
+
+		@Override
+		public StringBuffer format(Date date, StringBuffer toAppendTo, FieldPosition fieldPosition) {
+			return toAppendTo.append(formatter.format(date));
+		}
+
+		@Override
+		public Date parse(String source, ParsePosition pos) {
+			return formatter.parse(source, pos);
+		}
+
+		@Override
+		public void setTimeZone(TimeZone zone) {
+			super.setTimeZone(zone);
+			formatter = formatter.withZone(zone.toZoneId());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof DateFormatAdapter && ((DateFormatAdapter) obj).formatter == formatter;
+		}
+
+		@Override
+		public int hashCode() {
+			return formatter.hashCode();
+		}
+
+	}
+
+}
@@ -41,6 +41,7 @@ import javax.swing.JToolBar;
 
 import org.glasspath.common.swing.color.ColorUtils;
 import org.glasspath.common.swing.date.DatePicker;
+import org.glasspath.common.swing.date.LocalDateFormatter;
 
 public class DateFilterTools {
 
@@ -98,6 +99,8 @@ public class DateFilterTools {
 			}
 		};
 
+		setFormatter(LocalDateFormatter.getDefault());
+
 		datePickersPanel = new DatePickersPanel();
 
 		// TODO
@@ -133,6 +136,11 @@ public class DateFilterTools {
 		secondDatePicker.setTimeZone(timeZone);
 	}
 
+	public void setFormatter(LocalDateFormatter formatter) {
+		firstDatePicker.setFormatter(formatter);
+		secondDatePicker.setFormatter(formatter);
+	}
+
 	public void setFormats(DateFormat... formats) {
 		firstDatePicker.setFormats(formats);
 		secondDatePicker.setFormats(formats);
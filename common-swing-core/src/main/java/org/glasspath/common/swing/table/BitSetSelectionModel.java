@@ -0,0 +1,585 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+import javax.swing.ListSelectionModel;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+
+// Selection model with the same behavior as DefaultListSelectionModel, but ranges are set, cleared
+// and shifted on whole words (or runs) instead of per index, and the selection can be counted
+// and iterated without creating arrays of all selected indices
+public class BitSetSelectionModel implements ListSelectionModel {
+
+	private static final int MIN = -1;
+	private static final int MAX = Integer.MAX_VALUE;
+
+	private final EventListenerList listenerList = new EventListenerList();
+	private final BitSet value = new BitSet();
+	private int selectionMode = MULTIPLE_INTERVAL_SELECTION;
+	private int minIndex = MAX;
+	private int maxIndex = MIN;
+	private int anchorIndex = -1;
+	private int leadIndex = -1;
+	private int firstAdjustedIndex = MAX;
+	private int lastAdjustedIndex = MIN;
+	private int firstChangedIndex = MAX;
+	private int lastChangedIndex = MIN;
+	private boolean isAdjusting = false;
+	private boolean leadAnchorNotificationEnabled = true;
+
+	public BitSetSelectionModel() {
+
+	}
+
+	@Override
+	public int getMinSelectionIndex() {
+		return isSelectionEmpty() ? -1 : minIndex;
+	}
+
+	@Override
+	public int getMaxSelectionIndex() {
+		return maxIndex;
+	}
+
+	@Override
+	public boolean getValueIsAdjusting() {
+		return isAdjusting;
+	}
+
+	@Override
+	public int getSelectionMode() {
+		return selectionMode;
+	}
+
+	@Override
+	public void setSelectionMode(int selectionMode) {
+
+		int oldMode = this.selectionMode;
+
+		switch (selectionMode) {
+		case SINGLE_SELECTION:
+		case SINGLE_INTERVAL_SELECTION:
+		case MULTIPLE_INTERVAL_SELECTION:
+			this.selectionMode = selectionMode;
+			break;
+		default:
+			throw new IllegalArgumentException("invalid selectionMode"); //$NON-NLS-1$
+		}
+
+		// Like DefaultListSelectionModel, reduce the current selection when it doesn't fit the new mode
+		if (oldMode > this.selectionMode && !isSelectionEmpty()) {
+			if (this.selectionMode == SINGLE_SELECTION) {
+				setSelectionInterval(leadIndex >= 0 ? leadIndex : minIndex, leadIndex >= 0 ? leadIndex : minIndex);
+			} else if (value.nextClearBit(minIndex) <= maxIndex) {
+				int first = anchorIndex >= 0 ? anchorIndex : minIndex;
+				setSelectionInterval(first, value.get(first) ? value.nextClearBit(first) - 1 : first);
+			}
+		}
+
+	}
+
+	@Override
+	public boolean isSelectedIndex(int index) {
+		return index < minIndex || index > maxIndex ? false : value.get(index);
+	}
+
+	@Override
+	public boolean isSelectionEmpty() {
+		return minIndex > maxIndex;
+	}
+
+	public int getSelectedItemsCount() {
+		return value.cardinality();
+	}
+
+	public int[] getSelectedIndices() {
+
+		int[] indices = new int[value.cardinality()];
+
+		int i = 0;
+		for (int index = value.nextSetBit(0); index >= 0; index = value.nextSetBit(index + 1)) {
+			indices[i++] = index;
+		}
+
+		return indices;
+
+	}
+
+	// Returns the first selected index at or after the given index, or -1
+	public int nextSelectedIndex(int fromIndex) {
+		return value.nextSetBit(fromIndex);
+	}
+
+	public void forEachSelectedIndex(IntConsumer consumer) {
+		for (int index = value.nextSetBit(0); index >= 0; index = value.nextSetBit(index + 1)) {
+			consumer.accept(index);
+		}
+	}
+
+	public void forEachSelectedRange(RangeConsumer consumer) {
+		for (int first = value.nextSetBit(0); first >= 0;) {
+			int end = value.nextClearBit(first);
+			consumer.accept(first, end - 1);
+			first = value.nextSetBit(end);
+		}
+	}
+
+	// Returns a copy of the selection, which takes one bit per index up to the last selected index
+	public BitSet getSelection() {
+		return (BitSet) value.clone();
+	}
+
+	@Override
+	public void addListSelectionListener(ListSelectionListener listener) {
+		listenerList.add(ListSelectionListener.class, listener);
+	}
+
+	@Override
+	public void removeListSelectionListener(ListSelectionListener listener) {
+		listenerList.remove(ListSelectionListener.class, listener);
+	}
+
+	public ListSelectionListener[] getListSelectionListeners() {
+		return listenerList.getListeners(ListSelectionListener.class);
+	}
+
+	protected void fireValueChanged(int firstIndex, int lastIndex, boolean isAdjusting) {
+
+		Object[] listeners = listenerList.getListenerList();
+		ListSelectionEvent e = null;
+
+		for (int i = listeners.length - 2; i >= 0; i -= 2) {
+			if (listeners[i] == ListSelectionListener.class) {
+				if (e == null) {
+					e = new ListSelectionEvent(this, firstIndex, lastIndex, isAdjusting);
+				}
+				((ListSelectionListener) listeners[i + 1]).valueChanged(e);
+			}
+		}
+
+	}
+
+	private void fireValueChanged(boolean isAdjusting) {
+
+		if (lastChangedIndex == MIN) {
+			return;
+		}
+
+		// Changes made while adjusting are reported once more as a single range when adjusting ends
+		int oldFirstChangedIndex = firstChangedIndex;
+		int oldLastChangedIndex = lastChangedIndex;
+		firstChangedIndex = MAX;
+		lastChangedIndex = MIN;
+
+		fireValueChanged(oldFirstChangedIndex, oldLastChangedIndex, isAdjusting);
+
+	}
+
+	private void fireValueChanged() {
+
+		if (lastAdjustedIndex == MIN) {
+			return;
+		}
+
+		if (isAdjusting) {
+			firstChangedIndex = Math.min(firstChangedIndex, firstAdjustedIndex);
+			lastChangedIndex = Math.max(lastChangedIndex, lastAdjustedIndex);
+		}
+
+		int oldFirstAdjustedIndex = firstAdjustedIndex;
+		int oldLastAdjustedIndex = lastAdjustedIndex;
+		firstAdjustedIndex = MAX;
+		lastAdjustedIndex = MIN;
+
+		fireValueChanged(oldFirstAdjustedIndex, oldLastAdjustedIndex, isAdjusting);
+
+	}
+
+	private void markAsDirty(int firstIndex, int lastIndex) {
+		if (firstIndex >= 0 && lastIndex >= firstIndex) {
+			firstAdjustedIndex = Math.min(firstAdjustedIndex, firstIndex);
+			lastAdjustedIndex = Math.max(lastAdjustedIndex, lastIndex);
+		}
+	}
+
+	private void expandDirtyRange(int index) {
+		markAsDirty(index, index);
+	}
+
+	private void updateMinMax() {
+		if (value.isEmpty()) {
+			minIndex = MAX;
+			maxIndex = MIN;
+		} else {
+			minIndex = value.nextSetBit(0);
+			maxIndex = value.length() - 1;
+		}
+	}
+
+	private void changeSelection(int clearMin, int clearMax, int setMin, int setMax, boolean clearFirst) {
+
+		clearMin = Math.max(clearMin, 0);
+		setMin = Math.max(setMin, 0);
+
+		int first = Math.min(clearMin, setMin);
+		int last = Math.max(clearMax, setMax);
+		if (last < first) {
+			return;
+		}
+
+		BitSet old = value.get(first, last + 1);
+
+		if (clearFirst) {
+			clear(clearMin, clearMax);
+			set(setMin, setMax);
+		} else {
+			set(setMin, setMax);
+			clear(clearMin, clearMax);
+		}
+
+		markChanged(old, first, last);
+
+		fireValueChanged();
+
+	}
+
+	private void changeSelection(int clearMin, int clearMax, int setMin, int setMax) {
+		changeSelection(clearMin, clearMax, setMin, setMax, true);
+	}
+
+	// Only the words of the affected range are compared to find the indices that really changed
+	private void markChanged(BitSet old, int first, int last) {
+		old.xor(value.get(first, last + 1));
+		if (!old.isEmpty()) {
+			markAsDirty(first + old.nextSetBit(0), first + old.length() - 1);
+		}
+		updateMinMax();
+	}
+
+	private void set(int first, int last) {
+		if (last >= first) {
+			value.set(first, last + 1);
+		}
+	}
+
+	private void clear(int first, int last) {
+		if (last >= first) {
+			value.clear(first, last + 1);
+		}
+	}
+
+	// Moves all bits at or after fromIndex by the given distance, run by run instead of bit by bit
+	private void shift(int fromIndex, int distance) {
+
+		if (fromIndex > maxIndex || distance == 0) {
+			return;
+		}
+
+		BitSet tail = value.get(fromIndex, maxIndex + 1);
+		value.clear(Math.max(fromIndex + Math.min(distance, 0), 0), maxIndex + 1);
+
+		for (int first = tail.nextSetBit(0); first >= 0;) {
+			int end = tail.nextClearBit(first);
+			int from = Math.max(fromIndex + first + distance, 0);
+			int to = fromIndex + end + distance;
+			if (to > from) {
+				value.set(from, to);
+			}
+			first = tail.nextSetBit(end);
+		}
+
+	}
+
+	@Override
+	public void clearSelection() {
+		removeSelectionIntervalImpl(minIndex, maxIndex, false);
+	}
+
+	@Override
+	public void setSelectionInterval(int index0, int index1) {
+
+		if (index0 == -1 || index1 == -1) {
+			return;
+		}
+
+		if (selectionMode == SINGLE_SELECTION) {
+			index0 = index1;
+		}
+
+		updateLeadAnchorIndices(index0, index1);
+
+		changeSelection(minIndex, maxIndex, Math.min(index0, index1), Math.max(index0, index1));
+
+	}
+
+	@Override
+	public void addSelectionInterval(int index0, int index1) {
+
+		if (index0 == -1 || index1 == -1) {
+			return;
+		}
+
+		if (selectionMode == SINGLE_SELECTION) {
+			setSelectionInterval(index0, index1);
+			return;
+		}
+
+		updateLeadAnchorIndices(index0, index1);
+
+		int setMin = Math.min(index0, index1);
+		int setMax = Math.max(index0, index1);
+
+		// If we only allow a single interval and this would result in multiple intervals, then set the selection to be just the new range
+		if (selectionMode == SINGLE_INTERVAL_SELECTION && !isSelectionEmpty() && (setMax < minIndex - 1 || setMin > maxIndex + 1)) {
+			setSelectionInterval(index0, index1);
+			return;
+		}
+
+		changeSelection(MAX, MIN, setMin, setMax);
+
+	}
+
+	@Override
+	public void removeSelectionInterval(int index0, int index1) {
+		removeSelectionIntervalImpl(index0, index1, true);
+	}
+
+	private void removeSelectionIntervalImpl(int index0, int index1, boolean changeLeadAnchor) {
+
+		if (index0 == -1 || index1 == -1) {
+			return;
+		}
+
+		if (changeLeadAnchor) {
+			updateLeadAnchorIndices(index0, index1);
+		}
+
+		int clearMin = Math.min(index0, index1);
+		int clearMax = Math.max(index0, index1);
+
+		// If the removal would produce two disjoint selections in a single interval mode, remove everything after the start
+		if (selectionMode != MULTIPLE_INTERVAL_SELECTION && clearMin > minIndex && clearMax < maxIndex) {
+			clearMax = maxIndex;
+		}
+
+		changeSelection(clearMin, clearMax, MAX, MIN);
+
+	}
+
+	@Override
+	public void insertIndexInterval(int index, int length, boolean before) {
+
+		int insMinIndex = before ? index : index + 1;
+		int insMaxIndex = insMinIndex + length - 1;
+
+		boolean setInsertedValues = selectionMode == SINGLE_SELECTION ? false : value.get(index);
+
+		int last = Math.max(insMaxIndex, maxIndex + length);
+		BitSet old = value.get(insMinIndex, last + 1);
+
+		shift(insMinIndex, length);
+		if (setInsertedValues) {
+			set(insMinIndex, insMaxIndex);
+		}
+
+		markChanged(old, insMinIndex, last);
+
+		int leadIndex = this.leadIndex;
+		if (leadIndex > index || (before && leadIndex == index)) {
+			leadIndex = this.leadIndex + length;
+		}
+		int anchorIndex = this.anchorIndex;
+		if (anchorIndex > index || (before && anchorIndex == index)) {
+			anchorIndex = this.anchorIndex + length;
+		}
+		if (leadIndex != this.leadIndex || anchorIndex != this.anchorIndex) {
+			updateLeadAnchorIndices(anchorIndex, leadIndex);
+		}
+
+		fireValueChanged();
+
+	}
+
+	@Override
+	public void removeIndexInterval(int index0, int index1) {
+
+		int rmMinIndex = Math.min(index0, index1);
+		int rmMaxIndex = Math.max(index0, index1);
+		int gapLength = rmMaxIndex - rmMinIndex + 1;
+
+		int first = Math.max(rmMinIndex, 0);
+		int last = Math.max(rmMaxIndex, maxIndex);
+		BitSet old = value.get(first, last + 1);
+
+		clear(first, rmMaxIndex);
+		shift(rmMaxIndex + 1, -gapLength);
+
+		markChanged(old, first, last);
+
+		int leadIndex = this.leadIndex;
+		if (leadIndex == 0 && rmMinIndex == 0) {
+			// do nothing
+		} else if (leadIndex > rmMaxIndex) {
+			leadIndex = this.leadIndex - gapLength;
+		} else if (leadIndex >= rmMinIndex) {
+			leadIndex = rmMinIndex - 1;
+		}
+
+		int anchorIndex = this.anchorIndex;
+		if (anchorIndex == 0 && rmMinIndex == 0) {
+			// do nothing
+		} else if (anchorIndex > rmMaxIndex) {
+			anchorIndex = this.anchorIndex - gapLength;
+		} else if (anchorIndex >= rmMinIndex) {
+			anchorIndex = rmMinIndex - 1;
+		}
+
+		if (leadIndex != this.leadIndex || anchorIndex != this.anchorIndex) {
+			updateLeadAnchorIndices(anchorIndex, leadIndex);
+		}
+
+		fireValueChanged();
+
+	}
+
+	@Override
+	public void setValueIsAdjusting(boolean isAdjusting) {
+		if (isAdjusting != this.isAdjusting) {
+			this.isAdjusting = isAdjusting;
+			fireValueChanged(isAdjusting);
+		}
+	}
+
+	@Override
+	public int getAnchorSelectionIndex() {
+		return anchorIndex;
+	}
+
+	@Override
+	public int getLeadSelectionIndex() {
+		return leadIndex;
+	}
+
+	@Override
+	public void setAnchorSelectionIndex(int anchorIndex) {
+		updateLeadAnchorIndices(anchorIndex, this.leadIndex);
+		fireValueChanged();
+	}
+
+	public void moveLeadSelectionIndex(int leadIndex) {
+
+		// disallow a -1 lead unless the anchor is already -1
+		if (leadIndex == -1 && anchorIndex != -1) {
+			return;
+		}
+
+		updateLeadAnchorIndices(anchorIndex, leadIndex);
+		fireValueChanged();
+
+	}
+
+	@Override
+	public void setLeadSelectionIndex(int leadIndex) {
+
+		int anchorIndex = this.anchorIndex;
+
+		// only allow a -1 lead if the anchor is already -1
+		if (leadIndex == -1) {
+			if (anchorIndex == -1) {
+				updateLeadAnchorIndices(anchorIndex, leadIndex);
+				fireValueChanged();
+			}
+			return;
+		} else if (anchorIndex == -1) {
+			return;
+		}
+
+		if (this.leadIndex == -1) {
+			this.leadIndex = leadIndex;
+		}
+
+		boolean shouldSelect = value.get(this.anchorIndex);
+
+		if (selectionMode == SINGLE_SELECTION) {
+			anchorIndex = leadIndex;
+			shouldSelect = true;
+		}
+
+		int oldMin = Math.min(this.anchorIndex, this.leadIndex);
+		int oldMax = Math.max(this.anchorIndex, this.leadIndex);
+		int newMin = Math.min(anchorIndex, leadIndex);
+		int newMax = Math.max(anchorIndex, leadIndex);
+
+		updateLeadAnchorIndices(anchorIndex, leadIndex);
+
+		if (shouldSelect) {
+			changeSelection(oldMin, oldMax, newMin, newMax);
+		} else {
+			changeSelection(newMin, newMax, oldMin, oldMax, false);
+		}
+
+	}
+
+	public boolean isLeadAnchorNotificationEnabled() {
+		return leadAnchorNotificationEnabled;
+	}
+
+	public void setLeadAnchorNotificationEnabled(boolean leadAnchorNotificationEnabled) {
+		this.leadAnchorNotificationEnabled = leadAnchorNotificationEnabled;
+	}
+
+	private void updateLeadAnchorIndices(int anchorIndex, int leadIndex) {
+
+		if (leadAnchorNotificationEnabled) {
+			if (this.anchorIndex != anchorIndex) {
+				expandDirtyRange(this.anchorIndex);
+				expandDirtyRange(anchorIndex);
+			}
+			if (this.leadIndex != leadIndex) {
+				expandDirtyRange(this.leadIndex);
+				expandDirtyRange(leadIndex);
+			}
+		}
+
+		this.anchorIndex = anchorIndex;
+		this.leadIndex = leadIndex;
+
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getName() + " " + value.toString(); //$NON-NLS-1$
+	}
+
+	public static interface RangeConsumer {
+
+		public void accept(int firstIndex, int lastIndex);
+
+	}
+
+}
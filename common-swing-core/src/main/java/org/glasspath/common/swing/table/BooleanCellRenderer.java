@@ -81,13 +81,7 @@ public class BooleanCellRenderer extends DefaultTableCellRenderer {
 
 		this.row = row;
 		
-		modifyClip = true;
-		for (int r : table.getSelectedRows()) {
-			if (r == row) {
-				modifyClip = false;
-				break;
-			}
-		}
+		modifyClip = !table.isRowSelected(row);
 
 		if (value instanceof Boolean) {
 			checkBox.setSelected((Boolean) value);
@@ -0,0 +1,447 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Function;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
+
+// Sizes columns to their content by measuring the text of a sample of rows (head, tail and random
+// rows) in the background instead of calling the renderer for every row. Optionally the widths are
+// refined by indexing the longest texts of all rows (which only needs the text length) and measuring
+// those. The values are read on the EDT in chunks, the widths are applied in one pass on the EDT
+public class ColumnAutoFit {
+
+	public static final int DEFAULT_HEAD_ROWS = 100;
+	public static final int DEFAULT_TAIL_ROWS = 100;
+	public static final int DEFAULT_RANDOM_ROWS = 1000;
+	public static final int DEFAULT_LONGEST_ROWS = 25;
+	public static final int DEFAULT_MAXIMUM_WIDTH = 600;
+	public static final int CHUNK_SIZE = 1000;
+	private static final int MAX_CACHED_WIDTHS = 4096;
+
+	private final JTable table;
+	private final TableColumn[] tableColumns;
+	private final int[] modelColumns;
+	private final List<Function<Object, String>> formatters = new ArrayList<>();
+	private final FontMetrics[] fontMetrics;
+	private final int[] padding;
+	private final int[] headerWidths;
+	private final List<Map<String, Integer>> widthCaches = new ArrayList<>();
+	private int headRows = DEFAULT_HEAD_ROWS;
+	private int tailRows = DEFAULT_TAIL_ROWS;
+	private int randomRows = DEFAULT_RANDOM_ROWS;
+	private int longestRows = DEFAULT_LONGEST_ROWS;
+	private int maximumWidth = DEFAULT_MAXIMUM_WIDTH;
+	private volatile boolean cancelled = false;
+
+	public ColumnAutoFit(JTable table) {
+
+		this.table = table;
+
+		int columnCount = table.getColumnCount();
+		tableColumns = new TableColumn[columnCount];
+		modelColumns = new int[columnCount];
+		fontMetrics = new FontMetrics[columnCount];
+		padding = new int[columnCount];
+		headerWidths = new int[columnCount];
+
+		// Font metrics are looked up once per font
+		Map<Font, FontMetrics> fontMetricsCache = new HashMap<>();
+
+		for (int column = 0; column < columnCount; column++) {
+
+			tableColumns[column] = table.getColumnModel().getColumn(column);
+			modelColumns[column] = tableColumns[column].getModelIndex();
+			widthCaches.add(new HashMap<>());
+
+			TableCellRenderer renderer = tableColumns[column].getCellRenderer();
+			if (renderer == null) {
+				renderer = table.getDefaultRenderer(table.getColumnClass(column));
+			}
+
+			// Only columns rendered as text are measured, other columns (check boxes etc.) keep their width
+			Component component = table.getRowCount() > 0 ? table.prepareRenderer(renderer, 0, column) : renderer.getTableCellRendererComponent(table, null, false, false, 0, column);
+			if (renderer instanceof TextFormattable) {
+				formatters.add(((TextFormattable) renderer).createTextFormatter());
+			} else if (component instanceof JLabel) {
+				formatters.add(value -> value != null ? value.toString() : ""); //$NON-NLS-1$
+			} else {
+				formatters.add(null);
+			}
+
+			Font font = component.getFont() != null ? component.getFont() : table.getFont();
+			fontMetrics[column] = fontMetricsCache.computeIfAbsent(font, table::getFontMetrics);
+
+			Insets insets = component instanceof JComponent ? ((JComponent) component).getInsets() : new Insets(0, 0, 0, 0);
+			padding[column] = insets.left + insets.right + table.getIntercellSpacing().width + 2;
+
+			TableCellRenderer headerRenderer = tableColumns[column].getHeaderRenderer();
+			if (headerRenderer == null && table.getTableHeader() != null) {
+				headerRenderer = table.getTableHeader().getDefaultRenderer();
+			}
+			if (headerRenderer != null) {
+				headerWidths[column] = headerRenderer.getTableCellRendererComponent(table, tableColumns[column].getHeaderValue(), false, false, -1, column).getPreferredSize().width;
+			}
+
+		}
+
+	}
+
+	public void setSampleSize(int headRows, int tailRows, int randomRows) {
+		this.headRows = Math.max(headRows, 0);
+		this.tailRows = Math.max(tailRows, 0);
+		this.randomRows = Math.max(randomRows, 0);
+	}
+
+	public void setLongestRows(int longestRows) {
+		this.longestRows = Math.max(longestRows, 1);
+	}
+
+	public int getMaximumWidth() {
+		return maximumWidth;
+	}
+
+	public void setMaximumWidth(int maximumWidth) {
+		this.maximumWidth = maximumWidth;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// Fits the columns on a background thread, first using the sample and then (if refine is true) using the longest texts
+	public void start(boolean refine) {
+
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				fit(refine);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	// Should not be called on the EDT
+	public void fit(boolean refine) {
+
+		int[] widths = measureSample();
+		if (widths == null) {
+			return;
+		}
+		apply(widths);
+
+		if (refine) {
+			int[] longestWidths = measureLongest();
+			if (longestWidths != null) {
+				for (int column = 0; column < widths.length; column++) {
+					longestWidths[column] = Math.max(widths[column], longestWidths[column]);
+				}
+				apply(longestWidths);
+			}
+		}
+
+	}
+
+	public int[] measureSample() {
+
+		int rowCount = readRowCount();
+
+		List<Integer> rows = new ArrayList<>();
+		for (int row = 0; row < Math.min(headRows, rowCount); row++) {
+			rows.add(row);
+		}
+		for (int row = Math.max(headRows, rowCount - tailRows); row < rowCount; row++) {
+			rows.add(row);
+		}
+		if (rowCount > headRows + tailRows) {
+			Random random = new Random(rowCount);
+			for (int i = 0; i < randomRows; i++) {
+				rows.add(headRows + random.nextInt(rowCount - headRows - tailRows));
+			}
+		}
+
+		int[] viewRows = new int[rows.size()];
+		for (int i = 0; i < viewRows.length; i++) {
+			viewRows[i] = rows.get(i);
+		}
+
+		return measure(viewRows);
+
+	}
+
+	// Indexes the text length of all rows and measures the rows with the longest texts of every column
+	public int[] measureLongest() {
+
+		List<PriorityQueue<long[]>> longest = new ArrayList<>();
+		for (int column = 0; column < modelColumns.length; column++) {
+			longest.add(new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0])));
+		}
+
+		int rowCount = readRowCount();
+		Object[][] values = new Object[CHUNK_SIZE][modelColumns.length];
+
+		for (int start = 0; start < rowCount; start += CHUNK_SIZE) {
+
+			if (cancelled) {
+				return null;
+			}
+
+			int end = Math.min(start + CHUNK_SIZE, rowCount);
+			int[] viewRows = new int[end - start];
+			for (int i = 0; i < viewRows.length; i++) {
+				viewRows[i] = start + i;
+			}
+			readValues(viewRows, values);
+
+			for (int column = 0; column < modelColumns.length; column++) {
+				if (formatters.get(column) != null) {
+					PriorityQueue<long[]> queue = longest.get(column);
+					for (int i = 0; i < viewRows.length; i++) {
+						int length = formatters.get(column).apply(values[i][column]).length();
+						if (queue.size() < longestRows) {
+							queue.add(new long[] { length, viewRows[i] });
+						} else if (length > queue.peek()[0]) {
+							queue.poll();
+							queue.add(new long[] { length, viewRows[i] });
+						}
+					}
+				}
+			}
+
+		}
+
+		// The values of the longest rows of all columns are read once, every column is measured using only it's own rows
+		int[][] columnRows = new int[modelColumns.length][];
+		BitSet rows = new BitSet();
+		for (int column = 0; column < modelColumns.length; column++) {
+
+			PriorityQueue<long[]> queue = longest.get(column);
+			columnRows[column] = new int[queue.size()];
+			int i = 0;
+			for (long[] entry : queue) {
+				columnRows[column][i++] = (int) entry[1];
+				rows.set((int) entry[1]);
+			}
+			Arrays.sort(columnRows[column]);
+
+		}
+
+		int[] viewRows = rows.stream().toArray();
+		int[] next = new int[modelColumns.length];
+		int[] widths = new int[modelColumns.length];
+
+		for (int start = 0; start < viewRows.length; start += CHUNK_SIZE) {
+
+			if (cancelled) {
+				return null;
+			}
+
+			int end = Math.min(start + CHUNK_SIZE, viewRows.length);
+			int[] chunk = Arrays.copyOfRange(viewRows, start, end);
+			readValues(chunk, values);
+
+			for (int column = 0; column < modelColumns.length; column++) {
+				int[] rowsOfColumn = columnRows[column];
+				while (next[column] < rowsOfColumn.length && rowsOfColumn[next[column]] <= chunk[chunk.length - 1]) {
+					int i = Arrays.binarySearch(chunk, rowsOfColumn[next[column]++]);
+					widths[column] = Math.max(widths[column], measure(column, formatters.get(column).apply(values[i][column])));
+				}
+			}
+
+		}
+
+		return widths;
+
+	}
+
+	private int[] measure(int[] viewRows) {
+
+		int[] widths = new int[modelColumns.length];
+		Object[][] values = new Object[Math.min(CHUNK_SIZE, viewRows.length)][modelColumns.length];
+
+		for (int start = 0; start < viewRows.length; start += CHUNK_SIZE) {
+
+			if (cancelled) {
+				return null;
+			}
+
+			int[] chunk = new int[Math.min(CHUNK_SIZE, viewRows.length - start)];
+			System.arraycopy(viewRows, start, chunk, 0, chunk.length);
+			readValues(chunk, values);
+
+			for (int column = 0; column < modelColumns.length; column++) {
+				if (formatters.get(column) != null) {
+					for (int i = 0; i < chunk.length; i++) {
+						widths[column] = Math.max(widths[column], measure(column, formatters.get(column).apply(values[i][column])));
+					}
+				}
+			}
+
+		}
+
+		return widths;
+
+	}
+
+	private int measure(int column, String text) {
+
+		// Columns often contain the same texts (status values, dates etc.)
+		Map<String, Integer> cache = widthCaches.get(column);
+		Integer width = cache.get(text);
+		if (width == null) {
+			width = fontMetrics[column].stringWidth(text) + padding[column];
+			if (cache.size() < MAX_CACHED_WIDTHS) {
+				cache.put(text, width);
+			}
+		}
+
+		return width;
+
+	}
+
+	private void apply(int[] widths) {
+
+		runOnEventDispatchThread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				if (cancelled) {
+					return;
+				}
+
+				// The column model fires a margin change (which resizes the table and updates the header and column
+				// offsets) for every changed column, so it's removed as listener while the widths are set and notified once
+				TableColumnModel columnModel = table.getColumnModel();
+				PropertyChangeListener modelListener = columnModel instanceof PropertyChangeListener ? (PropertyChangeListener) columnModel : null;
+				TableColumn changedColumn = null;
+
+				for (int column = 0; column < tableColumns.length; column++) {
+					if (formatters.get(column) != null) {
+
+						int width = Math.min(Math.max(widths[column], headerWidths[column]), maximumWidth);
+						width = Math.max(width, tableColumns[column].getMinWidth());
+
+						if (width != tableColumns[column].getPreferredWidth()) {
+
+							boolean listening = modelListener != null && Arrays.asList(tableColumns[column].getPropertyChangeListeners()).contains(modelListener);
+							if (listening) {
+								tableColumns[column].removePropertyChangeListener(modelListener);
+							}
+
+							tableColumns[column].setPreferredWidth(width);
+
+							if (listening) {
+								tableColumns[column].addPropertyChangeListener(modelListener);
+								changedColumn = tableColumns[column];
+							}
+
+						}
+
+					}
+				}
+
+				if (changedColumn != null) {
+					modelListener.propertyChange(new PropertyChangeEvent(changedColumn, "preferredWidth", null, changedColumn.getPreferredWidth())); //$NON-NLS-1$
+				}
+
+			}
+		});
+
+	}
+
+	private int readRowCount() {
+		int[] rowCount = new int[1];
+		runOnEventDispatchThread(() -> rowCount[0] = table.getRowCount());
+		return rowCount[0];
+	}
+
+	private void readValues(int[] viewRows, Object[][] values) {
+
+		runOnEventDispatchThread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				TableModel model = table.getModel();
+				int rowCount = table.getRowCount();
+
+				for (int i = 0; i < viewRows.length; i++) {
+					int modelRow = viewRows[i] < rowCount ? table.convertRowIndexToModel(viewRows[i]) : -1;
+					for (int column = 0; column < modelColumns.length; column++) {
+						values[i][column] = modelRow >= 0 && modelColumns[column] < model.getColumnCount() ? model.getValueAt(modelRow, modelColumns[column]) : null;
+					}
+				}
+
+			}
+		});
+
+	}
+
+	private void runOnEventDispatchThread(Runnable runnable) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			runnable.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(runnable);
+			} catch (InterruptedException e) {
+				cancelled = true;
+				Thread.currentThread().interrupt();
+			} catch (InvocationTargetException e) {
+				e.printStackTrace();
+				cancelled = true;
+			}
+		}
+	}
+
+}
@@ -26,6 +26,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -36,6 +38,7 @@ import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JTable;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.TableColumnModelEvent;
@@ -47,15 +50,23 @@ import org.glasspath.common.swing.resources.CommonResources;
 
 public class ColumnHandler {
 
+	// The layout of all columns is stored as one record: "<version>:<index>,<width>;<index>,<width>;.."
+	public static final int LAYOUT_VERSION = 1;
+	public static final int SAVE_DELAY = 500;
+	private static final int UNSET = Integer.MAX_VALUE;
+
 	private final JTable table;
 	private final TableColumnModel columnModel;
 	private final Preferences preferences;
 	private final String preferencesKey;
 	private final TableColumnModelListener columnModelListener;
+	private final PropertyChangeListener columnWidthListener;
 	private final MouseAdapter tableHeaderMouseListener;
 	private final List<Column> columns = new ArrayList<>();
+	private final Timer saveTimer;
 
 	private boolean updatingTableColumns = false;
+	private boolean legacyKeysFound = false;
 
 	public ColumnHandler(JTable table, Preferences preferences, String preferencesKey) {
 
@@ -69,16 +80,23 @@ public class ColumnHandler {
 			@Override
 			public void columnMoved(TableColumnModelEvent e) {
 
-				if (!updatingTableColumns) {
+				if (!updatingTableColumns && e.getFromIndex() != e.getToIndex()) {
+
+					// Only the columns between the from and to index have a new view index
+					int from = Math.max(Math.min(e.getFromIndex(), e.getToIndex()), 0);
+					int to = Math.min(Math.max(e.getFromIndex(), e.getToIndex()), columnModel.getColumnCount() - 1);
 
-					for (int i = 0; i < columns.size(); i++) {
+					for (int viewIndex = from; viewIndex <= to; viewIndex++) {
 
-						if (columns.get(i).preferredIndex >= 0) {
-							preferences.putInt(preferencesKey + i + "Index", table.convertColumnIndexToView(i)); //$NON-NLS-1$
+						int modelIndex = columnModel.getColumn(viewIndex).getModelIndex();
+						if (modelIndex >= 0 && modelIndex < columns.size() && columns.get(modelIndex).preferredIndex >= 0) {
+							columns.get(modelIndex).storedIndex = viewIndex;
 						}
 
 					}
 
+					scheduleSave();
+
 					ColumnHandler.this.columnMoved(e);
 
 				}
@@ -88,21 +106,10 @@ public class ColumnHandler {
 			@Override
 			public void columnMarginChanged(ChangeEvent e) {
 
+				// The widths are saved by the column width listener, which
+				// knows which column changed, so only notify the sub-class here
 				if (!updatingTableColumns) {
-
-					for (int i = 0; i < columns.size(); i++) {
-
-						int width = columns.get(i).tableColumn.getWidth();
-						if (width <= 0) {
-							width = columns.get(i).defaultWidth;
-						}
-
-						preferences.putInt(preferencesKey + i + "Width", width); //$NON-NLS-1$
-
-					}
-
 					ColumnHandler.this.columnMarginChanged(e);
-
 				}
 
 			}
@@ -124,6 +131,30 @@ public class ColumnHandler {
 		};
 		columnModel.addColumnModelListener(columnModelListener);
 
+		columnWidthListener = new PropertyChangeListener() {
+
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+
+				if (!updatingTableColumns && "width".equals(evt.getPropertyName())) { //$NON-NLS-1$
+
+					int modelIndex = ((TableColumn) evt.getSource()).getModelIndex();
+					if (modelIndex >= 0 && modelIndex < columns.size() && columns.get(modelIndex).tableColumn == evt.getSource()) {
+						saveWidth(modelIndex);
+					} else {
+						for (int i = 0; i < columns.size(); i++) {
+							if (columns.get(i).tableColumn == evt.getSource()) {
+								saveWidth(i);
+								break;
+							}
+						}
+					}
+
+				}
+
+			}
+		};
+
 		tableHeaderMouseListener = new MouseAdapter() {
 
 			@Override
@@ -137,10 +168,205 @@ public class ColumnHandler {
 
 		for (int i = 0; i < columnModel.getColumnCount(); i++) {
 			columns.add(new Column(columnModel.getColumn(i)));
+			columnModel.getColumn(i).addPropertyChangeListener(columnWidthListener);
+		}
+
+		// Changes are written after a short delay, so dragging a column border or
+		// moving a column results in a single write instead of one write per event
+		saveTimer = new Timer(SAVE_DELAY, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+		saveTimer.setRepeats(false);
+
+		int[][] layout = loadLayout(preferencesKey);
+		for (int i = 0; i < columns.size(); i++) {
+			columns.get(i).storedIndex = layout[i][0];
+			columns.get(i).savedWidth = layout[i][1];
+		}
+
+	}
+
+	private void saveWidth(int columnIndex) {
+
+		Column column = columns.get(columnIndex);
+
+		int width = column.tableColumn.getWidth();
+		if (width <= 0) {
+			width = column.defaultWidth;
+		}
+
+		if (width != column.savedWidth) {
+			column.savedWidth = width;
+			scheduleSave();
+		}
+
+	}
+
+	private void scheduleSave() {
+		saveTimer.restart();
+	}
+
+	// Writes pending changes of the column layout to the preferences
+	public void flush() {
+
+		saveTimer.stop();
+
+		StringBuilder record = new StringBuilder();
+		record.append(LAYOUT_VERSION);
+		record.append(':');
+
+		boolean empty = true;
+		for (int i = 0; i < columns.size(); i++) {
+
+			Column column = columns.get(i);
+
+			if (i > 0) {
+				record.append(';');
+			}
+			if (column.storedIndex != UNSET) {
+				record.append(column.storedIndex);
+				empty = false;
+			}
+			record.append(',');
+			if (column.savedWidth >= 0) {
+				record.append(column.savedWidth);
+				empty = false;
+			}
+
+		}
+
+		// Called by the save timer, a failure is logged so it doesn't end up in the event dispatch thread
+		try {
+
+			if (empty) {
+				writeRecord(null);
+			} else if (!record.toString().equals(readRecord(preferencesKey))) {
+				writeRecord(record.toString());
+			}
+
+			// Layouts stored by older versions (one index and width key per column) are replaced by the record
+			if (legacyKeysFound) {
+				legacyKeysFound = false;
+				for (int i = 0; i < columns.size(); i++) {
+					preferences.remove(preferencesKey + i + "Index"); //$NON-NLS-1$
+					preferences.remove(preferencesKey + i + "Width"); //$NON-NLS-1$
+				}
+			}
+
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	// Records longer than Preferences.MAX_VALUE_LENGTH (wide tables) are split, the first part is stored in the
+	// "Layout" key (like short records) and the other parts in "Layout1", "Layout2" etc, "LayoutCount" is the number of parts
+	private void writeRecord(String record) {
+
+		String key = preferencesKey + "Layout"; //$NON-NLS-1$
+		int oldCount = preferences.getInt(key + "Count", 1); //$NON-NLS-1$
+
+		int count = 0;
+		if (record != null) {
+			for (int start = 0; start < record.length() || count == 0; start += Preferences.MAX_VALUE_LENGTH) {
+				String part = record.substring(start, Math.min(start + Preferences.MAX_VALUE_LENGTH, record.length()));
+				preferences.put(count == 0 ? key : key + count, part);
+				count++;
+			}
+		} else {
+			preferences.remove(key);
+		}
+
+		for (int i = Math.max(count, 1); i < oldCount; i++) {
+			preferences.remove(key + i);
+		}
+
+		if (count > 1) {
+			preferences.putInt(key + "Count", count); //$NON-NLS-1$
+		} else {
+			preferences.remove(key + "Count"); //$NON-NLS-1$
 		}
 
 	}
 
+	private String readRecord(String preferencesKey) {
+
+		String key = preferencesKey + "Layout"; //$NON-NLS-1$
+		String record = preferences.get(key, null);
+
+		int count = preferences.getInt(key + "Count", 1); //$NON-NLS-1$
+		if (record != null && count > 1) {
+			StringBuilder builder = new StringBuilder(record);
+			for (int i = 1; i < count; i++) {
+				builder.append(preferences.get(key + i, "")); //$NON-NLS-1$
+			}
+			record = builder.toString();
+		}
+
+		return record;
+
+	}
+
+	// Returns the stored index and width of every column, UNSET and -1 are used for values which were not stored
+	private int[][] loadLayout(String preferencesKey) {
+
+		int[][] layout = new int[columns.size()][];
+		for (int i = 0; i < layout.length; i++) {
+			layout[i] = new int[] { UNSET, -1 };
+		}
+
+		String record = readRecord(preferencesKey);
+		if (record != null) {
+
+			int separator = record.indexOf(':');
+			if (separator > 0 && String.valueOf(LAYOUT_VERSION).equals(record.substring(0, separator))) {
+
+				try {
+
+					String[] entries = record.substring(separator + 1).split(";", -1); //$NON-NLS-1$
+					for (int i = 0; i < entries.length && i < layout.length; i++) {
+
+						int comma = entries[i].indexOf(',');
+						if (comma >= 0) {
+							String index = entries[i].substring(0, comma);
+							String width = entries[i].substring(comma + 1);
+							layout[i][0] = index.isEmpty() ? UNSET : Integer.parseInt(index);
+							layout[i][1] = width.isEmpty() ? -1 : Integer.parseInt(width);
+						}
+
+					}
+
+				} catch (NumberFormatException e) {
+					e.printStackTrace();
+				}
+
+			}
+
+		} else {
+
+			for (int i = 0; i < layout.length; i++) {
+
+				layout[i][0] = preferences.getInt(preferencesKey + i + "Index", UNSET); //$NON-NLS-1$
+				layout[i][1] = preferences.getInt(preferencesKey + i + "Width", -1); //$NON-NLS-1$
+
+				if (layout[i][0] != UNSET || layout[i][1] != -1) {
+					if (preferencesKey.equals(this.preferencesKey)) {
+						legacyKeysFound = true;
+					}
+				}
+
+			}
+
+		}
+
+		return layout;
+
+	}
+
 	public JTable getTable() {
 		return table;
 	}
@@ -154,8 +380,12 @@ public class ColumnHandler {
 	}
 
 	public void uninstallListeners() {
+		flush();
 		columnModel.removeColumnModelListener(columnModelListener);
 		table.getTableHeader().removeMouseListener(tableHeaderMouseListener);
+		for (Column column : columns) {
+			column.tableColumn.removePropertyChangeListener(columnWidthListener);
+		}
 	}
 
 	public void columnMoved(TableColumnModelEvent e) {
@@ -176,8 +406,9 @@ public class ColumnHandler {
 		column.defaultHidden = true;
 		column.preferredIndex = -1 - columnIndex;
 
-		if (preferences.getInt(preferencesKey + columnIndex + "Index", Integer.MAX_VALUE) == Integer.MAX_VALUE) { //$NON-NLS-1$
-			preferences.putInt(preferencesKey + columnIndex + "Index", column.preferredIndex); //$NON-NLS-1$
+		if (column.storedIndex == UNSET) {
+			column.storedIndex = column.preferredIndex;
+			scheduleSave();
 		}
 
 	}
@@ -185,7 +416,9 @@ public class ColumnHandler {
 	public void setColumnHidden(int columnIndex, boolean hidden) {
 
 		Column column = columns.get(columnIndex);
-		column.preferredIndex = preferences.getInt(preferencesKey + columnIndex + "Index", column.preferredIndex); //$NON-NLS-1$
+		if (column.storedIndex != UNSET) {
+			column.preferredIndex = column.storedIndex;
+		}
 
 		if (hidden) {
 
@@ -205,10 +438,10 @@ public class ColumnHandler {
 
 			if (column.preferredIndex < 0) {
 
-				column.tableColumn.setPreferredWidth(preferences.getInt(preferencesKey + columnIndex + "Width", column.defaultWidth)); //$NON-NLS-1$
+				column.tableColumn.setPreferredWidth(column.savedWidth >= 0 ? column.savedWidth : column.defaultWidth);
 				columnModel.addColumn(column.tableColumn);
 
-				int viewIndex = preferences.getInt(preferencesKey + columnIndex + "Index", column.preferredIndex); //$NON-NLS-1$
+				int viewIndex = column.preferredIndex;
 				if (viewIndex < 0) {
 					viewIndex = -1 - viewIndex;
 				}
@@ -222,7 +455,8 @@ public class ColumnHandler {
 
 		}
 
-		preferences.putInt(preferencesKey + columnIndex + "Index", column.preferredIndex); //$NON-NLS-1$
+		column.storedIndex = column.preferredIndex;
+		scheduleSave();
 
 		columnVisibilityChanged();
 
@@ -252,21 +486,39 @@ public class ColumnHandler {
 
 	public void apply(String preferencesKey, boolean save) {
 
+		// Pending changes are written first, the layout is then read with a single lookup
+		boolean ownLayout = preferencesKey.equals(this.preferencesKey);
+		if (ownLayout) {
+			flush();
+		}
+		int[][] layout = loadLayout(preferencesKey);
+
 		updatingTableColumns = true;
 
 		for (int i = 0; i < columns.size(); i++) {
 
 			Column column = columns.get(i);
-			column.preferredIndex = preferences.getInt(preferencesKey + i + "Index", column.preferredIndex); //$NON-NLS-1$
-			column.tableColumn.setPreferredWidth(preferences.getInt(preferencesKey + i + "Width", column.defaultWidth)); //$NON-NLS-1$
+			if (layout[i][0] != UNSET) {
+				column.preferredIndex = layout[i][0];
+			}
+			column.tableColumn.setPreferredWidth(layout[i][1] >= 0 ? layout[i][1] : column.defaultWidth);
+
+			if (ownLayout) {
+				column.storedIndex = layout[i][0];
+				column.savedWidth = layout[i][1];
+			}
 
 			if (save) {
-				preferences.putInt(this.preferencesKey + i + "Index", column.preferredIndex); //$NON-NLS-1$
-				preferences.putInt(this.preferencesKey + i + "Width", column.tableColumn.getPreferredWidth()); //$NON-NLS-1$
+				column.storedIndex = column.preferredIndex;
+				column.savedWidth = column.tableColumn.getPreferredWidth();
 			}
 
 		}
 
+		if (save) {
+			flush();
+		}
+
 		List<Column> sortedColumns = new ArrayList<>();
 		sortedColumns.addAll(columns);
 
@@ -301,16 +553,26 @@ public class ColumnHandler {
 
 			if (column.defaultHidden) {
 				column.preferredIndex = -1 - i;
-				preferences.putInt(preferencesKey + i + "Index", column.preferredIndex); //$NON-NLS-1$
+				column.storedIndex = column.preferredIndex;
 			} else {
 				column.preferredIndex = 0;
-				preferences.remove(preferencesKey + i + "Index"); //$NON-NLS-1$
+				column.storedIndex = UNSET;
 			}
 
-			preferences.remove(preferencesKey + i + "Width"); //$NON-NLS-1$
+			column.savedWidth = -1;
 
 		}
 
+		scheduleSave();
+
+	}
+
+	public void fitColumnWidths() {
+		if (table instanceof Table) {
+			((Table) table).autoFitColumns(true);
+		} else {
+			new ColumnAutoFit(table).start(true);
+		}
 	}
 
 	public String getColumnName(int column) {
@@ -345,6 +607,16 @@ public class ColumnHandler {
 
 		menu.addSeparator();
 
+		JMenuItem fitColumnWidthsMenuItem = new JMenuItem(CommonResources.getString("FitColumnWidths")); //$NON-NLS-1$
+		menu.add(fitColumnWidthsMenuItem);
+		fitColumnWidthsMenuItem.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				fitColumnWidths();
+			}
+		});
+
 		JMenuItem resetMenuItem = new JMenuItem(CommonResources.getString("Reset")); //$NON-NLS-1$
 		menu.add(resetMenuItem);
 		resetMenuItem.addActionListener(new ActionListener() {
@@ -367,6 +639,8 @@ public class ColumnHandler {
 		private boolean defaultHidden = false;
 		private int preferredIndex = 0;
 		private boolean disabled = false;
+		private int savedWidth = -1;
+		private int storedIndex = UNSET;
 
 		public Column(TableColumn tableColumn) {
 			this.tableColumn = tableColumn;
@@ -0,0 +1,151 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.TableColumnModelEvent;
+import javax.swing.event.TableColumnModelListener;
+import javax.swing.table.TableColumnModel;
+
+// Prefix-sum index of the column x positions, JTable computes these by summing the widths
+// of all preceding columns which gets expensive for tables with hundreds of columns
+public class ColumnOffsets implements TableColumnModelListener {
+
+	private final TableColumnModel columnModel;
+	private int[] offsets = new int[1];
+	private int columnCount = 0;
+	private boolean valid = false;
+
+	public ColumnOffsets(TableColumnModel columnModel) {
+		this.columnModel = columnModel;
+		columnModel.addColumnModelListener(this);
+	}
+
+	public TableColumnModel getColumnModel() {
+		return columnModel;
+	}
+
+	public void dispose() {
+		columnModel.removeColumnModelListener(this);
+	}
+
+	public void invalidate() {
+		valid = false;
+	}
+
+	private void validate() {
+
+		if (!valid || columnCount != columnModel.getColumnCount()) {
+
+			columnCount = columnModel.getColumnCount();
+			if (offsets.length < columnCount + 1) {
+				offsets = new int[columnCount + 1];
+			}
+
+			int x = 0;
+			for (int i = 0; i < columnCount; i++) {
+				offsets[i] = x;
+				x += columnModel.getColumn(i).getWidth();
+			}
+			offsets[columnCount] = x;
+
+			valid = true;
+
+		}
+
+	}
+
+	public int getColumnCount() {
+		validate();
+		return columnCount;
+	}
+
+	public int getX(int column) {
+		validate();
+		return offsets[column];
+	}
+
+	public int getWidth(int column) {
+		validate();
+		return offsets[column + 1] - offsets[column];
+	}
+
+	public int getTotalWidth() {
+		validate();
+		return offsets[columnCount];
+	}
+
+	public int getColumnAtX(int x) {
+
+		validate();
+
+		if (x < 0 || x >= offsets[columnCount]) {
+			return -1;
+		}
+
+		// Find the last column that starts at or before x, columns with
+		// a width of 0 are skipped because they start at the same offset
+		int low = 0;
+		int high = columnCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= x) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return low;
+
+	}
+
+	@Override
+	public void columnAdded(TableColumnModelEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnRemoved(TableColumnModelEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnMoved(TableColumnModelEvent e) {
+		if (e.getFromIndex() != e.getToIndex()) {
+			invalidate();
+		}
+	}
+
+	@Override
+	public void columnMarginChanged(ChangeEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnSelectionChanged(ListSelectionEvent e) {
+
+	}
+
+}
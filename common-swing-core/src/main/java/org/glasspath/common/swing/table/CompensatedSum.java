@@ -0,0 +1,63 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+// Running sum of doubles with Neumaier compensation, aggregates which add and remove values as
+// rows change would otherwise drift away from the sum of the current values (0.1 + 0.2 - 0.1 - 0.2)
+public class CompensatedSum {
+
+	private double sum = 0.0;
+	private double compensation = 0.0;
+
+	public CompensatedSum() {
+
+	}
+
+	public void add(double value) {
+
+		double result = sum + value;
+		if (Math.abs(sum) >= Math.abs(value)) {
+			compensation += (sum - result) + value;
+		} else {
+			compensation += (value - result) + sum;
+		}
+		sum = result;
+
+	}
+
+	public void subtract(double value) {
+		add(-value);
+	}
+
+	public void clear() {
+		sum = 0.0;
+		compensation = 0.0;
+	}
+
+	// The sum is never -0.0, so removing a negative value doesn't show up as "-0"
+	public double get() {
+		double result = Double.isInfinite(sum) ? sum : sum + compensation;
+		return result == 0.0 ? 0.0 : result;
+	}
+
+}
@@ -0,0 +1,535 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+public class ConditionalFormatting implements TableModelListener {
+
+	// Cached states per cell, values >= FIRST_FORMAT are indices in the formats list
+	private static final short NOT_EVALUATED = 0;
+	private static final short NO_FORMAT = 1;
+	private static final short FIRST_FORMAT = 2;
+
+	// Number of rows read on the EDT at a time by precompute()
+	public static final int CHUNK_SIZE = 1000;
+
+	private static ExecutorService executor = null;
+
+	private final Table table;
+	private final Map<Integer, List<Rule>> rules = new HashMap<>();
+	private final Map<Integer, short[]> states = new HashMap<>();
+	private final List<Format> formats = new ArrayList<>();
+	private final Map<Format, Short> formatIndices = new HashMap<>();
+	private TableModel model = null;
+	private int rowCount = 0;
+	private volatile int generation = 0;
+
+	public ConditionalFormatting(Table table) {
+		this.table = table;
+		setModel(table.getModel());
+	}
+
+	public void setModel(TableModel model) {
+
+		if (this.model != null) {
+			this.model.removeTableModelListener(this);
+		}
+
+		this.model = model;
+
+		if (model != null) {
+			model.addTableModelListener(this);
+		}
+
+		invalidate();
+
+	}
+
+	public void addRule(int modelColumn, Rule rule) {
+
+		List<Rule> columnRules = rules.get(modelColumn);
+		if (columnRules == null) {
+			columnRules = new ArrayList<>();
+			rules.put(modelColumn, columnRules);
+		}
+		columnRules.add(rule);
+
+		// Cached row images were painted with the previous formats
+		invalidateColumn(modelColumn);
+		table.invalidateRowImageCache();
+
+	}
+
+	public void removeRules(int modelColumn) {
+		rules.remove(modelColumn);
+		invalidateColumn(modelColumn);
+		table.invalidateRowImageCache();
+	}
+
+	public void clearRules() {
+		rules.clear();
+		invalidate();
+		table.invalidateRowImageCache();
+	}
+
+	public boolean hasRules(int modelColumn) {
+		return rules.containsKey(modelColumn);
+	}
+
+	public Format getFormat(int modelRow, int modelColumn) {
+
+		List<Rule> columnRules = rules.get(modelColumn);
+		if (columnRules == null || model == null || modelRow < 0 || modelRow >= model.getRowCount()) {
+			return null;
+		}
+
+		if (modelRow >= rowCount) {
+			rowCount = model.getRowCount();
+		}
+
+		short[] columnStates = getStates(modelColumn);
+
+		short state = columnStates[modelRow];
+		if (state == NOT_EVALUATED) {
+			state = toState(evaluate(columnRules, model, modelRow, modelColumn));
+			columnStates[modelRow] = state;
+		}
+
+		return state >= FIRST_FORMAT ? formats.get(state - FIRST_FORMAT) : null;
+
+	}
+
+	private short[] getStates(int modelColumn) {
+
+		short[] columnStates = states.get(modelColumn);
+		if (columnStates == null || columnStates.length < rowCount) {
+			columnStates = columnStates == null ? new short[rowCount] : Arrays.copyOf(columnStates, rowCount);
+			states.put(modelColumn, columnStates);
+		}
+
+		return columnStates;
+
+	}
+
+	private static Format evaluate(List<Rule> columnRules, TableModel model, int modelRow, int modelColumn) {
+
+		Object value = model.getValueAt(modelRow, modelColumn);
+
+		// The first matching rule wins
+		for (Rule rule : columnRules) {
+			Format format = rule.evaluate(model, modelRow, modelColumn, value);
+			if (format != null) {
+				return format;
+			}
+		}
+
+		return null;
+
+	}
+
+	private short toState(Format format) {
+
+		if (format == null) {
+			return NO_FORMAT;
+		}
+
+		Short index = formatIndices.get(format);
+		if (index == null) {
+			if (formats.size() >= Short.MAX_VALUE - FIRST_FORMAT) {
+				return NOT_EVALUATED; // Too many distinct formats, evaluate again next time
+			}
+			index = (short) formats.size();
+			formats.add(format);
+			formatIndices.put(format, index);
+		}
+
+		return (short) (index + FIRST_FORMAT);
+
+	}
+
+	public void invalidate() {
+		rowCount = model != null ? model.getRowCount() : 0;
+		states.clear();
+		generation++;
+	}
+
+	public void invalidateColumn(int modelColumn) {
+		states.remove(modelColumn);
+		generation++;
+	}
+
+	public void invalidateRows(int firstRow, int lastRow) {
+
+		for (short[] columnStates : states.values()) {
+			Arrays.fill(columnStates, Math.max(firstRow, 0), Math.min(lastRow + 1, columnStates.length), NOT_EVALUATED);
+		}
+
+		generation++;
+
+	}
+
+	@Override
+	public void tableChanged(TableModelEvent e) {
+
+		int firstRow = e.getFirstRow();
+		int lastRow = e.getLastRow();
+
+		if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+			invalidate();
+		} else if (e.getType() == TableModelEvent.INSERT) {
+			shiftRows(firstRow, lastRow - firstRow + 1);
+		} else if (e.getType() == TableModelEvent.DELETE) {
+			shiftRows(firstRow, -(lastRow - firstRow + 1));
+		} else {
+
+			// Rules can compare against other columns, so the whole row is invalidated
+			invalidateRows(firstRow, lastRow);
+
+		}
+
+	}
+
+	private void shiftRows(int firstRow, int count) {
+
+		int newRowCount = rowCount + count;
+
+		for (Map.Entry<Integer, short[]> entry : states.entrySet()) {
+
+			short[] oldStates = entry.getValue();
+			short[] newStates = new short[newRowCount];
+
+			int headCount = Math.min(firstRow, oldStates.length);
+			System.arraycopy(oldStates, 0, newStates, 0, headCount);
+
+			int tailFrom = count > 0 ? firstRow : firstRow - count;
+			int tailTo = count > 0 ? firstRow + count : firstRow;
+			if (tailFrom < oldStates.length) {
+				System.arraycopy(oldStates, tailFrom, newStates, tailTo, Math.min(oldStates.length - tailFrom, newRowCount - tailTo));
+			}
+
+			entry.setValue(newStates);
+
+		}
+
+		rowCount = newRowCount;
+		generation++;
+
+	}
+
+	// Evaluates all rules on a background thread and publishes the results on the EDT, the model is only accessed
+	// on the EDT: the rows are read in chunks on the EDT and the rules are evaluated (on the background thread)
+	// against a snapshot of the chunk, results are discarded when the model changed in the mean time
+	public void precompute() {
+
+		if (model == null || rules.isEmpty()) {
+			return;
+		}
+
+		final int precomputeGeneration = generation;
+		final int precomputeRowCount = rowCount;
+		final ChunkModel chunk = new ChunkModel(model, precomputeRowCount);
+
+		// The rule lists are copied, rules can be added while evaluating
+		final Map<Integer, List<Rule>> precomputeRules = new HashMap<>();
+		for (Map.Entry<Integer, List<Rule>> entry : rules.entrySet()) {
+			precomputeRules.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+		}
+
+		getExecutor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					evaluateChunks();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+
+			private void evaluateChunks() throws InterruptedException, InvocationTargetException {
+
+				final Map<Integer, Format[]> results = new HashMap<>();
+				for (Integer modelColumn : precomputeRules.keySet()) {
+					results.put(modelColumn, new Format[precomputeRowCount]);
+				}
+
+				for (int start = 0; start < precomputeRowCount; start += CHUNK_SIZE) {
+
+					int end = Math.min(start + CHUNK_SIZE, precomputeRowCount);
+					if (!readChunk(start, end)) {
+						return;
+					}
+
+					for (Map.Entry<Integer, List<Rule>> entry : precomputeRules.entrySet()) {
+						Format[] columnResults = results.get(entry.getKey());
+						for (int row = start; row < end; row++) {
+							columnResults[row] = evaluate(entry.getValue(), chunk, row, entry.getKey());
+						}
+					}
+
+				}
+
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+
+						if (generation == precomputeGeneration && rowCount == precomputeRowCount) {
+
+							for (Map.Entry<Integer, Format[]> entry : results.entrySet()) {
+
+								if (rules.containsKey(entry.getKey())) {
+
+									short[] columnStates = getStates(entry.getKey());
+									Format[] columnResults = entry.getValue();
+									for (int row = 0; row < columnResults.length; row++) {
+										columnStates[row] = toState(columnResults[row]);
+									}
+
+								}
+
+							}
+
+							table.repaint();
+
+						}
+
+					}
+				});
+
+			}
+
+			// Returns false if the model changed since precompute() was called
+			private boolean readChunk(int start, int end) throws InterruptedException, InvocationTargetException {
+
+				final boolean[] read = new boolean[] { false };
+
+				SwingUtilities.invokeAndWait(new Runnable() {
+
+					@Override
+					public void run() {
+						if (generation == precomputeGeneration && rowCount == precomputeRowCount) {
+							chunk.read(start, end);
+							read[0] = true;
+						}
+					}
+				});
+
+				return read[0];
+
+			}
+		});
+
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "ConditionalFormatting"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		return executor;
+
+	}
+
+	public static Rule createRule(Predicate<Object> predicate, Format format) {
+		return new Rule() {
+
+			@Override
+			public Format evaluate(TableModel model, int row, int column, Object value) {
+				return predicate.test(value) ? format : null;
+			}
+		};
+	}
+
+	// Snapshot of a chunk of rows, rules which read other rows than the rows of the chunk get null values
+	private static class ChunkModel extends AbstractTableModel {
+
+		private final TableModel model;
+		private final int rowCount;
+		private final int columnCount;
+		private final String[] columnNames;
+		private final Class<?>[] columnClasses;
+		private Object[][] values = new Object[0][];
+		private int start = 0;
+
+		private ChunkModel(TableModel model, int rowCount) {
+
+			this.model = model;
+			this.rowCount = rowCount;
+			this.columnCount = model.getColumnCount();
+			this.columnNames = new String[columnCount];
+			this.columnClasses = new Class<?>[columnCount];
+
+			for (int column = 0; column < columnCount; column++) {
+				columnNames[column] = model.getColumnName(column);
+				columnClasses[column] = model.getColumnClass(column);
+			}
+
+		}
+
+		// Must be called on the EDT
+		private void read(int start, int end) {
+
+			int columns = Math.min(columnCount, model.getColumnCount());
+			Object[][] values = new Object[end - start][columnCount];
+
+			for (int row = start; row < end; row++) {
+				for (int column = 0; column < columns; column++) {
+					values[row - start][column] = model.getValueAt(row, column);
+				}
+			}
+
+			this.values = values;
+			this.start = start;
+
+		}
+
+		@Override
+		public int getRowCount() {
+			return rowCount;
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnCount;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return columnClasses[column];
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			return row >= start && row < start + values.length ? values[row - start][column] : null;
+		}
+
+	}
+
+	public static interface Rule {
+
+		public Format evaluate(TableModel model, int row, int column, Object value);
+
+	}
+
+	public static class Format {
+
+		private final Color foreground;
+		private final Color background;
+		private final int fontStyle;
+		private final Icon icon;
+
+		private Font font = null;
+		private Font derivedFont = null;
+
+		public Format(Color foreground) {
+			this(foreground, null, -1, null);
+		}
+
+		public Format(Color foreground, Color background) {
+			this(foreground, background, -1, null);
+		}
+
+		public Format(Color foreground, Color background, int fontStyle, Icon icon) {
+			this.foreground = foreground;
+			this.background = background;
+			this.fontStyle = fontStyle;
+			this.icon = icon;
+		}
+
+		public Color getForeground() {
+			return foreground;
+		}
+
+		public Color getBackground() {
+			return background;
+		}
+
+		public int getFontStyle() {
+			return fontStyle;
+		}
+
+		public Icon getIcon() {
+			return icon;
+		}
+
+		public Font deriveFont(Font font) {
+
+			// Cache the derived font, deriveFont() creates a new instance on every call
+			if (fontStyle < 0 || font == null) {
+				return font;
+			} else if (font != this.font) {
+				this.font = font;
+				this.derivedFont = font.deriveFont(fontStyle);
+			}
+
+			return derivedFont;
+
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Format) {
+				Format format = (Format) obj;
+				return Objects.equals(foreground, format.foreground) && Objects.equals(background, format.background) && fontStyle == format.fontStyle && icon == format.icon;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(foreground, background, fontStyle, System.identityHashCode(icon));
+		}
+
+	}
+
+}
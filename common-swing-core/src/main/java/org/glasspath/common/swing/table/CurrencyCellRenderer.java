@@ -26,6 +26,7 @@ import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.util.function.Function;
 
 import javax.swing.JLabel;
 import javax.swing.JTable;
@@ -34,9 +35,10 @@ import javax.swing.table.DefaultTableCellRenderer;
 import org.glasspath.common.format.FormatUtils;
 import org.glasspath.common.swing.SwingUtils;
 
-public class CurrencyCellRenderer extends DefaultTableCellRenderer {
+public class CurrencyCellRenderer extends DefaultTableCellRenderer implements TextFormattable, ToolTipTextProvider {
 
 	private final CurrencyLabel currencyLabel = new CurrencyLabel();
+	private final FormattedValueCache cache = new FormattedValueCache();
 
 	@Override
 	public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
@@ -44,7 +46,7 @@ public class CurrencyCellRenderer extends DefaultTableCellRenderer {
 		JLabel label = (JLabel) super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 		
 		currencyLabel.setFont(label.getFont());
-		currencyLabel.setText(value != null ? FormatUtils.CURRENCY_FORMAT.format(Double.parseDouble(value.toString())) : ""); //$NON-NLS-1$
+		currencyLabel.setText(value != null ? format(value) : ""); //$NON-NLS-1$
 		currencyLabel.setBackground(label.getBackground());
 		currencyLabel.setForeground(label.getForeground());
 		
@@ -52,6 +54,28 @@ public class CurrencyCellRenderer extends DefaultTableCellRenderer {
 		
 	}
 
+	protected String format(Object value) {
+		if (value instanceof Number) {
+			return cache.format(FormatUtils.CURRENCY_FORMAT, ((Number) value).doubleValue());
+		} else {
+			return FormatUtils.CURRENCY_FORMAT.format(Double.parseDouble(value.toString()));
+		}
+	}
+
+	public void invalidateCache() {
+		cache.invalidate();
+	}
+
+	@Override
+	public String getToolTipText(JTable table, Object value, int row, int column) {
+		return value != null ? format(value) : null;
+	}
+
+	@Override
+	public Function<Object, String> createTextFormatter() {
+		return DecimalFormatCellRenderer.createTextFormatter(FormatUtils.CURRENCY_FORMAT);
+	}
+
 	private class CurrencyLabel extends JLabel {
 
 		public CurrencyLabel() {
@@ -22,9 +22,21 @@
  */
 package org.glasspath.common.swing.table;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.undo.CannotRedoException;
@@ -33,14 +45,36 @@ import javax.swing.undo.UndoableEdit;
 
 import org.glasspath.common.swing.resources.CommonResources;
 import org.glasspath.common.swing.table.Table.ModelListener;
+import org.glasspath.common.swing.undo.DefaultUndoManager;
+import org.glasspath.common.swing.undo.DefaultUndoManager.Batchable;
+import org.glasspath.common.swing.undo.DefaultUndoManager.BatchUndoable;
+import org.glasspath.common.swing.undo.DefaultUndoManager.Coalescible;
+import org.glasspath.common.swing.undo.DefaultUndoManager.Spillable;
+import org.glasspath.common.swing.undo.UndoJournal;
+import org.glasspath.common.swing.undo.UndoJournal.EditCodec;
 import org.glasspath.common.swing.undo.UndoManager;
 
-public abstract class DataListTableModel extends AbstractTableModel implements Reorderable {
+// Table model with undo support, computed columns and (optionally) coalesced cell updates. Coalesced cell updates are
+// fired as one event per column and run of updated rows, so the events never cover other columns, but when more than
+// MAX_COALESCED_EVENTS runs are updated in one turn every column gets one event from it's first to it's last updated
+// row, in that case the event can include rows of the column which weren't updated
+public abstract class DataListTableModel extends AbstractTableModel implements Reorderable, Batchable {
+
+	// When more runs of rows are updated in one turn a single event per column is fired
+	public static final int MAX_COALESCED_EVENTS = 32;
 
 	private UndoManager undoManager = null;
 	private boolean undoRedoing = false;
 	private boolean cellButtonUpdate = false;
 	private final List<ModelListener> listeners = new ArrayList<>();
+	private final Map<Integer, ComputedColumn> computedColumns = new HashMap<>();
+	private final Map<Integer, List<ComputedColumn>> dependentColumns = new HashMap<>();
+	private boolean cellUpdatesCoalesced = false;
+	private final Map<Integer, BitSet> pendingCellUpdates = new HashMap<>();
+	private boolean cellUpdatesFlushScheduled = false;
+	private boolean flushingCellUpdates = false;
+	private int batchDepth = 0;
+	private boolean batchCellUpdatesCoalesced = false;
 
 	public DataListTableModel() {
 
@@ -70,6 +104,46 @@ public abstract class DataListTableModel extends AbstractTableModel implements R
 		this.cellButtonUpdate = cellButtonUpdate;
 	}
 
+	public boolean isCellUpdatesCoalesced() {
+		return cellUpdatesCoalesced;
+	}
+
+	// When enabled, cell updates (which should be fired on the EDT) are collected and fired once per event-dispatch
+	// turn, merged into runs of rows per column, so updating many cells doesn't flood the table and it's listeners
+	public void setCellUpdatesCoalesced(boolean cellUpdatesCoalesced) {
+		this.cellUpdatesCoalesced = cellUpdatesCoalesced;
+		if (!cellUpdatesCoalesced) {
+			flushCellUpdates();
+		}
+	}
+
+	public boolean isFlushingCellUpdates() {
+		return flushingCellUpdates;
+	}
+
+	// While a group of edits is undone or redone the cell updates are coalesced, so the
+	// table receives one event for the whole group instead of one event for every cell
+	@Override
+	public void beginBatch() {
+		if (batchDepth++ == 0) {
+			batchCellUpdatesCoalesced = cellUpdatesCoalesced;
+			cellUpdatesCoalesced = true;
+			setUndoRedoing(true);
+		}
+	}
+
+	@Override
+	public void endBatch() {
+		if (batchDepth > 0 && --batchDepth == 0) {
+			setUndoRedoing(false);
+			setCellUpdatesCoalesced(batchCellUpdatesCoalesced);
+		}
+	}
+
+	public boolean isBatchUpdating() {
+		return batchDepth > 0;
+	}
+
 	@Override
 	public void addTableModelListener(TableModelListener listener) {
 		super.addTableModelListener(listener);
@@ -108,23 +182,349 @@ public abstract class DataListTableModel extends AbstractTableModel implements R
 
 	@Override
 	public void fireTableCellUpdated(int row, int column) {
+
+		if (cellUpdatesCoalesced && row >= 0 && column >= 0) {
+
+			BitSet rows = pendingCellUpdates.get(column);
+			if (rows == null) {
+				rows = new BitSet();
+				pendingCellUpdates.put(column, rows);
+			}
+			rows.set(row);
+
+			if (!cellUpdatesFlushScheduled) {
+				cellUpdatesFlushScheduled = true;
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						flushCellUpdates();
+					}
+				});
+			}
+
+		} else {
+			setSomethingChanged(true);
+			super.fireTableCellUpdated(row, column);
+		}
+
+	}
+
+	public void flushCellUpdates() {
+
+		cellUpdatesFlushScheduled = false;
+
+		if (pendingCellUpdates.isEmpty()) {
+			return;
+		}
+
+		// Collect the runs of updated rows per column {firstRow, lastRow, column}, when there are too many
+		// runs every column is fired as one run from it's first to it's last updated row instead
+		List<int[]> runs = new ArrayList<>();
+
+		List<Integer> columns = new ArrayList<>(pendingCellUpdates.keySet());
+		Collections.sort(columns);
+
+		for (int column : columns) {
+
+			BitSet rows = pendingCellUpdates.get(column);
+
+			int firstRow = rows.nextSetBit(0);
+			while (firstRow >= 0 && runs.size() <= MAX_COALESCED_EVENTS) {
+				int lastRow = rows.nextClearBit(firstRow) - 1;
+				runs.add(new int[] { firstRow, lastRow, column });
+				firstRow = rows.nextSetBit(lastRow + 1);
+			}
+
+		}
+
+		if (runs.size() > MAX_COALESCED_EVENTS) {
+			runs.clear();
+			for (int column : columns) {
+				BitSet rows = pendingCellUpdates.get(column);
+				if (!rows.isEmpty()) {
+					runs.add(new int[] { rows.nextSetBit(0), rows.length() - 1, column });
+				}
+			}
+		}
+
+		pendingCellUpdates.clear();
+
 		setSomethingChanged(true);
-		super.fireTableCellUpdated(row, column);
+
+		flushingCellUpdates = true;
+		try {
+			for (int[] run : runs) {
+				fireTableChanged(new TableModelEvent(this, run[0], run[1], run[2]));
+			}
+		} finally {
+			flushingCellUpdates = false;
+		}
+
+		for (ModelListener listener : listeners) {
+			listener.cellUpdatesFlushed();
+		}
+
+	}
+
+	private void updatePendingCellUpdates(TableModelEvent e) {
+
+		int firstRow = e.getFirstRow();
+		int lastRow = e.getLastRow();
+
+		if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+
+			// The event covers all cells
+			pendingCellUpdates.clear();
+			setSomethingChanged(true);
+
+		} else if (e.getType() == TableModelEvent.INSERT || e.getType() == TableModelEvent.DELETE) {
+
+			// Pending rows are moved with the inserted or deleted rows, so they are fired with the new indices
+			int count = e.getType() == TableModelEvent.INSERT ? lastRow - firstRow + 1 : -(lastRow - firstRow + 1);
+			for (BitSet rows : pendingCellUpdates.values()) {
+
+				int from = count > 0 ? firstRow : firstRow - count;
+				BitSet movedRows = rows.get(from, Math.max(rows.length(), from));
+				rows.clear(firstRow, Math.max(rows.length(), firstRow));
+
+				int row = movedRows.nextSetBit(0);
+				while (row >= 0) {
+					rows.set(from + row + count);
+					row = movedRows.nextSetBit(row + 1);
+				}
+
+			}
+
+		}
+
+	}
+
+	public void addComputedColumn(int column, int[] sourceColumns, Formula formula) {
+
+		ComputedColumn computedColumn = new ComputedColumn(column, formula);
+		computedColumns.put(column, computedColumn);
+
+		for (int sourceColumn : sourceColumns) {
+			List<ComputedColumn> dependents = dependentColumns.get(sourceColumn);
+			if (dependents == null) {
+				dependents = new ArrayList<>();
+				dependentColumns.put(sourceColumn, dependents);
+			}
+			dependents.add(computedColumn);
+		}
+
+	}
+
+	public boolean isComputedColumn(int column) {
+		return computedColumns.containsKey(column);
+	}
+
+	// Should be called by getValueAt() for computed columns, the value is computed
+	// once and memoized until one of the source cells of the row is updated
+	public Object getComputedValue(int row, int column) {
+
+		ComputedColumn computedColumn = computedColumns.get(column);
+		if (computedColumn == null) {
+			return null;
+		}
+
+		Object[] values = computedColumn.getValues(getRowCount());
+		if (row < 0 || row >= values.length) {
+			return computedColumn.formula.compute(row);
+		}
+
+		Object value = values[row];
+		if (value == ComputedColumn.NOT_COMPUTED) {
+			value = computedColumn.formula.compute(row);
+			values[row] = value;
+		}
+
+		return value;
+
+	}
+
+	public void invalidateComputedColumns() {
+		for (ComputedColumn computedColumn : computedColumns.values()) {
+			computedColumn.values = null;
+		}
+	}
+
+	@Override
+	public void fireTableChanged(TableModelEvent e) {
+
+		if (!pendingCellUpdates.isEmpty() && !flushingCellUpdates) {
+			updatePendingCellUpdates(e);
+		}
+
+		if (computedColumns.isEmpty()) {
+			super.fireTableChanged(e);
+			return;
+		}
+
+		int firstRow = e.getFirstRow();
+		int lastRow = e.getLastRow();
+
+		if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+			invalidateComputedColumns();
+			super.fireTableChanged(e);
+		} else if (e.getType() == TableModelEvent.INSERT) {
+			for (ComputedColumn computedColumn : computedColumns.values()) {
+				computedColumn.shiftRows(firstRow, lastRow - firstRow + 1);
+			}
+			super.fireTableChanged(e);
+		} else if (e.getType() == TableModelEvent.DELETE) {
+			for (ComputedColumn computedColumn : computedColumns.values()) {
+				computedColumn.shiftRows(firstRow, -(lastRow - firstRow + 1));
+			}
+			super.fireTableChanged(e);
+		} else if (e.getColumn() == TableModelEvent.ALL_COLUMNS) {
+
+			// The event already covers the computed columns
+			for (ComputedColumn computedColumn : computedColumns.values()) {
+				computedColumn.invalidate(firstRow, lastRow);
+			}
+			super.fireTableChanged(e);
+
+		} else {
+
+			// Invalidate the (transitive) dependents of the updated column before any listener is notified,
+			// so listeners of the source event don't read stale values, then notify them only about those cells
+			List<ComputedColumn> invalidated = new ArrayList<>();
+			collectDependents(e.getColumn(), invalidated);
+
+			for (ComputedColumn computedColumn : invalidated) {
+				computedColumn.invalidate(firstRow, lastRow);
+			}
+
+			super.fireTableChanged(e);
+
+			for (ComputedColumn computedColumn : invalidated) {
+				super.fireTableChanged(new TableModelEvent(this, firstRow, lastRow, computedColumn.column));
+			}
+
+		}
+
+	}
+
+	private void collectDependents(int column, List<ComputedColumn> dependents) {
+
+		List<ComputedColumn> columnDependents = dependentColumns.get(column);
+		if (columnDependents != null) {
+			for (ComputedColumn computedColumn : columnDependents) {
+				if (!dependents.contains(computedColumn)) {
+					dependents.add(computedColumn);
+					collectDependents(computedColumn.column, dependents);
+				}
+			}
+		}
+
+	}
+
+	// Codec for journaling (see UndoJournal) the value changes of this model, the type should identify the model across sessions,
+	// changes with a second table model or with resulting undoables can't be journaled, coalesced changes are written with the edit
+	public EditCodec createJournalCodec(String type) {
+		return new EditCodec() {
+
+			@Override
+			public String getType() {
+				return type;
+			}
+
+			@Override
+			public boolean accepts(UndoableEdit edit) {
+				if (edit instanceof SetValueUndoable) {
+					SetValueUndoable setValueUndoable = (SetValueUndoable) edit;
+					if (setValueUndoable.getDataListTableModel() != DataListTableModel.this || setValueUndoable.tableModel != null || !setValueUndoable.resultingUndoables.isEmpty()) {
+						return false;
+					}
+					for (SetValueUndoable coalescedEdit : setValueUndoable.coalescedEdits) {
+						if (!coalescedEdit.resultingUndoables.isEmpty()) {
+							return false;
+						}
+					}
+					return true;
+				} else {
+					return false;
+				}
+			}
+
+			@Override
+			public void write(UndoableEdit edit, DataOutput out) throws IOException {
+				SetValueUndoable setValueUndoable = (SetValueUndoable) edit;
+				out.writeInt(setValueUndoable.rowIndex);
+				out.writeInt(setValueUndoable.columnIndex);
+				UndoJournal.writeValue(out, setValueUndoable.oldValue);
+				UndoJournal.writeValue(out, setValueUndoable.newValue);
+				out.writeInt(setValueUndoable.coalescedEdits.size());
+				for (SetValueUndoable coalescedEdit : setValueUndoable.coalescedEdits) {
+					UndoJournal.writeValue(out, coalescedEdit.oldValue);
+					UndoJournal.writeValue(out, coalescedEdit.newValue);
+				}
+			}
+
+			@Override
+			public UndoableEdit read(DataInput in) throws IOException {
+				int rowIndex = in.readInt();
+				int columnIndex = in.readInt();
+				Object oldValue = UndoJournal.readValue(in);
+				Object newValue = UndoJournal.readValue(in);
+				SetValueUndoable edit = new SetValueUndoable(rowIndex, columnIndex, oldValue, newValue, null);
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					oldValue = UndoJournal.readValue(in);
+					newValue = UndoJournal.readValue(in);
+					edit.coalescedEdits.add(new SetValueUndoable(rowIndex, columnIndex, oldValue, newValue, null));
+				}
+				return edit;
+			}
+		};
+	}
+
+	// The rows moved by reorderAll(), models backed by a list should return it so a block of rows is moved in
+	// one pass with one event, when null is returned (the default) the rows are moved one by one using reorder()
+	protected List<?> getReorderableRows() {
+		return null;
+	}
+
+	@Override
+	public void reorderAll(int[] fromIndices, int toIndex) {
+
+		List<?> rows = getReorderableRows();
+		if (rows == null) {
+			Reorderable.super.reorderAll(fromIndices, toIndex);
+		} else if (fromIndices.length > 0) {
+
+			Reorderable.reorderAll(rows, fromIndices, toIndex);
+
+			setSomethingChanged(true);
+			fireTableRowsUpdated(Reorderable.getFirstAffectedIndex(fromIndices, toIndex), Reorderable.getLastAffectedIndex(fromIndices, toIndex));
+
+		}
+
+	}
+
+	// Returns true if the value of a change can be spilled to disk (see DefaultUndoManager.setSizeLimit()), spilled values
+	// are read back as copies, so by default only immutable value types are spilled, models which don't depend on the
+	// identity of other Serializable values can override this
+	protected boolean isSpillable(Object value) {
+		return UndoJournal.isValueType(value);
 	}
 
 	public abstract void setSomethingChanged(boolean somethingChanged);
 
 	public abstract void dispose();
 
-	protected class SetValueUndoable implements UndoableEdit {
+	protected class SetValueUndoable implements UndoableEdit, Spillable, Coalescible, BatchUndoable {
 
 		public final int rowIndex;
 		public final int columnIndex;
-		private final Object oldValue;
-		private final Object newValue;
+		private Object oldValue;
+		private Object newValue;
 		private final DataListTableModel tableModel;
 
 		private final ArrayList<ResultingUndoable<?>> resultingUndoables = new ArrayList<ResultingUndoable<?>>();
+		private final List<SetValueUndoable> coalescedEdits = new ArrayList<>();
 
 		private SetValueUndoable(int rowIndex, int columnIndex, Object oldValue, Object newValue, DataListTableModel tableModel) {
 			this.rowIndex = rowIndex;
@@ -154,12 +554,98 @@ public abstract class DataListTableModel extends AbstractTableModel implements R
 			return false;
 		}
 
+		// Resulting undoables belong to the last change, so they're undone before the earlier coalesced changes
 		public void addResultingUndoable(ResultingUndoable<?> undoable) {
-			if (!isUndoRedoing() && (tableModel == null || !tableModel.isUndoRedoing())) {
+			if (!coalescedEdits.isEmpty()) {
+				coalescedEdits.get(coalescedEdits.size() - 1).addResultingUndoable(undoable);
+			} else if (!isUndoRedoing() && (tableModel == null || !tableModel.isUndoRedoing())) {
 				resultingUndoables.add(undoable);
 			}
 		}
 
+		private DataListTableModel getDataListTableModel() {
+			return DataListTableModel.this;
+		}
+
+		@Override
+		public Collection<? extends Batchable> getBatchTargets() {
+			return tableModel != null ? Arrays.asList(DataListTableModel.this, tableModel) : Collections.singletonList(DataListTableModel.this);
+		}
+
+		@Override
+		public boolean coalesce(UndoableEdit edit) {
+
+			// Repeated changes of the same cell become one edit, the changes are kept (instead of only the
+			// last value) so resulting undoables added later are undone together with the right change
+			if (edit instanceof SetValueUndoable) {
+
+				SetValueUndoable setValueUndoable = (SetValueUndoable) edit;
+				if (setValueUndoable.getDataListTableModel() == DataListTableModel.this && setValueUndoable.tableModel == tableModel && setValueUndoable.rowIndex == rowIndex && setValueUndoable.columnIndex == columnIndex && setValueUndoable.resultingUndoables.isEmpty() && setValueUndoable.coalescedEdits.isEmpty()) {
+					coalescedEdits.add(setValueUndoable);
+					return true;
+				}
+
+			}
+
+			return false;
+
+		}
+
+		@Override
+		public long getEstimatedSize() {
+			long size = 64 + DefaultUndoManager.estimateSize(oldValue) + DefaultUndoManager.estimateSize(newValue);
+			for (ResultingUndoable<?> undoable : resultingUndoables) {
+				size += 32 + DefaultUndoManager.estimateSize(undoable.getOldValue());
+			}
+			for (SetValueUndoable coalescedEdit : coalescedEdits) {
+				size += coalescedEdit.getEstimatedSize();
+			}
+			return size;
+		}
+
+		@Override
+		public Serializable spill() {
+
+			// Only the values (of this and the coalesced changes) are spilled, resulting undoables can refer to anything
+			Object[] state = new Object[2 + 2 * coalescedEdits.size()];
+			for (int i = 0; i <= coalescedEdits.size(); i++) {
+
+				SetValueUndoable edit = i == 0 ? this : coalescedEdits.get(i - 1);
+				Object oldState = edit.oldValue instanceof CharSequence ? edit.oldValue.toString() : edit.oldValue;
+				Object newState = edit.newValue instanceof CharSequence ? edit.newValue.toString() : edit.newValue;
+				if (!edit.resultingUndoables.isEmpty() || !isSpillableValue(oldState) || !isSpillableValue(newState)) {
+					return null;
+				}
+
+				state[2 * i] = oldState;
+				state[2 * i + 1] = newState;
+
+			}
+
+			for (int i = 0; i <= coalescedEdits.size(); i++) {
+				SetValueUndoable edit = i == 0 ? this : coalescedEdits.get(i - 1);
+				edit.oldValue = null;
+				edit.newValue = null;
+			}
+
+			return state;
+
+		}
+
+		private boolean isSpillableValue(Object value) {
+			return (value == null || value instanceof Serializable) && isSpillable(value);
+		}
+
+		@Override
+		public void restore(Serializable state) {
+			Object[] values = (Object[]) state;
+			for (int i = 0; i <= coalescedEdits.size(); i++) {
+				SetValueUndoable edit = i == 0 ? this : coalescedEdits.get(i - 1);
+				edit.oldValue = values[2 * i];
+				edit.newValue = values[2 * i + 1];
+			}
+		}
+
 		@Override
 		public boolean canRedo() {
 			return true;
@@ -188,11 +674,14 @@ public abstract class DataListTableModel extends AbstractTableModel implements R
 			if (tableModel != null) {
 				tableModel.setUndoRedoing(true);
 				tableModel.setValueAt(newValue, rowIndex, columnIndex);
-				tableModel.setUndoRedoing(false);
+				tableModel.setUndoRedoing(tableModel.isBatchUpdating());
 			} else {
 				setValueAt(newValue, rowIndex, columnIndex);
 			}
-			setUndoRedoing(false);
+			setUndoRedoing(isBatchUpdating());
+			for (SetValueUndoable coalescedEdit : coalescedEdits) {
+				coalescedEdit.redo();
+			}
 		}
 
 		@Override
@@ -202,6 +691,9 @@ public abstract class DataListTableModel extends AbstractTableModel implements R
 
 		@Override
 		public void undo() throws CannotUndoException {
+			for (int i = coalescedEdits.size() - 1; i >= 0; i--) {
+				coalescedEdits.get(i).undo();
+			}
 			setUndoRedoing(true);
 			if (tableModel != null) {
 				tableModel.setUndoRedoing(true);
@@ -213,9 +705,78 @@ public abstract class DataListTableModel extends AbstractTableModel implements R
 				undoable.undo();
 			}
 			if (tableModel != null) {
-				tableModel.setUndoRedoing(false);
+				tableModel.setUndoRedoing(tableModel.isBatchUpdating());
 			}
-			setUndoRedoing(false);
+			setUndoRedoing(isBatchUpdating());
+		}
+
+	}
+
+	public static interface Formula {
+
+		public Object compute(int row);
+
+	}
+
+	private static class ComputedColumn {
+
+		private static final Object NOT_COMPUTED = new Object();
+
+		private final int column;
+		private final Formula formula;
+		private Object[] values = null;
+
+		private ComputedColumn(int column, Formula formula) {
+			this.column = column;
+			this.formula = formula;
+		}
+
+		private Object[] getValues(int rowCount) {
+			if (values == null) {
+				values = new Object[rowCount];
+				Arrays.fill(values, NOT_COMPUTED);
+			} else if (values.length != rowCount) {
+				// The memoized values can't be matched with the rows anymore, this is a bug in the model
+				throw new IllegalStateException("Row count of computed column " + column + " changed from " + values.length + " to " + rowCount //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						+ " without a rows inserted or deleted event, fire the event or call invalidateComputedColumns()"); //$NON-NLS-1$
+			}
+			return values;
+		}
+
+		private void invalidate(int firstRow, int lastRow) {
+			if (values != null) {
+				Arrays.fill(values, Math.max(firstRow, 0), Math.min(lastRow + 1, values.length), NOT_COMPUTED);
+			}
+		}
+
+		private void shiftRows(int firstRow, int count) {
+
+			if (values != null && firstRow >= 0 && firstRow <= values.length) {
+
+				int newLength = values.length + count;
+				if (newLength < 0) {
+					values = null;
+					return;
+				}
+
+				Object[] newValues = new Object[newLength];
+				System.arraycopy(values, 0, newValues, 0, firstRow);
+
+				if (count > 0) {
+					Arrays.fill(newValues, firstRow, firstRow + count, NOT_COMPUTED);
+					System.arraycopy(values, firstRow, newValues, firstRow + count, values.length - firstRow);
+				} else if (firstRow - count <= values.length) {
+					System.arraycopy(values, firstRow - count, newValues, firstRow, values.length - firstRow + count);
+				} else {
+					newValues = null;
+				}
+
+				values = newValues;
+
+			} else {
+				values = null;
+			}
+
 		}
 
 	}
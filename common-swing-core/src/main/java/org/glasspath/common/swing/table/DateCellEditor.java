@@ -23,8 +23,8 @@
 package org.glasspath.common.swing.table;
 
 import org.glasspath.common.date.DateUtils;
-import org.glasspath.common.format.FormatUtils;
 import org.glasspath.common.swing.date.DatePicker.MonthView;
+import org.glasspath.common.swing.date.LocalDateFormatter;
 import org.jdesktop.swingx.table.DatePickerCellEditor;
 
 public class DateCellEditor extends DatePickerCellEditor {
@@ -33,7 +33,7 @@ public class DateCellEditor extends DatePickerCellEditor {
 
 		datePicker.setMonthView(new MonthView());
 		datePicker.setTimeZone(DateUtils.GMT_TIME_ZONE);
-		setFormats(FormatUtils.DATE_FORMAT_DAY_MONTH_YEAR);
+		setFormats(LocalDateFormatter.getDefault().toDateFormat());
 		setClickCountToStart(2);
 
 	}
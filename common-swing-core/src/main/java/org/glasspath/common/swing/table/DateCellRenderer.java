@@ -24,14 +24,33 @@ package org.glasspath.common.swing.table;
 
 import java.awt.Component;
 import java.util.Date;
+import java.util.function.Function;
 
 import javax.swing.JLabel;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableCellRenderer;
 
-import org.glasspath.common.format.FormatUtils;
+import org.glasspath.common.swing.date.LocalDateFormatter;
 
-public class DateCellRenderer extends DefaultTableCellRenderer {
+public class DateCellRenderer extends DefaultTableCellRenderer implements TextFormattable, ToolTipTextProvider {
+
+	private LocalDateFormatter formatter = null;
+
+	public DateCellRenderer() {
+
+	}
+
+	public DateCellRenderer(LocalDateFormatter formatter) {
+		this.formatter = formatter;
+	}
+
+	public LocalDateFormatter getFormatter() {
+		return formatter;
+	}
+
+	public void setFormatter(LocalDateFormatter formatter) {
+		this.formatter = formatter;
+	}
 
 	@Override
 	public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
@@ -39,11 +58,26 @@ public class DateCellRenderer extends DefaultTableCellRenderer {
 		JLabel label = (JLabel) super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 
 		if (value != null && value instanceof Date) {
-			label.setText(FormatUtils.DATE_FORMAT_DAY_MONTH_YEAR.format((Date) value));
+			label.setText((formatter != null ? formatter : LocalDateFormatter.getDefault()).format((Date) value));
 		}
 
 		return label;
 
 	}
 
+	@Override
+	public String getToolTipText(JTable table, Object value, int row, int column) {
+		if (value instanceof Date) {
+			return (formatter != null ? formatter : LocalDateFormatter.getDefault()).format((Date) value);
+		} else {
+			return value != null ? value.toString() : null;
+		}
+	}
+
+	@Override
+	public Function<Object, String> createTextFormatter() {
+		LocalDateFormatter textFormatter = formatter != null ? formatter : LocalDateFormatter.getDefault();
+		return value -> value instanceof Date ? textFormatter.format((Date) value) : (value != null ? value.toString() : ""); //$NON-NLS-1$
+	}
+
 }
@@ -24,6 +24,8 @@ package org.glasspath.common.swing.table;
 
 import java.awt.Component;
 import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.function.Function;
 
 import javax.swing.JLabel;
 import javax.swing.JTable;
@@ -31,9 +33,10 @@ import javax.swing.table.DefaultTableCellRenderer;
 
 import org.glasspath.common.format.FormatUtils;
 
-public class DecimalFormatCellRenderer extends DefaultTableCellRenderer {
+public class DecimalFormatCellRenderer extends DefaultTableCellRenderer implements TextFormattable, ToolTipTextProvider {
 
 	private final DecimalFormat decimalFormat;
+	private final FormattedValueCache cache = new FormattedValueCache();
 
 	public DecimalFormatCellRenderer() {
 		this(FormatUtils.DECIMAL_FORMAT);
@@ -48,9 +51,58 @@ public class DecimalFormatCellRenderer extends DefaultTableCellRenderer {
 		JLabel label = (JLabel) super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 		label.setHorizontalAlignment(JLabel.RIGHT);
 		if (decimalFormat != null && value != null) {
-			label.setText(decimalFormat.format(Double.parseDouble(value.toString())));
+			label.setText(format(value));
 		}
 		return label;
 	}
 
+	protected String format(Object value) {
+		if (value instanceof Number) {
+			return cache.format(decimalFormat, ((Number) value).doubleValue());
+		} else {
+			return decimalFormat.format(Double.parseDouble(value.toString()));
+		}
+	}
+
+	public void invalidateCache() {
+		cache.invalidate();
+	}
+
+	@Override
+	public String getToolTipText(JTable table, Object value, int row, int column) {
+		if (decimalFormat != null && value != null) {
+			return format(value);
+		} else {
+			return value != null ? value.toString() : null;
+		}
+	}
+
+	@Override
+	public Function<Object, String> createTextFormatter() {
+		return createTextFormatter(decimalFormat);
+	}
+
+	protected static Function<Object, String> createTextFormatter(NumberFormat numberFormat) {
+
+		if (numberFormat == null) {
+			return value -> value != null ? value.toString() : ""; //$NON-NLS-1$
+		}
+
+		NumberFormat format = (NumberFormat) numberFormat.clone();
+		return value -> {
+			if (value instanceof Number) {
+				return format.format(((Number) value).doubleValue());
+			} else if (value != null) {
+				try {
+					return format.format(Double.parseDouble(value.toString()));
+				} catch (NumberFormatException e) {
+					return value.toString();
+				}
+			} else {
+				return ""; //$NON-NLS-1$
+			}
+		};
+
+	}
+
 }
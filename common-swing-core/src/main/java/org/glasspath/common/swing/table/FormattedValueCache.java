@@ -0,0 +1,104 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.text.Format;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class FormattedValueCache {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final long[] keys;
+	private final String[] values;
+	private final int mask;
+
+	private Format format = null;
+	private Locale locale = null;
+
+	public FormattedValueCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public FormattedValueCache(int capacity) {
+
+		// Round up to a power of two so the slot can be found with a mask
+		int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+
+		this.keys = new long[size];
+		this.values = new String[size];
+		this.mask = size - 1;
+
+	}
+
+	public String format(NumberFormat numberFormat, double value) {
+
+		validate(numberFormat);
+
+		long key = Double.doubleToLongBits(value);
+		String text = get(key);
+		if (text == null) {
+			text = numberFormat.format(value);
+			put(key, text);
+		}
+
+		return text;
+
+	}
+
+	public String get(long key) {
+		int index = indexOf(key);
+		return values[index] != null && keys[index] == key ? values[index] : null;
+	}
+
+	public void put(long key, String text) {
+		int index = indexOf(key);
+		keys[index] = key;
+		values[index] = text;
+	}
+
+	public void validate(Format format) {
+
+		// The cached strings depend on the format and the default locale, if either of them
+		// was replaced (for example after changing the language preferences) the cache is cleared
+		Locale locale = Locale.getDefault();
+		if (format != this.format || locale != this.locale) {
+			invalidate();
+			this.format = format;
+			this.locale = locale;
+		}
+
+	}
+
+	public void invalidate() {
+		Arrays.fill(values, null);
+	}
+
+	private int indexOf(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+}
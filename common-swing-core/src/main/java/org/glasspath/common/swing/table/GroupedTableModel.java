@@ -0,0 +1,702 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+// Groups the rows of a source model by one or more columns, every group starts with a header
+// row showing the group values and subtotals. The group index and subtotals are maintained
+// incrementally from the events of the source model, only the row layout is recreated
+public class GroupedTableModel extends AbstractTableModel implements TableModelListener {
+
+	public enum Subtotal {
+		SUM, AVERAGE, COUNT
+	}
+
+	private final TableModel source;
+	private final Map<Object, Group> groupIndex = new HashMap<>();
+	private final List<Group> groups = new ArrayList<>();
+	private int[] groupColumns = new int[0];
+	private int[] subtotalColumns = new int[0];
+	private Subtotal[] subtotals = new Subtotal[0];
+	private boolean expandedByDefault = true;
+
+	private int sourceRowCount = 0;
+	private Object[] rowKeys = new Object[0];
+	private double[][] values = new double[0][];
+
+	// View rows, a value >= 0 is a source row, a negative value -(groupIndex + 1) is a group header
+	private int[] rows = new int[0];
+	private int[] sourceToView = new int[0];
+	private int rowCount = 0;
+
+	public GroupedTableModel(TableModel source) {
+		this.source = source;
+		source.addTableModelListener(this);
+		regroup();
+	}
+
+	public TableModel getSource() {
+		return source;
+	}
+
+	public void dispose() {
+		source.removeTableModelListener(this);
+	}
+
+	public int[] getGroupColumns() {
+		return groupColumns.clone();
+	}
+
+	public void setGroupColumns(int... groupColumns) {
+		this.groupColumns = groupColumns != null ? groupColumns.clone() : new int[0];
+		regroup();
+		fireTableDataChanged();
+	}
+
+	public boolean isExpandedByDefault() {
+		return expandedByDefault;
+	}
+
+	public void setExpandedByDefault(boolean expandedByDefault) {
+		this.expandedByDefault = expandedByDefault;
+	}
+
+	public void setSubtotal(int column, Subtotal subtotal) {
+
+		int index = indexOf(subtotalColumns, column);
+		if (index >= 0) {
+			subtotalColumns = remove(subtotalColumns, index);
+			Subtotal[] newSubtotals = new Subtotal[subtotals.length - 1];
+			System.arraycopy(subtotals, 0, newSubtotals, 0, index);
+			System.arraycopy(subtotals, index + 1, newSubtotals, index, newSubtotals.length - index);
+			subtotals = newSubtotals;
+		}
+
+		if (subtotal != null) {
+			subtotalColumns = Arrays.copyOf(subtotalColumns, subtotalColumns.length + 1);
+			subtotalColumns[subtotalColumns.length - 1] = column;
+			subtotals = Arrays.copyOf(subtotals, subtotals.length + 1);
+			subtotals[subtotals.length - 1] = subtotal;
+		}
+
+		regroup();
+		fireTableDataChanged();
+
+	}
+
+	public Subtotal getSubtotal(int column) {
+		int index = indexOf(subtotalColumns, column);
+		return index >= 0 ? subtotals[index] : null;
+	}
+
+	public int getGroupCount() {
+		return groups.size();
+	}
+
+	public Group getGroupAt(int index) {
+		return groups.get(index);
+	}
+
+	public boolean isGroupHeader(int row) {
+		return row >= 0 && row < rowCount && rows[row] < 0;
+	}
+
+	public Group getGroup(int row) {
+		if (row < 0 || row >= rowCount) {
+			return null;
+		} else if (rows[row] < 0) {
+			return groups.get(-rows[row] - 1);
+		} else {
+			return groupIndex.get(rowKeys[rows[row]]);
+		}
+	}
+
+	public int getSourceRow(int row) {
+		return row >= 0 && row < rowCount ? rows[row] : -1;
+	}
+
+	public int getRow(int sourceRow) {
+		return sourceRow >= 0 && sourceRow < sourceRowCount ? sourceToView[sourceRow] : -1;
+	}
+
+	public int getHeaderRow(Group group) {
+		return group.index >= 0 ? group.headerRow : -1;
+	}
+
+	public void toggleExpanded(int row) {
+		Group group = getGroup(row);
+		if (group != null) {
+			setExpanded(group, !group.expanded);
+		}
+	}
+
+	public void setExpanded(Group group, boolean expanded) {
+
+		if (group.index >= 0 && group.expanded != expanded) {
+
+			int headerRow = getHeaderRow(group);
+
+			group.expanded = expanded;
+			layout();
+
+			// Only the rows of the group are inserted or removed, the group index is left as it is
+			if (expanded) {
+				fireTableRowsInserted(headerRow + 1, headerRow + group.size);
+			} else {
+				fireTableRowsDeleted(headerRow + 1, headerRow + group.size);
+			}
+			fireTableRowsUpdated(headerRow, headerRow);
+
+		}
+
+	}
+
+	public void setAllExpanded(boolean expanded) {
+		for (Group group : groups) {
+			group.expanded = expanded;
+		}
+		layout();
+		fireTableDataChanged();
+	}
+
+	private void regroup() {
+
+		groupIndex.clear();
+		groups.clear();
+
+		sourceRowCount = source.getRowCount();
+		rowKeys = new Object[sourceRowCount];
+		values = new double[subtotalColumns.length][sourceRowCount];
+
+		for (int row = 0; row < sourceRowCount; row++) {
+			addRow(row);
+		}
+
+		layout();
+
+	}
+
+	private Object createKey(int sourceRow) {
+
+		if (groupColumns.length == 1) {
+			return source.getValueAt(sourceRow, groupColumns[0]);
+		}
+
+		Object[] key = new Object[groupColumns.length];
+		for (int i = 0; i < groupColumns.length; i++) {
+			key[i] = source.getValueAt(sourceRow, groupColumns[i]);
+		}
+		return Arrays.asList(key);
+
+	}
+
+	private double readValue(int sourceRow, int column) {
+		Object value = source.getValueAt(sourceRow, column);
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	private void addRow(int sourceRow) {
+
+		Object key = createKey(sourceRow);
+		rowKeys[sourceRow] = key;
+
+		Group group = groupIndex.get(key);
+		if (group == null) {
+			group = new Group(key, groups.size(), expandedByDefault, subtotalColumns.length);
+			groupIndex.put(key, group);
+			groups.add(group);
+		}
+
+		group.addMember(sourceRow);
+
+		for (int i = 0; i < subtotalColumns.length; i++) {
+			values[i][sourceRow] = readValue(sourceRow, subtotalColumns[i]);
+			group.add(i, values[i][sourceRow]);
+		}
+
+	}
+
+	private void removeRow(int sourceRow) {
+
+		Group group = groupIndex.get(rowKeys[sourceRow]);
+		if (group != null) {
+
+			group.removeMember(sourceRow);
+
+			for (int i = 0; i < subtotalColumns.length; i++) {
+				group.remove(i, values[i][sourceRow]);
+			}
+
+			if (group.size == 0) {
+				groupIndex.remove(group.key);
+				groups.remove(group.index);
+				for (int i = group.index; i < groups.size(); i++) {
+					groups.get(i).index = i;
+				}
+				group.index = -1;
+			}
+
+		}
+
+	}
+
+	private void layout() {
+
+		int count = groups.size();
+		for (Group group : groups) {
+			if (group.expanded) {
+				count += group.size;
+			}
+		}
+
+		if (rows.length < count) {
+			rows = new int[count];
+		}
+		if (sourceToView.length < sourceRowCount) {
+			sourceToView = new int[sourceRowCount];
+		}
+
+		int row = 0;
+		for (Group group : groups) {
+
+			group.headerRow = row;
+			rows[row] = -group.index - 1;
+			row++;
+
+			for (int i = 0; i < group.size; i++) {
+				if (group.expanded) {
+					sourceToView[group.members[i]] = row;
+					rows[row] = group.members[i];
+					row++;
+				} else {
+					sourceToView[group.members[i]] = -1;
+				}
+			}
+
+		}
+
+		rowCount = row;
+
+	}
+
+	@Override
+	public void tableChanged(TableModelEvent e) {
+
+		int firstRow = e.getFirstRow();
+		int lastRow = e.getLastRow();
+
+		if (firstRow == TableModelEvent.HEADER_ROW) {
+			regroup();
+			fireTableStructureChanged();
+		} else if (lastRow == Integer.MAX_VALUE || source.getRowCount() != expectedRowCount(e)) {
+			regroup();
+			fireTableDataChanged();
+		} else if (e.getType() == TableModelEvent.INSERT) {
+			insertRows(firstRow, lastRow - firstRow + 1);
+		} else if (e.getType() == TableModelEvent.DELETE) {
+			deleteRows(firstRow, lastRow - firstRow + 1);
+		} else {
+			updateRows(firstRow, lastRow, e.getColumn());
+		}
+
+	}
+
+	private int expectedRowCount(TableModelEvent e) {
+		if (e.getType() == TableModelEvent.INSERT) {
+			return sourceRowCount + (e.getLastRow() - e.getFirstRow() + 1);
+		} else if (e.getType() == TableModelEvent.DELETE) {
+			return sourceRowCount - (e.getLastRow() - e.getFirstRow() + 1);
+		} else {
+			return sourceRowCount;
+		}
+	}
+
+	private void insertRows(int firstRow, int count) {
+
+		for (Group group : groups) {
+			group.shiftMembers(firstRow, count);
+		}
+
+		rowKeys = insert(rowKeys, firstRow, count);
+		for (int i = 0; i < values.length; i++) {
+			double[] newValues = new double[sourceRowCount + count];
+			System.arraycopy(values[i], 0, newValues, 0, firstRow);
+			System.arraycopy(values[i], firstRow, newValues, firstRow + count, sourceRowCount - firstRow);
+			values[i] = newValues;
+		}
+		sourceRowCount += count;
+
+		int groupCount = groups.size();
+		Set<Group> changedGroups = new LinkedHashSet<>();
+
+		for (int row = firstRow; row < firstRow + count; row++) {
+			addRow(row);
+			Group group = groupIndex.get(rowKeys[row]);
+			if (group.index < groupCount) {
+				changedGroups.add(group);
+			}
+		}
+
+		layout();
+
+		// The visible inserted rows and the headers of new groups (which are added at the end) are inserted
+		int[] insertedRows = new int[count + groups.size() - groupCount];
+		int insertedCount = 0;
+		for (int row = firstRow; row < firstRow + count; row++) {
+			if (sourceToView[row] >= 0) {
+				insertedRows[insertedCount++] = sourceToView[row];
+			}
+		}
+		for (int i = groupCount; i < groups.size(); i++) {
+			insertedRows[insertedCount++] = groups.get(i).headerRow;
+		}
+
+		// The subtotals of the existing groups have changed
+		if (fireRowRange(insertedRows, insertedCount, true)) {
+			for (Group group : changedGroups) {
+				fireTableRowsUpdated(group.headerRow, group.headerRow);
+			}
+		}
+
+	}
+
+	private void deleteRows(int firstRow, int count) {
+
+		// The view rows are collected before the layout changes, headers of groups which become empty are deleted too
+		int[] deletedRows = new int[2 * count];
+		int deletedCount = 0;
+		Set<Group> changedGroups = new LinkedHashSet<>();
+
+		for (int row = firstRow; row < firstRow + count; row++) {
+
+			if (sourceToView[row] >= 0) {
+				deletedRows[deletedCount++] = sourceToView[row];
+			}
+
+			Group group = groupIndex.get(rowKeys[row]);
+			if (group != null) {
+				changedGroups.add(group);
+			}
+
+			removeRow(row);
+
+		}
+
+		Iterator<Group> iterator = changedGroups.iterator();
+		while (iterator.hasNext()) {
+			Group group = iterator.next();
+			if (group.index < 0) {
+				deletedRows[deletedCount++] = group.headerRow;
+				iterator.remove();
+			}
+		}
+
+		for (Group group : groups) {
+			group.shiftMembers(firstRow + count, -count);
+		}
+
+		Object[] newRowKeys = new Object[sourceRowCount - count];
+		System.arraycopy(rowKeys, 0, newRowKeys, 0, firstRow);
+		System.arraycopy(rowKeys, firstRow + count, newRowKeys, firstRow, sourceRowCount - firstRow - count);
+		rowKeys = newRowKeys;
+		for (int i = 0; i < values.length; i++) {
+			double[] newValues = new double[sourceRowCount - count];
+			System.arraycopy(values[i], 0, newValues, 0, firstRow);
+			System.arraycopy(values[i], firstRow + count, newValues, firstRow, sourceRowCount - firstRow - count);
+			values[i] = newValues;
+		}
+		sourceRowCount -= count;
+
+		layout();
+
+		// The subtotals of the remaining groups have changed
+		if (fireRowRange(deletedRows, deletedCount, false)) {
+			for (Group group : changedGroups) {
+				fireTableRowsUpdated(group.headerRow, group.headerRow);
+			}
+		}
+
+	}
+
+	// Listeners (like DefaultRowSorter) expect the model to be in it's final state for every event, so the rows
+	// are only fired as one range when they are contiguous (like rows inserted into or deleted from one group),
+	// otherwise all data has changed, returns false in that case
+	private boolean fireRowRange(int[] viewRows, int count, boolean inserted) {
+
+		Arrays.sort(viewRows, 0, count);
+
+		if (count == 0) {
+			return true;
+		} else if (viewRows[count - 1] - viewRows[0] != count - 1) {
+			fireTableDataChanged();
+			return false;
+		} else if (inserted) {
+			fireTableRowsInserted(viewRows[0], viewRows[count - 1]);
+		} else {
+			fireTableRowsDeleted(viewRows[0], viewRows[count - 1]);
+		}
+
+		return true;
+
+	}
+
+	private void updateRows(int firstRow, int lastRow, int column) {
+
+		boolean regrouped = false;
+
+		for (int row = firstRow; row <= lastRow && row < sourceRowCount; row++) {
+
+			if (column == TableModelEvent.ALL_COLUMNS || indexOf(groupColumns, column) >= 0) {
+				Object key = createKey(row);
+				if (!equals(key, rowKeys[row])) {
+					removeRow(row);
+					addRow(row);
+					regrouped = true;
+					continue;
+				}
+			}
+
+			Group group = groupIndex.get(rowKeys[row]);
+			for (int i = 0; i < subtotalColumns.length; i++) {
+				if (column == TableModelEvent.ALL_COLUMNS || column == subtotalColumns[i]) {
+					double value = readValue(row, subtotalColumns[i]);
+					group.remove(i, values[i][row]);
+					group.add(i, value);
+					values[i][row] = value;
+				}
+			}
+
+		}
+
+		if (regrouped) {
+			layout();
+			fireTableDataChanged();
+		} else if (firstRow == lastRow) {
+
+			int row = getRow(firstRow);
+			if (row >= 0) {
+				fireTableChanged(new TableModelEvent(this, row, row, column));
+			}
+
+			int headerRow = getHeaderRow(groupIndex.get(rowKeys[firstRow]));
+			fireTableRowsUpdated(headerRow, headerRow);
+
+		} else {
+			fireTableRowsUpdated(0, rowCount - 1);
+		}
+
+	}
+
+	private static boolean equals(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int[] remove(int[] array, int index) {
+		int[] newArray = new int[array.length - 1];
+		System.arraycopy(array, 0, newArray, 0, index);
+		System.arraycopy(array, index + 1, newArray, index, newArray.length - index);
+		return newArray;
+	}
+
+	private static Object[] insert(Object[] array, int index, int count) {
+		Object[] newArray = new Object[array.length + count];
+		System.arraycopy(array, 0, newArray, 0, index);
+		System.arraycopy(array, index, newArray, index + count, array.length - index);
+		return newArray;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return source.getColumnCount();
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return source.getColumnName(column);
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column) {
+		return source.getColumnClass(column);
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int column) {
+		return rows[row] >= 0 && source.isCellEditable(rows[row], column);
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+
+		if (rows[row] >= 0) {
+			return source.getValueAt(rows[row], column);
+		}
+
+		Group group = groups.get(-rows[row] - 1);
+
+		int index = indexOf(groupColumns, column);
+		if (index >= 0) {
+			return groupColumns.length == 1 ? group.key : ((List<?>) group.key).get(index);
+		}
+
+		index = indexOf(subtotalColumns, column);
+		if (index >= 0) {
+			return group.getSubtotal(index, subtotals[index]);
+		}
+
+		return null;
+
+	}
+
+	@Override
+	public void setValueAt(Object value, int row, int column) {
+		if (rows[row] >= 0) {
+			source.setValueAt(value, rows[row], column);
+		}
+	}
+
+	public static class Group {
+
+		private final Object key;
+		private int index;
+		private int headerRow = 0;
+		private boolean expanded;
+		private int[] members = new int[4];
+		private int size = 0;
+		private final CompensatedSum[] sums;
+		private final int[] counts;
+
+		private Group(Object key, int index, boolean expanded, int subtotalCount) {
+			this.key = key;
+			this.index = index;
+			this.expanded = expanded;
+			this.sums = new CompensatedSum[subtotalCount];
+			this.counts = new int[subtotalCount];
+			for (int i = 0; i < subtotalCount; i++) {
+				sums[i] = new CompensatedSum();
+			}
+		}
+
+		public Object getKey() {
+			return key;
+		}
+
+		public boolean isExpanded() {
+			return expanded;
+		}
+
+		public int getRowCount() {
+			return size;
+		}
+
+		private void addMember(int sourceRow) {
+
+			if (size == members.length) {
+				members = Arrays.copyOf(members, size * 2);
+			}
+
+			// Rows are mostly added in ascending order, so check the last member first
+			int index = size == 0 || members[size - 1] < sourceRow ? size : Arrays.binarySearch(members, 0, size, sourceRow);
+			if (index < 0) {
+				index = -index - 1;
+			}
+
+			System.arraycopy(members, index, members, index + 1, size - index);
+			members[index] = sourceRow;
+			size++;
+
+		}
+
+		private void removeMember(int sourceRow) {
+			int index = Arrays.binarySearch(members, 0, size, sourceRow);
+			if (index >= 0) {
+				System.arraycopy(members, index + 1, members, index, size - index - 1);
+				size--;
+			}
+		}
+
+		private void shiftMembers(int fromSourceRow, int delta) {
+			for (int i = size - 1; i >= 0 && members[i] >= fromSourceRow; i--) {
+				members[i] += delta;
+			}
+		}
+
+		private void add(int index, double value) {
+			if (!Double.isNaN(value)) {
+				sums[index].add(value);
+				counts[index]++;
+			}
+		}
+
+		private void remove(int index, double value) {
+			if (!Double.isNaN(value)) {
+				sums[index].subtract(value);
+				if (--counts[index] == 0) {
+					sums[index].clear();
+				}
+			}
+		}
+
+		private Object getSubtotal(int index, Subtotal subtotal) {
+			switch (subtotal) {
+			case SUM:
+				return sums[index].get();
+			case AVERAGE:
+				return counts[index] > 0 ? sums[index].get() / counts[index] : null;
+			case COUNT:
+				return counts[index];
+			default:
+				return null;
+			}
+		}
+
+	}
+
+}
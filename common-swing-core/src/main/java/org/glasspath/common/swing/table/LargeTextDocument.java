@@ -0,0 +1,633 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+// Document for editing very large texts, the text is stored in a piece table: the initial text is referenced (not copied),
+// inserted text is appended to a buffer and the document is a list of pieces of those. Because the text of the pieces
+// never changes, the content can be handed to the model as an immutable TextSnapshot without copying the text
+public class LargeTextDocument extends PlainDocument {
+
+	private static final int SCAN_CHUNK_SIZE = 64 * 1024;
+
+	public LargeTextDocument() {
+		this(""); //$NON-NLS-1$
+	}
+
+	public LargeTextDocument(CharSequence text) {
+		super(new PieceTableContent(text));
+	}
+
+	@Override
+	protected AbstractElement createDefaultRoot() {
+
+		// The line elements are created with a single scan of the initial text, instead of inserting the text
+		BranchElement root = (BranchElement) createBranchElement(null, null);
+		List<Element> lines = new ArrayList<>();
+
+		Content content = getContent();
+		int length = content.length();
+		Segment segment = new Segment();
+		int lineStart = 0;
+
+		try {
+
+			for (int offset = 0; offset < length; offset += SCAN_CHUNK_SIZE) {
+
+				content.getChars(offset, Math.min(SCAN_CHUNK_SIZE, length - offset), segment);
+
+				for (int i = 0; i < segment.count; i++) {
+					if (segment.array[segment.offset + i] == '\n') {
+						lines.add(createLeafElement(root, null, lineStart, offset + i + 1));
+						lineStart = offset + i + 1;
+					}
+				}
+
+			}
+
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+
+		// The content always ends with a new line, so the last line is always added
+		root.replace(0, 0, lines.toArray(new Element[lines.size()]));
+
+		return root;
+
+	}
+
+	// Returns an immutable snapshot of the text, this is cheap because only the list of pieces is copied
+	public TextSnapshot getSnapshot() {
+		readLock();
+		try {
+			return ((PieceTableContent) getContent()).createSnapshot();
+		} finally {
+			readUnlock();
+		}
+	}
+
+	private static void getChars(CharSequence source, int start, int end, char[] chars, int offset) {
+		if (source instanceof String) {
+			((String) source).getChars(start, end, chars, offset);
+		} else if (source instanceof StringBuilder) {
+			((StringBuilder) source).getChars(start, end, chars, offset);
+		} else if (source instanceof TextSnapshot) {
+			((TextSnapshot) source).getChars(start, end, chars, offset);
+		} else {
+			for (int i = start; i < end; i++) {
+				chars[offset++] = source.charAt(i);
+			}
+		}
+	}
+
+	private static class Piece {
+
+		// The source is a string (the initial text or inserted text frozen by a snapshot) or the append-only buffer of inserted text
+		private final CharSequence source;
+		private final int start;
+		private final int length;
+
+		private Piece(CharSequence source, int start, int length) {
+			this.source = source;
+			this.start = start;
+			this.length = length;
+		}
+
+	}
+
+	private static class PieceTableContent implements AbstractDocument.Content {
+
+		private StringBuilder added = new StringBuilder();
+		private final List<Piece> pieces = new ArrayList<>();
+		private int length = 0;
+
+		// Sorted by offset, the positions are referenced weakly so unused positions can be removed
+		private final List<MarkReference> marks = new ArrayList<>();
+		private int marksCreated = 0;
+
+		private PieceTableContent(CharSequence text) {
+
+			if (text instanceof TextSnapshot) {
+
+				// Continue with the pieces of the snapshot, so snapshots of snapshots don't have to be nested
+				TextSnapshot snapshot = (TextSnapshot) text;
+				for (int i = 0; i < snapshot.pieces.length; i++) {
+					pieces.add(snapshot.pieces[i]);
+				}
+				length = snapshot.length;
+
+			} else if (text.length() > 0) {
+
+				// Strings are immutable and can be referenced, other character sequences are copied
+				String string = text.toString();
+				pieces.add(new Piece(string, 0, string.length()));
+				length = string.length();
+
+			}
+
+			// Documents always end with a new line
+			added.append('\n');
+			pieces.add(new Piece(added, 0, 1));
+			length++;
+
+		}
+
+		@Override
+		public Position createPosition(int offset) throws BadLocationException {
+
+			// Remove positions which are no longer used every now and then
+			if (marksCreated > marks.size()) {
+				marks.removeIf(mark -> mark.get() == null);
+				marksCreated = 0;
+			}
+
+			Mark mark = new Mark();
+			MarkReference reference = new MarkReference(mark, offset);
+			mark.reference = reference;
+
+			marks.add(indexOfMark(offset + 1), reference);
+			marksCreated++;
+
+			return mark;
+
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public UndoableEdit insertString(int where, String str) throws BadLocationException {
+
+			if (where < 0 || where >= length) {
+				throw new BadLocationException("Invalid insert", length); //$NON-NLS-1$
+			}
+
+			insert(where, str);
+
+			return new InsertUndo(where, str.length());
+
+		}
+
+		private void insert(int where, String str) {
+
+			if (str.isEmpty()) {
+				return;
+			}
+
+			int addedStart = added.length();
+			added.append(str);
+
+			int pieceStart = 0;
+			for (int i = 0; i < pieces.size(); i++) {
+
+				Piece piece = pieces.get(i);
+
+				if (where < pieceStart + piece.length) {
+
+					int offset = where - pieceStart;
+					if (offset == 0) {
+
+						// When typing, the previous piece usually ends where the new text was appended
+						Piece previous = i > 0 ? pieces.get(i - 1) : null;
+						if (previous != null && previous.source == added && previous.start + previous.length == addedStart) {
+							pieces.set(i - 1, new Piece(added, previous.start, previous.length + str.length()));
+						} else {
+							pieces.add(i, new Piece(added, addedStart, str.length()));
+						}
+
+					} else {
+						pieces.set(i, new Piece(piece.source, piece.start, offset));
+						pieces.add(i + 1, new Piece(added, addedStart, str.length()));
+						pieces.add(i + 2, new Piece(piece.source, piece.start + offset, piece.length - offset));
+					}
+
+					break;
+
+				}
+
+				pieceStart += piece.length;
+
+			}
+
+			length += str.length();
+
+			// Positions at the insert offset move with the inserted text, except at the start of the document
+			for (int i = indexOfMark(where == 0 ? 1 : where); i < marks.size(); i++) {
+				marks.get(i).offset += str.length();
+			}
+
+		}
+
+		@Override
+		public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+
+			if (where < 0 || nitems < 0 || where + nitems >= length) {
+				throw new BadLocationException("Invalid remove", length); //$NON-NLS-1$
+			}
+
+			// The undo edit has to be created before the positions in the range are moved
+			RemoveUndo undo = new RemoveUndo(where, getString(where, nitems));
+			remove(where, nitems, true);
+
+			return undo;
+
+		}
+
+		private void remove(int where, int nitems, boolean updateMarks) {
+
+			if (nitems == 0) {
+				return;
+			}
+
+			int end = where + nitems;
+			List<Piece> newPieces = new ArrayList<>(pieces.size() + 1);
+
+			int pieceStart = 0;
+			for (Piece piece : pieces) {
+
+				int pieceEnd = pieceStart + piece.length;
+
+				if (pieceEnd <= where || pieceStart >= end) {
+					newPieces.add(piece);
+				} else {
+					if (pieceStart < where) {
+						newPieces.add(new Piece(piece.source, piece.start, where - pieceStart));
+					}
+					if (pieceEnd > end) {
+						newPieces.add(new Piece(piece.source, piece.start + (end - pieceStart), pieceEnd - end));
+					}
+				}
+
+				pieceStart = pieceEnd;
+
+			}
+
+			pieces.clear();
+			pieces.addAll(newPieces);
+			length -= nitems;
+
+			if (updateMarks) {
+				for (int i = indexOfMark(where); i < marks.size(); i++) {
+					MarkReference mark = marks.get(i);
+					mark.offset = mark.offset >= end ? mark.offset - nitems : where;
+				}
+			}
+
+		}
+
+		@Override
+		public String getString(int where, int len) throws BadLocationException {
+			return new String(getChars(where, len));
+		}
+
+		@Override
+		public void getChars(int where, int len, Segment txt) throws BadLocationException {
+			txt.array = getChars(where, len);
+			txt.offset = 0;
+			txt.count = len;
+		}
+
+		private char[] getChars(int where, int len) throws BadLocationException {
+
+			if (where < 0 || len < 0 || where + len > length) {
+				throw new BadLocationException("Invalid range", length); //$NON-NLS-1$
+			}
+
+			char[] chars = new char[len];
+			int end = where + len;
+
+			int pieceStart = 0;
+			for (int i = 0; i < pieces.size() && pieceStart < end; i++) {
+
+				Piece piece = pieces.get(i);
+				int pieceEnd = pieceStart + piece.length;
+
+				if (pieceEnd > where) {
+					int from = Math.max(where, pieceStart);
+					int to = Math.min(end, pieceEnd);
+					LargeTextDocument.getChars(piece.source, piece.start + (from - pieceStart), piece.start + (to - pieceStart), chars, from - where);
+				}
+
+				pieceStart = pieceEnd;
+
+			}
+
+			return chars;
+
+		}
+
+		// Returns the index of the first mark with an offset equal to or larger than the given offset
+		private int indexOfMark(int offset) {
+
+			int low = 0;
+			int high = marks.size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (marks.get(middle).offset < offset) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			return low;
+
+		}
+
+		// Remembers the offsets of the positions in the range, so they can be restored when a remove is undone
+		private int[] getMarkOffsets(int where, int length, List<MarkReference> references) {
+
+			for (int i = indexOfMark(where); i < marks.size() && marks.get(i).offset <= where + length; i++) {
+				references.add(marks.get(i));
+			}
+
+			int[] offsets = new int[references.size()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = references.get(i).offset;
+			}
+
+			return offsets;
+
+		}
+
+		private void restoreMarkOffsets(List<MarkReference> references, int[] offsets) {
+
+			// Like StringContent, the positions are moved back to their offsets before the edit
+			for (int i = 0; i < offsets.length; i++) {
+				references.get(i).offset = offsets[i];
+			}
+
+			marks.sort((mark1, mark2) -> Integer.compare(mark1.offset, mark2.offset));
+
+		}
+
+		// Called with the read lock, so other snapshots can be created at the same time
+		private synchronized TextSnapshot createSnapshot() {
+
+			// The buffer is frozen and replaced by a new buffer, so snapshots never reference text which is still appended to
+			if (added.length() > 0) {
+
+				String frozen = added.toString();
+				for (int i = 0; i < pieces.size(); i++) {
+					Piece piece = pieces.get(i);
+					if (piece.source == added) {
+						pieces.set(i, new Piece(frozen, piece.start, piece.length));
+					}
+				}
+
+				added = new StringBuilder();
+
+			}
+
+			// The last piece always ends with the implied new line of the document, which is not part of the text
+			int count = pieces.size();
+			Piece last = pieces.get(count - 1);
+
+			Piece[] snapshotPieces;
+			if (last.length > 1) {
+				snapshotPieces = pieces.toArray(new Piece[count]);
+				snapshotPieces[count - 1] = new Piece(last.source, last.start, last.length - 1);
+			} else {
+				snapshotPieces = pieces.subList(0, count - 1).toArray(new Piece[count - 1]);
+			}
+
+			return new TextSnapshot(snapshotPieces, length - 1);
+
+		}
+
+		private class InsertUndo extends AbstractUndoableEdit {
+
+			private final int where;
+			private final int length;
+			private String string = null;
+			private final List<MarkReference> markReferences = new ArrayList<>();
+			private int[] markOffsets = null;
+
+			private InsertUndo(int where, int length) {
+				this.where = where;
+				this.length = length;
+			}
+
+			@Override
+			public void undo() throws CannotUndoException {
+				super.undo();
+				try {
+					string = getString(where, length);
+					markReferences.clear();
+					markOffsets = getMarkOffsets(where, length, markReferences);
+					remove(where, length, true);
+				} catch (BadLocationException e) {
+					throw new CannotUndoException();
+				}
+			}
+
+			@Override
+			public void redo() throws CannotRedoException {
+				super.redo();
+				insert(where, string);
+				restoreMarkOffsets(markReferences, markOffsets);
+				string = null;
+			}
+
+		}
+
+		private class RemoveUndo extends AbstractUndoableEdit {
+
+			private final int where;
+			private final String string;
+			private final List<MarkReference> markReferences = new ArrayList<>();
+			private final int[] markOffsets;
+
+			private RemoveUndo(int where, String string) {
+				this.where = where;
+				this.string = string;
+				this.markOffsets = getMarkOffsets(where, string.length(), markReferences);
+			}
+
+			@Override
+			public void undo() throws CannotUndoException {
+				super.undo();
+				insert(where, string);
+				restoreMarkOffsets(markReferences, markOffsets);
+			}
+
+			@Override
+			public void redo() throws CannotRedoException {
+				super.redo();
+				remove(where, string.length(), true);
+			}
+
+		}
+
+	}
+
+	private static class Mark implements Position {
+
+		private MarkReference reference = null;
+
+		@Override
+		public int getOffset() {
+			return reference.offset;
+		}
+
+	}
+
+	private static class MarkReference extends WeakReference<Mark> {
+
+		private int offset;
+
+		private MarkReference(Mark mark, int offset) {
+			super(mark);
+			this.offset = offset;
+		}
+
+	}
+
+	// Immutable text of a LargeTextDocument, the text is only materialized when toString() is called. The pieces only
+	// reference strings, so a snapshot can be read on any thread (like the auto fit or export threads) while editing continues
+	public static final class TextSnapshot implements CharSequence {
+
+		private final Piece[] pieces;
+		private final int[] offsets;
+		private final int length;
+		private String string = null;
+
+		private TextSnapshot(Piece[] pieces, int length) {
+
+			this.pieces = pieces;
+			this.offsets = new int[pieces.length];
+			this.length = length;
+
+			int offset = 0;
+			for (int i = 0; i < pieces.length; i++) {
+				offsets[i] = offset;
+				offset += pieces[i].length;
+			}
+
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			}
+
+			int i = indexOfPiece(index);
+			return pieces[i].source.charAt(pieces[i].start + index - offsets[i]);
+
+		}
+
+		public void getChars(int start, int end, char[] chars, int offset) {
+
+			if (start < 0 || end > length || start > end) {
+				throw new IndexOutOfBoundsException(start + "-" + end); //$NON-NLS-1$
+			}
+
+			for (int i = start < end ? indexOfPiece(start) : pieces.length; i < pieces.length && offsets[i] < end; i++) {
+				int from = Math.max(start, offsets[i]);
+				int to = Math.min(end, offsets[i] + pieces[i].length);
+				LargeTextDocument.getChars(pieces[i].source, pieces[i].start + (from - offsets[i]), pieces[i].start + (to - offsets[i]), chars, offset + (from - start));
+			}
+
+		}
+
+		public int indexOf(char c, int fromIndex, int toIndex) {
+
+			toIndex = Math.min(toIndex, length);
+			for (int i = fromIndex < toIndex ? indexOfPiece(Math.max(fromIndex, 0)) : pieces.length; i < pieces.length && offsets[i] < toIndex; i++) {
+
+				Piece piece = pieces[i];
+				int from = Math.max(fromIndex, offsets[i]);
+				int to = Math.min(toIndex, offsets[i] + piece.length);
+
+				for (int index = from; index < to; index++) {
+					if (piece.source.charAt(piece.start + index - offsets[i]) == c) {
+						return index;
+					}
+				}
+
+			}
+
+			return -1;
+
+		}
+
+		private int indexOfPiece(int index) {
+
+			int low = 0;
+			int high = pieces.length - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (offsets[middle] <= index) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return low;
+
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			char[] chars = new char[end - start];
+			getChars(start, end, chars, 0);
+			return new String(chars);
+		}
+
+		@Override
+		public String toString() {
+			if (string == null) {
+				char[] chars = new char[length];
+				getChars(0, length, chars, 0);
+				string = new String(chars);
+			}
+			return string;
+		}
+
+	}
+
+}
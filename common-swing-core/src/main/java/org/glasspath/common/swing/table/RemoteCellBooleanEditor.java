@@ -70,7 +70,7 @@ public class RemoteCellBooleanEditor extends JCheckBox {
 
 	private void submit() {
 		if (modelIndex >= 0) {
-			table.getModel().setValueAt(isSelected(), modelIndex, column);
+			table.getCommitQueue().submit(modelIndex, column, isSelected());
 		}
 	}
 
@@ -0,0 +1,158 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JTable;
+import javax.swing.table.TableModel;
+
+// Applies the edits of the remote cell editors (the editors outside of the table) to the model, edits are applied
+// before submit() returns so actions which read the model (like save) always see the submitted value, edits which
+// don't change the value (like submitting on every focus change) are dropped so they don't create undo entries
+public class RemoteCellCommitQueue {
+
+	private final JTable table;
+	private final Map<Long, Edit> pendingEdits = new LinkedHashMap<>();
+
+	public RemoteCellCommitQueue(JTable table) {
+		this.table = table;
+	}
+
+	public void submit(int modelRow, int column, Object value) {
+		submit(new Edit(modelRow, column, value));
+	}
+
+	public void submit(Edit edit) {
+
+		if (edit.modelRow < 0 || edit.column < 0) {
+			return;
+		}
+
+		pendingEdits.put(edit.getKey(), edit);
+		flush();
+
+	}
+
+	public boolean isPending(int modelRow, int column) {
+		return pendingEdits.containsKey(Edit.getKey(modelRow, column));
+	}
+
+	// Returns the pending value of the cell if there is one, otherwise the value of the model
+	public Object getValueAt(int modelRow, int column) {
+		Edit edit = pendingEdits.get(Edit.getKey(modelRow, column));
+		return edit != null ? edit.value : table.getModel().getValueAt(modelRow, column);
+	}
+
+	public void flush() {
+
+		if (pendingEdits.isEmpty()) {
+			return;
+		}
+
+		List<Edit> edits = new ArrayList<>(pendingEdits.values());
+		pendingEdits.clear();
+
+		TableModel model = table.getModel();
+
+		// Edits submitted while flushing (by listeners of the model) are applied by the nested
+		// flush, the cell updates are fired together once all edits have been applied
+		DataListTableModel dataListModel = model instanceof DataListTableModel ? (DataListTableModel) model : null;
+		boolean coalesce = dataListModel != null && !dataListModel.isCellUpdatesCoalesced();
+		if (coalesce) {
+			dataListModel.setCellUpdatesCoalesced(true);
+		}
+
+		try {
+			for (Edit edit : edits) {
+				if (isValid(model, edit)) {
+					model.setValueAt(edit.value, edit.modelRow, edit.column);
+				}
+			}
+		} finally {
+			if (coalesce) {
+				dataListModel.setCellUpdatesCoalesced(false);
+			}
+		}
+
+	}
+
+	protected boolean isValid(TableModel model, Edit edit) {
+
+		if (edit.modelRow >= model.getRowCount() || edit.column >= model.getColumnCount()) {
+			return false;
+		}
+
+		Object oldValue = model.getValueAt(edit.modelRow, edit.column);
+		if (oldValue instanceof LargeTextDocument.TextSnapshot || edit.value instanceof LargeTextDocument.TextSnapshot) {
+
+			// Snapshots don't implement equals(), their text is compared with the text of the model instead
+			if (oldValue instanceof CharSequence && edit.value instanceof CharSequence) {
+				return !contentEquals((CharSequence) oldValue, (CharSequence) edit.value);
+			}
+
+		}
+
+		return oldValue != edit.value && (oldValue == null || !oldValue.equals(edit.value));
+
+	}
+
+	private static boolean contentEquals(CharSequence text1, CharSequence text2) {
+
+		if (text1 == text2) {
+			return true;
+		} else if (text1.length() != text2.length()) {
+			return false;
+		}
+
+		// A string is compared directly with the other sequence, otherwise one of the snapshots is materialized (and cached)
+		return text1 instanceof String ? ((String) text1).contentEquals(text2) : text1.toString().contentEquals(text2);
+
+	}
+
+	public static class Edit {
+
+		public final int modelRow;
+		public final int column;
+		public final Object value;
+
+		public Edit(int modelRow, int column, Object value) {
+			this.modelRow = modelRow;
+			this.column = column;
+			this.value = value;
+		}
+
+		private long getKey() {
+			return getKey(modelRow, column);
+		}
+
+		private static long getKey(int modelRow, int column) {
+			return ((long) modelRow << 32) | (column & 0xFFFFFFFFL);
+		}
+
+	}
+
+}
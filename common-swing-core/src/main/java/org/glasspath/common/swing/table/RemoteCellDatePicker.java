@@ -36,6 +36,7 @@ import javax.swing.event.DocumentListener;
 import org.glasspath.common.swing.color.ColorUtils;
 import org.glasspath.common.swing.date.DatePicker;
 import org.glasspath.common.swing.date.DatePicker.MonthView;
+import org.glasspath.common.swing.date.LocalDateFormatter;
 import org.glasspath.common.swing.theme.Theme;
 import org.jdesktop.swingx.JXDatePicker;
 
@@ -58,6 +59,7 @@ public class RemoteCellDatePicker extends JXDatePicker {
 		}
 
 		setMonthView(new MonthView());
+		setFormatter(LocalDateFormatter.getDefault());
 
 		getEditor().getDocument().addDocumentListener(new DocumentListener() {
 
@@ -124,6 +126,10 @@ public class RemoteCellDatePicker extends JXDatePicker {
 		DatePicker.configureLinkPanel(this); // TODO: Setting time-zone causes issues with link panel background
 	}
 
+	public void setFormatter(LocalDateFormatter formatter) {
+		setFormats(formatter.toDateFormat());
+	}
+
 	public int getPreferredWidth() {
 		return preferredWidth;
 	}
@@ -157,14 +163,14 @@ public class RemoteCellDatePicker extends JXDatePicker {
 	private void submit() {
 		if (valueChanged && modelIndex >= 0) {
 			valueChanged = false;
-			table.getModel().setValueAt(getDate(), modelIndex, column);
+			table.getCommitQueue().submit(modelIndex, column, getDate());
 		}
 	}
 
 	private void cancel() {
 		if (modelIndex >= 0) {
 			valueChanged = false;
-			setDate((Date) table.getModel().getValueAt(modelIndex, column));
+			setDate((Date) table.getCommitQueue().getValueAt(modelIndex, column));
 		}
 	}
 
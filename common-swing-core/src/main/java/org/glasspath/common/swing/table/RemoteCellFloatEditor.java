@@ -67,26 +67,17 @@ public class RemoteCellFloatEditor extends JFormattedTextField {
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void insertUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 		});
 
@@ -135,6 +126,7 @@ public class RemoteCellFloatEditor extends JFormattedTextField {
 			@Override
 			public void contentClosing() {
 				submit();
+				table.getCommitQueue().flush();
 			}
 		});
 
@@ -161,6 +153,14 @@ public class RemoteCellFloatEditor extends JFormattedTextField {
 
 	}
 
+	private void documentChanged() {
+		// The row is only looked up when the edit starts, not for every change of the document
+		if (!updatingValue && !valueChanged) {
+			valueChanged = true;
+			modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
+		}
+	}
+
 	private void submit() {
 
 		if (valueChanged && modelIndex >= 0) {
@@ -171,7 +171,7 @@ public class RemoteCellFloatEditor extends JFormattedTextField {
 			if (stringValue != null && stringValue.length() >= 0) {
 
 				try {
-					table.getModel().setValueAt(FormatUtils.parseFloat(stringValue), modelIndex, column);
+					table.getCommitQueue().submit(modelIndex, column, FormatUtils.parseFloat(stringValue));
 				} catch (Exception e) {
 					cancel();
 				}
@@ -187,7 +187,7 @@ public class RemoteCellFloatEditor extends JFormattedTextField {
 	private void cancel() {
 		if (modelIndex >= 0) {
 			valueChanged = false;
-			setValue(table.getModel().getValueAt(modelIndex, column));
+			setValue(table.getCommitQueue().getValueAt(modelIndex, column));
 		}
 	}
 
@@ -59,26 +59,17 @@ public class RemoteCellIntegerEditor extends JTextField {
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void insertUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 		});
 
@@ -127,6 +118,7 @@ public class RemoteCellIntegerEditor extends JTextField {
 			@Override
 			public void contentClosing() {
 				submit();
+				table.getCommitQueue().flush();
 			}
 		});
 
@@ -154,6 +146,14 @@ public class RemoteCellIntegerEditor extends JTextField {
 
 	}
 
+	private void documentChanged() {
+		// The row is only looked up when the edit starts, not for every change of the document
+		if (!updatingValue && !valueChanged) {
+			valueChanged = true;
+			modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
+		}
+	}
+
 	private void submit() {
 
 		if (valueChanged && modelIndex >= 0) {
@@ -161,7 +161,7 @@ public class RemoteCellIntegerEditor extends JTextField {
 			valueChanged = false;
 
 			try {
-				table.getModel().setValueAt(Integer.parseInt(getText()), modelIndex, column);
+				table.getCommitQueue().submit(modelIndex, column, Integer.parseInt(getText()));
 			} catch (Exception e) {
 				cancel();
 			}
@@ -173,7 +173,7 @@ public class RemoteCellIntegerEditor extends JTextField {
 	private void cancel() {
 		if (modelIndex >= 0) {
 			valueChanged = false;
-			setText(table.getModel().getValueAt(modelIndex, column).toString());
+			setText(table.getCommitQueue().getValueAt(modelIndex, column).toString());
 		}
 	}
 
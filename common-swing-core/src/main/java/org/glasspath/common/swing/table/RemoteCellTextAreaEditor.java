@@ -32,6 +32,7 @@ import java.awt.event.KeyListener;
 import javax.swing.JTextArea;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
 
 import org.glasspath.common.swing.ApplicationContext;
 import org.glasspath.common.swing.ContentListener;
@@ -46,38 +47,32 @@ public class RemoteCellTextAreaEditor extends JTextArea {
 	private boolean updatingValue = false;
 	private boolean valueChanged = false;
 	private boolean valueInvalid = false;
+	private boolean largeTextMode = false;
+	private final DocumentListener documentListener;
 
 	public RemoteCellTextAreaEditor(ApplicationContext context, Table table, int column) {
 
 		this.table = table;
 		this.column = column;
 
-		getDocument().addDocumentListener(new DocumentListener() {
+		documentListener = new DocumentListener() {
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void insertUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
-		});
+		};
+		getDocument().addDocumentListener(documentListener);
 
 		addKeyListener(new KeyListener() {
 
@@ -124,6 +119,7 @@ public class RemoteCellTextAreaEditor extends JTextArea {
 			@Override
 			public void contentClosing() {
 				submit();
+				table.getCommitQueue().flush();
 			}
 		});
 
@@ -140,28 +136,94 @@ public class RemoteCellTextAreaEditor extends JTextArea {
 		this.preferredWidth = preferredWidth;
 	}
 
+	public boolean isLargeTextMode() {
+		return largeTextMode;
+	}
+
+	// In large text mode the text is edited in a LargeTextDocument and submitted as a LargeTextDocument.TextSnapshot
+	// (a CharSequence), so the model should accept CharSequence values. Lines are not wrapped, so only the visible lines
+	// are laid out
+	public void setLargeTextMode(boolean largeTextMode) {
+		this.largeTextMode = largeTextMode;
+		if (largeTextMode) {
+			setLineWrap(false);
+		}
+	}
+
+	@Override
+	public void setDocument(Document document) {
+
+		// Also called by the super constructor, before the listener is created
+		if (documentListener != null && getDocument() != null) {
+			getDocument().removeDocumentListener(documentListener);
+		}
+
+		super.setDocument(document);
+
+		if (documentListener != null) {
+			document.addDocumentListener(documentListener);
+		}
+
+	}
+
 	@Override
 	public void setText(String t) {
 
-		submit();
+		if (largeTextMode) {
+			setText((CharSequence) t);
+		} else {
+
+			submit();
 
-		updatingValue = true;
-		super.setText(t);
-		updatingValue = false;
+			updatingValue = true;
+			super.setText(t);
+			updatingValue = false;
+
+		}
 
 	}
 
+	public void setText(CharSequence text) {
+
+		if (largeTextMode) {
+
+			submit();
+
+			// The text is referenced by the document instead of being inserted
+			updatingValue = true;
+			setDocument(new LargeTextDocument(text != null ? text : "")); //$NON-NLS-1$
+			updatingValue = false;
+
+		} else {
+			setText(text != null ? text.toString() : null);
+		}
+
+	}
+
+	private void documentChanged() {
+		// The row is only looked up when the edit starts, not for every change of the document
+		if (!updatingValue && !valueChanged) {
+			valueChanged = true;
+			modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
+		}
+	}
+
 	private void submit() {
 		if (valueChanged && modelIndex >= 0) {
 			valueChanged = false;
-			table.getModel().setValueAt(getText(), modelIndex, column);
+			if (largeTextMode && getDocument() instanceof LargeTextDocument) {
+				table.getCommitQueue().submit(modelIndex, column, ((LargeTextDocument) getDocument()).getSnapshot());
+			} else {
+				table.getCommitQueue().submit(modelIndex, column, getText());
+			}
 		}
 	}
 
 	private void cancel() {
 		if (modelIndex >= 0) {
 			valueChanged = false;
-			setText(table.getModel().getValueAt(modelIndex, column).toString());
+			Object value = table.getCommitQueue().getValueAt(modelIndex, column);
+			setText(value instanceof CharSequence ? (CharSequence) value : value.toString());
 		}
 	}
 
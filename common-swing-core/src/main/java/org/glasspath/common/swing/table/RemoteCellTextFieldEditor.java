@@ -56,26 +56,17 @@ public class RemoteCellTextFieldEditor extends JTextField {
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void insertUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				if (!updatingValue) {
-					valueChanged = true;
-					modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
-				}
+				documentChanged();
 			}
 		});
 
@@ -124,6 +115,7 @@ public class RemoteCellTextFieldEditor extends JTextField {
 			@Override
 			public void contentClosing() {
 				submit();
+				table.getCommitQueue().flush();
 			}
 		});
 
@@ -151,17 +143,25 @@ public class RemoteCellTextFieldEditor extends JTextField {
 
 	}
 
+	private void documentChanged() {
+		// The row is only looked up when the edit starts, not for every change of the document
+		if (!updatingValue && !valueChanged) {
+			valueChanged = true;
+			modelIndex = table.convertRowIndexToModel(table.getSelectedRow());
+		}
+	}
+
 	private void submit() {
 		if (valueChanged && modelIndex >= 0) {
 			valueChanged = false;
-			table.getModel().setValueAt(getText(), modelIndex, column);
+			table.getCommitQueue().submit(modelIndex, column, getText());
 		}
 	}
 
 	private void cancel() {
 		if (modelIndex >= 0) {
 			valueChanged = false;
-			setText(table.getModel().getValueAt(modelIndex, column).toString());
+			setText(table.getCommitQueue().getValueAt(modelIndex, column).toString());
 		}
 	}
 
@@ -90,7 +90,7 @@ public class RemoteStringListCellEditor extends JComboBox<String> {
 	private void submit() {
 		if (valueChanged && modelIndex >= 0) {
 			valueChanged = false;
-			table.getModel().setValueAt(getSelectedIndex(), modelIndex, column);
+			table.getCommitQueue().submit(modelIndex, column, getSelectedIndex());
 		}
 	}
 
@@ -22,39 +22,112 @@
  */
 package org.glasspath.common.swing.table;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.DefaultRowSorter;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEdit;
 
 import org.glasspath.common.swing.resources.CommonResources;
+import org.glasspath.common.swing.undo.DefaultUndoManager.Coalescible;
+import org.glasspath.common.swing.undo.UndoJournal.EditCodec;
 
-public class ReorderUndoable implements UndoableEdit {
+public class ReorderUndoable implements UndoableEdit, Coalescible {
 
 	private final Table table;
 	private final Reorderable reorderable;
-	private final int fromIndex;
+	private final int[] fromIndices;
 	private final int toIndex;
+	private final List<ReorderUndoable> coalescedEdits = new ArrayList<>();
 
 	public ReorderUndoable(Table table, Reorderable reorderable, int fromIndex, int toIndex) {
+		this(table, reorderable, new int[] { fromIndex }, toIndex);
+	}
+
+	public ReorderUndoable(Table table, Reorderable reorderable, int[] fromIndices, int toIndex) {
 		this.table = table;
 		this.reorderable = reorderable;
-		this.fromIndex = fromIndex;
+		this.fromIndices = fromIndices;
 		this.toIndex = toIndex;
 	}
 
+	// Codec for journaling (see UndoJournal) the moves of the given table, the type should identify the table across sessions
+	public static EditCodec createJournalCodec(String type, Table table, Reorderable reorderable) {
+		return new EditCodec() {
+
+			@Override
+			public String getType() {
+				return type;
+			}
+
+			@Override
+			public boolean accepts(UndoableEdit edit) {
+				return edit instanceof ReorderUndoable && ((ReorderUndoable) edit).table == table && ((ReorderUndoable) edit).reorderable == reorderable;
+			}
+
+			@Override
+			public void write(UndoableEdit edit, DataOutput out) throws IOException {
+
+				ReorderUndoable reorderUndoable = (ReorderUndoable) edit;
+
+				out.writeInt(1 + reorderUndoable.coalescedEdits.size());
+				writeMove(reorderUndoable, out);
+				for (ReorderUndoable coalescedEdit : reorderUndoable.coalescedEdits) {
+					writeMove(coalescedEdit, out);
+				}
+
+			}
+
+			private void writeMove(ReorderUndoable edit, DataOutput out) throws IOException {
+				out.writeInt(edit.fromIndices.length);
+				for (int fromIndex : edit.fromIndices) {
+					out.writeInt(fromIndex);
+				}
+				out.writeInt(edit.toIndex);
+			}
+
+			@Override
+			public UndoableEdit read(DataInput in) throws IOException {
+
+				int count = in.readInt();
+
+				ReorderUndoable edit = readMove(in);
+				for (int i = 1; i < count; i++) {
+					edit.coalescedEdits.add(readMove(in));
+				}
+
+				return edit;
+
+			}
+
+			private ReorderUndoable readMove(DataInput in) throws IOException {
+				int[] fromIndices = new int[in.readInt()];
+				for (int i = 0; i < fromIndices.length; i++) {
+					fromIndices[i] = in.readInt();
+				}
+				return new ReorderUndoable(table, reorderable, fromIndices, in.readInt());
+			}
+		};
+	}
+
 	@Override
 	public String getPresentationName() {
-		return CommonResources.getString("MoveRow"); //$NON-NLS-1$
+		return CommonResources.getString(fromIndices.length > 1 ? "MoveRows" : "MoveRow"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	@Override
 	public String getRedoPresentationName() {
-		return CommonResources.getString("RedoMoveRow"); //$NON-NLS-1$
+		return CommonResources.getString(fromIndices.length > 1 ? "RedoMoveRows" : "RedoMoveRow"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	@Override
 	public String getUndoPresentationName() {
-		return CommonResources.getString("UndoMoveRow"); //$NON-NLS-1$
+		return CommonResources.getString(fromIndices.length > 1 ? "UndoMoveRows" : "UndoMoveRow"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	@Override
@@ -62,6 +135,35 @@ public class ReorderUndoable implements UndoableEdit {
 		return false;
 	}
 
+	@Override
+	public boolean coalesce(UndoableEdit edit) {
+
+		// Moving the moved rows again (like moving a row up a few times) becomes one edit
+		if (edit instanceof ReorderUndoable) {
+
+			ReorderUndoable reorderUndoable = (ReorderUndoable) edit;
+			ReorderUndoable lastEdit = coalescedEdits.isEmpty() ? this : coalescedEdits.get(coalescedEdits.size() - 1);
+
+			if (reorderUndoable.table == table && reorderUndoable.reorderable == reorderable && reorderUndoable.coalescedEdits.isEmpty() && reorderUndoable.fromIndices.length == lastEdit.fromIndices.length) {
+
+				int blockStart = Reorderable.getBlockStart(lastEdit.fromIndices, lastEdit.toIndex);
+				for (int i = 0; i < reorderUndoable.fromIndices.length; i++) {
+					if (reorderUndoable.fromIndices[i] != blockStart + i) {
+						return false;
+					}
+				}
+
+				coalescedEdits.add(reorderUndoable);
+				return true;
+
+			}
+
+		}
+
+		return false;
+
+	}
+
 	@Override
 	public boolean canRedo() {
 		return true;
@@ -85,15 +187,17 @@ public class ReorderUndoable implements UndoableEdit {
 	@Override
 	public void redo() throws CannotRedoException {
 
-		reorderable.reorder(fromIndex, toIndex);
-
-		int toIndexView;
-		if (toIndex > fromIndex) {
-			toIndexView = table.convertRowIndexToView(toIndex - 1);
-		} else {
-			toIndexView = table.convertRowIndexToView(toIndex);
+		reorderable.reorderAll(fromIndices, toIndex);
+		for (ReorderUndoable edit : coalescedEdits) {
+			edit.reorderable.reorderAll(edit.fromIndices, edit.toIndex);
 		}
-		table.getSelectionModel().setSelectionInterval(toIndexView, toIndexView);
+
+		// The rows are selected after sorting, otherwise the selection would be converted with the old view order
+		sortRows();
+
+		ReorderUndoable lastEdit = coalescedEdits.isEmpty() ? this : coalescedEdits.get(coalescedEdits.size() - 1);
+		int blockStart = Reorderable.getBlockStart(lastEdit.fromIndices, lastEdit.toIndex);
+		selectRows(blockStart, blockStart + lastEdit.fromIndices.length - 1);
 
 	}
 
@@ -105,14 +209,115 @@ public class ReorderUndoable implements UndoableEdit {
 	@Override
 	public void undo() throws CannotUndoException {
 
-		if (toIndex > fromIndex) {
-			reorderable.reorder(toIndex - 1, fromIndex);
-		} else {
-			reorderable.reorder(toIndex, fromIndex + 1);
+		for (int i = coalescedEdits.size() - 1; i >= 0; i--) {
+			coalescedEdits.get(i).undoMove();
+		}
+		undoMove();
+
+		sortRows();
+
+		table.getSelectionModel().setValueIsAdjusting(true);
+		table.getSelectionModel().clearSelection();
+		for (int start = 0; start < fromIndices.length;) {
+			int end = getRunEnd(start);
+			addSelection(fromIndices[start], fromIndices[end]);
+			start = end + 1;
 		}
+		table.getSelectionModel().setValueIsAdjusting(false);
+
+	}
+
+	private void undoMove() {
+
+		// The moved block is split into the runs of consecutive original indices, every run is moved back
+		// with one reorderAll(). Runs which were above the block are restored first to last, the others
+		// last to first, this way the rows on the other side of the remaining block are always in place
+		int blockStart = Reorderable.getBlockStart(fromIndices, toIndex);
+		int blockEnd = blockStart + fromIndices.length - 1;
+
+		int runStart = 0;
+		while (runStart < fromIndices.length && fromIndices[runStart] < blockStart) {
+
+			int runEnd = getRunEnd(runStart);
+			int length = runEnd - runStart + 1;
+
+			reorderable.reorderAll(createRange(blockStart, length), fromIndices[runStart]);
+			blockStart += length;
+
+			runStart = runEnd + 1;
+
+		}
+
+		int runEnd = fromIndices.length - 1;
+		while (runEnd >= runStart) {
+
+			int start = getRunStart(runEnd, runStart);
+			int length = runEnd - start + 1;
+
+			reorderable.reorderAll(createRange(blockEnd - length + 1, length), fromIndices[start] + length);
+			blockEnd -= length;
+
+			runEnd = start - 1;
+
+		}
+
+	}
 
-		int fromIndexView = table.convertRowIndexToView(fromIndex);
-		table.getSelectionModel().setSelectionInterval(fromIndexView, fromIndexView);
+	private void sortRows() {
+		if (table.getRowSorter() instanceof DefaultRowSorter) {
+			((DefaultRowSorter<?, ?>) table.getRowSorter()).sort();
+		}
+	}
+
+	private int getRunEnd(int start) {
+		int end = start;
+		while (end + 1 < fromIndices.length && fromIndices[end + 1] == fromIndices[end] + 1) {
+			end++;
+		}
+		return end;
+	}
+
+	private int getRunStart(int end, int min) {
+		int start = end;
+		while (start - 1 >= min && fromIndices[start - 1] == fromIndices[start] - 1) {
+			start--;
+		}
+		return start;
+	}
+
+	private static int[] createRange(int first, int length) {
+		int[] range = new int[length];
+		for (int i = 0; i < length; i++) {
+			range[i] = first + i;
+		}
+		return range;
+	}
+
+	private void selectRows(int firstIndex, int lastIndex) {
+		table.getSelectionModel().setValueIsAdjusting(true);
+		table.getSelectionModel().clearSelection();
+		addSelection(firstIndex, lastIndex);
+		table.getSelectionModel().setValueIsAdjusting(false);
+	}
+
+	private void addSelection(int firstIndex, int lastIndex) {
+
+		// Model rows are consecutive in the view when the table isn't sorted, otherwise convert them one by one
+		if (table.getRowSorter() == null || table.getRowSorter().getSortKeys().isEmpty()) {
+			int first = table.convertRowIndexToView(firstIndex);
+			int last = table.convertRowIndexToView(lastIndex);
+			if (first >= 0 && last >= 0 && last - first == lastIndex - firstIndex) {
+				table.getSelectionModel().addSelectionInterval(first, last);
+				return;
+			}
+		}
+
+		for (int index = firstIndex; index <= lastIndex; index++) {
+			int viewIndex = table.convertRowIndexToView(index);
+			if (viewIndex >= 0) {
+				table.getSelectionModel().addSelectionInterval(viewIndex, viewIndex);
+			}
+		}
 
 	}
 
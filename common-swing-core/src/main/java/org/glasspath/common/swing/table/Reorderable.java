@@ -22,8 +22,91 @@
  */
 package org.glasspath.common.swing.table;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface Reorderable {
 
 	public void reorder(int fromIndex, int toIndex);
 
+	// Moves the rows at the given (ascending) indices as one block to toIndex, the rows keep their
+	// order and the block starts at toIndex minus the number of moved rows above toIndex. Models
+	// that can move the whole block at once should override this and fire a single event for
+	// the range getFirstAffectedIndex() .. getLastAffectedIndex(), this default moves the rows
+	// one by one using reorder()
+	public default void reorderAll(int[] fromIndices, int toIndex) {
+
+		int moved = 0;
+		for (int fromIndex : fromIndices) {
+			if (fromIndex < toIndex) {
+				reorder(fromIndex - moved, toIndex);
+				moved++;
+			}
+		}
+
+		int inserted = 0;
+		for (int fromIndex : fromIndices) {
+			if (fromIndex >= toIndex) {
+				if (fromIndex != toIndex + inserted) {
+					reorder(fromIndex, toIndex + inserted);
+				}
+				inserted++;
+			}
+		}
+
+	}
+
+	public static int getBlockStart(int[] fromIndices, int toIndex) {
+		int blockStart = toIndex;
+		for (int fromIndex : fromIndices) {
+			if (fromIndex < toIndex) {
+				blockStart--;
+			}
+		}
+		return blockStart;
+	}
+
+	public static int getFirstAffectedIndex(int[] fromIndices, int toIndex) {
+		return Math.min(fromIndices[0], getBlockStart(fromIndices, toIndex));
+	}
+
+	public static int getLastAffectedIndex(int[] fromIndices, int toIndex) {
+		return Math.max(fromIndices[fromIndices.length - 1], getBlockStart(fromIndices, toIndex) + fromIndices.length - 1);
+	}
+
+	// Moves the elements of the list in one pass, can be used to implement reorderAll() for list based models
+	public static <T> void reorderAll(List<T> list, int[] fromIndices, int toIndex) {
+
+		int first = getFirstAffectedIndex(fromIndices, toIndex);
+		int last = getLastAffectedIndex(fromIndices, toIndex);
+
+		List<T> block = new ArrayList<>(fromIndices.length);
+		List<T> others = new ArrayList<>(last - first + 1 - fromIndices.length);
+
+		int f = 0;
+		for (int i = first; i <= last; i++) {
+			if (f < fromIndices.length && fromIndices[f] == i) {
+				block.add(list.get(i));
+				f++;
+			} else {
+				others.add(list.get(i));
+			}
+		}
+
+		int blockStart = getBlockStart(fromIndices, toIndex);
+
+		int index = first;
+		int o = 0;
+		while (index < blockStart) {
+			list.set(index++, others.get(o++));
+		}
+		for (T element : block) {
+			list.set(index++, element);
+		}
+		while (index <= last) {
+			list.set(index++, others.get(o++));
+		}
+
+	}
+
 }
@@ -25,6 +25,9 @@ package org.glasspath.common.swing.table;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Cursor;
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
@@ -38,6 +41,8 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -49,18 +54,23 @@ import javax.activation.DataHandler;
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.DropMode;
+import javax.swing.Icon;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JTable;
+import javax.swing.JViewport;
 import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
 import javax.swing.RowFilter;
 import javax.swing.SortOrder;
+import javax.swing.Timer;
 import javax.swing.TransferHandler;
 import javax.swing.border.Border;
 import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.RowSorterEvent;
@@ -73,14 +83,17 @@ import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
+import javax.swing.table.TableStringConverter;
 import javax.swing.text.JTextComponent;
 
 import org.glasspath.common.date.DateUtils;
 import org.glasspath.common.icons.Icons;
 import org.glasspath.common.os.OsUtils;
 import org.glasspath.common.swing.color.ColorUtils;
+import org.glasspath.common.swing.date.LocalDateFormatter;
 import org.glasspath.common.swing.resources.CommonResources;
 import org.glasspath.common.swing.table.ui.TableUI;
 import org.glasspath.common.swing.undo.UndoManager;
@@ -119,6 +132,7 @@ public class Table extends JTable implements Filterable {
 
 	private Color focusedCellBackground = DEFAULT_FOCUSED_CELL_BACKGROUND;
 	private boolean alternatingBackgroundEnabled = true;
+	private boolean rowImageCacheEnabled = false;
 
 	private final KeyAdapter keyListener = new KeyAdapter() {
 
@@ -131,7 +145,42 @@ public class Table extends JTable implements Filterable {
 	};
 
 	private UndoManager undoManager = null;
-	private long lastScroll = 0;
+	private final FormattedValueCache toolTipCache = new FormattedValueCache();
+	private boolean scrolling = false;
+	private JViewport scrollViewport = null;
+	private Point lastViewPosition = null;
+	private final Timer scrollTimer = new Timer(MINIMUM_TOOLTIP_DELAY_AFTER_SCROLL, new ActionListener() {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			scrolling = false;
+		}
+	});
+	private final ChangeListener viewportListener = new ChangeListener() {
+
+		@Override
+		public void stateChanged(ChangeEvent e) {
+
+			// The viewport also fires events when it's size changes, only changes of the view position are scrolling
+			Point viewPosition = scrollViewport.getViewPosition();
+			if (!viewPosition.equals(lastViewPosition)) {
+				lastViewPosition = viewPosition;
+				scrolling = true;
+				scrollTimer.restart();
+			}
+
+		}
+	};
+	private ColumnOffsets columnOffsets = null;
+	private ConditionalFormatting conditionalFormatting = null;
+	private JLabel formattedIconLabel = null;
+	private Icon formattedIcon = null;
+	private Icon replacedIcon = null;
+	private Font groupHeaderFont = null;
+	private Font groupHeaderBaseFont = null;
+	private ColumnAutoFit columnAutoFit = null;
+	private RemoteCellCommitQueue commitQueue = null;
+	private TableMetrics metrics = null;
 
 	public Table() {
 		this(null);
@@ -150,6 +199,15 @@ public class Table extends JTable implements Filterable {
 
 			@Override
 			public void tableChanged(TableModelEvent event) {
+				invalidateToolTips();
+				// Coalesced cell updates are followed by cellUpdatesFlushed(), the listeners are notified once
+				if (!(event.getSource() instanceof DataListTableModel && ((DataListTableModel) event.getSource()).isFlushingCellUpdates())) {
+					fireTableChanged();
+				}
+			}
+
+			@Override
+			public void cellUpdatesFlushed() {
 				fireTableChanged();
 			}
 		};
@@ -158,6 +216,7 @@ public class Table extends JTable implements Filterable {
 
 			@Override
 			public void sorterChanged(RowSorterEvent event) {
+				invalidateToolTips();
 				if (event.getType() == RowSorterEvent.Type.SORTED) {
 					fireTableChanged();
 				}
@@ -166,6 +225,8 @@ public class Table extends JTable implements Filterable {
 
 		setModel(model);
 
+		columnOffsets = new ColumnOffsets(getColumnModel());
+
 		if (getRowHeight() < MINIMUM_ROW_HEIGHT) {
 			setRowHeight(MINIMUM_ROW_HEIGHT);
 		}
@@ -194,7 +255,10 @@ public class Table extends JTable implements Filterable {
 		setDefaultEditor(Float.class, new FloatCellEditor());
 		setDefaultEditor(Double.class, new FloatCellEditor());
 
-		setDragEnabled(true);
+		// Drag and drop isn't available in headless mode, tables can still be created (and rendered to images)
+		if (!GraphicsEnvironment.isHeadless()) {
+			setDragEnabled(true);
+		}
 		setDropMode(DropMode.INSERT_ROWS);
 		setTransferHandler(new TableRowTransferHandler(this));
 
@@ -221,17 +285,15 @@ public class Table extends JTable implements Filterable {
 			public void componentResized(ComponentEvent e) {
 				updateCellButtons();
 			}
-
-			@Override
-			public void componentMoved(ComponentEvent e) {
-				lastScroll = System.currentTimeMillis();
-			}
 		});
 
+		scrollTimer.setRepeats(false);
+
 		getColumnModel().addColumnModelListener(new TableColumnModelListener() {
 
 			@Override
 			public void columnAdded(TableColumnModelEvent e) {
+				invalidateToolTips();
 				updateCellButtons();
 			}
 
@@ -242,11 +304,15 @@ public class Table extends JTable implements Filterable {
 
 			@Override
 			public void columnMoved(TableColumnModelEvent e) {
+				if (e.getFromIndex() != e.getToIndex()) {
+					invalidateToolTips();
+				}
 				updateCellButtons();
 			}
 
 			@Override
 			public void columnRemoved(TableColumnModelEvent e) {
+				invalidateToolTips();
 				updateCellButtons();
 			}
 
@@ -260,6 +326,13 @@ public class Table extends JTable implements Filterable {
 
 			@Override
 			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 1 && getModel() instanceof GroupedTableModel) {
+					int row = rowAtPoint(e.getPoint());
+					GroupedTableModel groupedModel = (GroupedTableModel) getModel();
+					if (row >= 0 && groupedModel.isGroupHeader(convertRowIndexToModel(row))) {
+						groupedModel.toggleExpanded(convertRowIndexToModel(row));
+					}
+				}
 				if (e.getClickCount() > 1 && getSelectedColumnCount() == 1) {
 					int modelColumnIndex = convertColumnIndexToModel(getSelectedColumn());
 					if (cellButtons.containsKey(modelColumnIndex)) {
@@ -293,6 +366,12 @@ public class Table extends JTable implements Filterable {
 			super.setModel(new DefaultTableModel()); // TODO?
 		}
 
+		if (conditionalFormatting != null) {
+			conditionalFormatting.setModel(model);
+		}
+
+		invalidateToolTips();
+
 		if (sorter != null) {
 			sorter.removeRowSorterListener(rowSorterListener);
 		}
@@ -305,6 +384,20 @@ public class Table extends JTable implements Filterable {
 
 			sorter = new TableRowSorter<TableModel>(model) {
 
+				private boolean timingSort = false;
+
+				// Group headers must stay in front of their rows, so the rows of a grouped model
+				// are not sorted or filtered (the source model of the grouped model can be)
+				@Override
+				public boolean isSortable(int column) {
+					return !(getModel() instanceof GroupedTableModel) && super.isSortable(column);
+				}
+
+				@Override
+				public void setRowFilter(RowFilter<? super TableModel, ? super Integer> filter) {
+					super.setRowFilter(getModel() instanceof GroupedTableModel ? null : filter);
+				}
+
 				@Override
 				public void toggleSortOrder(int column) {
 					final List<? extends SortKey> sortKeys = getSortKeys();
@@ -316,7 +409,59 @@ public class Table extends JTable implements Filterable {
 					}
 					super.toggleSortOrder(column);
 				}
+
+				@Override
+				public void setSortKeys(List<? extends SortKey> sortKeys) {
+					if (getModel() instanceof GroupedTableModel) {
+						sortKeys = null;
+					}
+					if (metrics != null && !timingSort) {
+						long start = System.nanoTime();
+						timingSort = true;
+						try {
+							super.setSortKeys(sortKeys);
+						} finally {
+							timingSort = false;
+							metrics.sorted(System.nanoTime() - start);
+						}
+					} else {
+						super.setSortKeys(sortKeys);
+					}
+				}
+
+				// Changing the sort keys of sorted rows doesn't call sort(), so both are timed
+				@Override
+				public void sort() {
+					if (metrics != null && !timingSort) {
+						long start = System.nanoTime();
+						timingSort = true;
+						try {
+							super.sort();
+						} finally {
+							timingSort = false;
+							metrics.sorted(System.nanoTime() - start);
+						}
+					} else {
+						super.sort();
+					}
+				}
 			};
+			sorter.setStringConverter(new TableStringConverter() {
+
+				@Override
+				public String toString(TableModel model, int row, int column) {
+
+					// Match text filters against the displayed date instead of Date.toString(),
+					// LocalDateFormatter is thread-safe so this can also be used off the EDT
+					Object value = model.getValueAt(row, column);
+					if (value instanceof Date) {
+						return LocalDateFormatter.getDefault().format((Date) value);
+					} else {
+						return value != null ? value.toString() : ""; //$NON-NLS-1$
+					}
+
+				}
+			});
 			sorter.addRowSorterListener(rowSorterListener);
 			setRowSorter(sorter);
 
@@ -326,9 +471,85 @@ public class Table extends JTable implements Filterable {
 
 	}
 
+	@Override
+	public void setColumnModel(TableColumnModel columnModel) {
+		super.setColumnModel(columnModel);
+		invalidateToolTips();
+		if (columnOffsets != null) {
+			columnOffsets.dispose();
+			columnOffsets = new ColumnOffsets(getColumnModel());
+		}
+	}
+
+	@Override
+	public Rectangle getCellRect(int row, int column, boolean includeSpacing) {
+
+		if (columnOffsets == null || column < 0 || column >= getColumnCount() || !getComponentOrientation().isLeftToRight()) {
+			return super.getCellRect(row, column, includeSpacing);
+		}
+
+		// Let JTable calculate the vertical bounds and use the column offsets for the horizontal bounds
+		Rectangle rect = super.getCellRect(row, -1, true);
+		rect.x = columnOffsets.getX(column);
+		rect.width = columnOffsets.getWidth(column);
+
+		if (!includeSpacing && row >= 0 && row < getRowCount()) {
+			int rowMargin = Math.min(getRowMargin(), rect.height);
+			int columnMargin = Math.min(getColumnModel().getColumnMargin(), rect.width);
+			rect.setBounds(rect.x + columnMargin / 2, rect.y + rowMargin / 2, rect.width - columnMargin, rect.height - rowMargin);
+		}
+
+		return rect;
+
+	}
+
+	@Override
+	public int columnAtPoint(Point point) {
+		if (columnOffsets != null && getComponentOrientation().isLeftToRight()) {
+			return columnOffsets.getColumnAtX(point.x);
+		} else {
+			return super.columnAtPoint(point);
+		}
+	}
+
+	@Override
+	protected ListSelectionModel createDefaultSelectionModel() {
+		return new BitSetSelectionModel();
+	}
+
+	@Override
+	public int getSelectedRowCount() {
+		if (getSelectionModel() instanceof BitSetSelectionModel) {
+			return ((BitSetSelectionModel) getSelectionModel()).getSelectedItemsCount();
+		} else {
+			return super.getSelectedRowCount();
+		}
+	}
+
+	// Returns the selected view rows as a bit set, which (unlike getSelectedRows()) doesn't
+	// need an int for every selected row
+	public BitSet getSelectedRowSet() {
+
+		ListSelectionModel selectionModel = getSelectionModel();
+		if (selectionModel instanceof BitSetSelectionModel) {
+			return ((BitSetSelectionModel) selectionModel).getSelection();
+		}
+
+		BitSet selection = new BitSet();
+		for (int row = selectionModel.getMinSelectionIndex(); row >= 0 && row <= selectionModel.getMaxSelectionIndex(); row++) {
+			if (selectionModel.isSelectedIndex(row)) {
+				selection.set(row);
+			}
+		}
+		return selection;
+
+	}
+
 	@Override
 	public void updateUI() {
-		setUI(new TableUI());
+		TableUI ui = new TableUI();
+		ui.setRowImageCacheEnabled(rowImageCacheEnabled);
+		setUI(ui);
 		getTableHeader().setBackground(ColorUtils.TITLE_BAR_COLOR);
 	}
 
@@ -349,20 +570,45 @@ public class Table extends JTable implements Filterable {
 
 	public void fireTableWillChange() {
 		if (!reloading) {
+			long start = metrics != null ? System.nanoTime() : 0L;
 			for (TableListener listener : listeners) {
 				listener.tableWillChange();
 			}
+			if (metrics != null) {
+				metrics.listenersDispatched(System.nanoTime() - start);
+			}
 		}
 	}
 
 	public void fireTableChanged() {
 		if (!reloading) {
+			long start = metrics != null ? System.nanoTime() : 0L;
 			for (TableListener listener : listeners) {
 				listener.tableChanged();
 			}
+			if (metrics != null) {
+				metrics.listenersDispatched(System.nanoTime() - start);
+			}
+		}
+	}
+
+	public boolean isMetricsEnabled() {
+		return metrics != null;
+	}
+
+	// Records paint, sort, filter and listener timings (see TableMetrics), when disabled nothing is recorded
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		if (metricsEnabled && metrics == null) {
+			metrics = new TableMetrics();
+		} else if (!metricsEnabled) {
+			metrics = null;
 		}
 	}
 
+	public TableMetrics getMetrics() {
+		return metrics;
+	}
+
 	public Color getFocusedCellBackground() {
 		return focusedCellBackground;
 	}
@@ -379,6 +625,18 @@ public class Table extends JTable implements Filterable {
 		this.alternatingBackgroundEnabled = alternatingBackgroundEnabled;
 	}
 
+	public boolean isRowImageCacheEnabled() {
+		return rowImageCacheEnabled;
+	}
+
+	public void setRowImageCacheEnabled(boolean rowImageCacheEnabled) {
+		this.rowImageCacheEnabled = rowImageCacheEnabled;
+		if (getUI() instanceof TableUI) {
+			((TableUI) getUI()).setRowImageCacheEnabled(rowImageCacheEnabled);
+		}
+		repaint();
+	}
+
 	@Override
 	public Color getForeground() {
 		return isEnabled() ? super.getForeground() : DISABLED_FOREGROUND;
@@ -387,6 +645,8 @@ public class Table extends JTable implements Filterable {
 	@Override
 	public Component prepareRenderer(TableCellRenderer renderer, int row, int column) {
 
+		long start = metrics != null ? System.nanoTime() : 0L;
+
 		JComponent comp = (JComponent) super.prepareRenderer(renderer, row, column);
 
 		// comp.setFont(getFont());
@@ -394,10 +654,103 @@ public class Table extends JTable implements Filterable {
 		prepareRendererColors(comp, row, column);
 		prepareRendererBorder(comp, row, column);
 
+		if (getModel() instanceof GroupedTableModel) {
+			prepareRendererGroupHeader(comp, row);
+		}
+
+		if (conditionalFormatting != null) {
+			prepareRendererFormat(comp, row, column);
+		}
+
+		if (metrics != null) {
+			metrics.cellPrepared(renderer, convertColumnIndexToModel(column), System.nanoTime() - start);
+		}
+
 		return comp;
 
 	}
 
+	protected void prepareRendererGroupHeader(JComponent component, int row) {
+
+		if (((GroupedTableModel) getModel()).isGroupHeader(convertRowIndexToModel(row))) {
+
+			if (groupHeaderFont == null || groupHeaderBaseFont != getFont()) {
+				groupHeaderBaseFont = getFont();
+				groupHeaderFont = groupHeaderBaseFont.deriveFont(Font.BOLD);
+			}
+
+			component.setFont(groupHeaderFont);
+
+		} else if (component.getFont() == groupHeaderFont) {
+			component.setFont(getFont());
+		}
+
+	}
+
+	protected void prepareRendererFormat(JComponent component, int row, int column) {
+
+		// Renderer components are shared, so restore the icon we replaced for a previous
+		// cell, unless the renderer has set it's own icon in the mean time
+		if (component == formattedIconLabel) {
+			if (formattedIconLabel.getIcon() == formattedIcon) {
+				formattedIconLabel.setIcon(replacedIcon);
+			}
+			formattedIconLabel = null;
+			formattedIcon = null;
+			replacedIcon = null;
+		}
+
+		int modelColumn = convertColumnIndexToModel(column);
+		if (conditionalFormatting.hasRules(modelColumn)) {
+
+			ConditionalFormatting.Format format = conditionalFormatting.getFormat(convertRowIndexToModel(row), modelColumn);
+			if (format != null) {
+
+				if (!isRowSelected(row)) {
+					if (format.getForeground() != null) {
+						component.setForeground(format.getForeground());
+					}
+					if (format.getBackground() != null) {
+						component.setOpaque(true);
+						component.setBackground(format.getBackground());
+					}
+				}
+
+				if (format.getFontStyle() >= 0) {
+					component.setFont(format.deriveFont(component.getFont()));
+				}
+
+				if (format.getIcon() != null && component instanceof JLabel) {
+					formattedIconLabel = (JLabel) component;
+					formattedIcon = format.getIcon();
+					replacedIcon = formattedIconLabel.getIcon();
+					formattedIconLabel.setIcon(formattedIcon);
+				}
+
+			}
+
+		}
+
+	}
+
+	public ConditionalFormatting getConditionalFormatting() {
+		if (conditionalFormatting == null) {
+			conditionalFormatting = new ConditionalFormatting(this);
+		}
+		return conditionalFormatting;
+	}
+
+	public void addFormattingRule(int modelColumn, ConditionalFormatting.Rule rule) {
+		getConditionalFormatting().addRule(modelColumn, rule);
+		repaint();
+	}
+
+	public void invalidateRowImageCache() {
+		if (getUI() instanceof TableUI && ((TableUI) getUI()).getRowImageCache() != null) {
+			((TableUI) getUI()).getRowImageCache().invalidate();
+		}
+	}
+
 	protected void prepareRendererColors(JComponent component, int row, int column) {
 
 		boolean rowSelected = isRowSelected(row);
@@ -485,6 +838,16 @@ public class Table extends JTable implements Filterable {
 
 	@Override
 	public void setFilter(String filterText, Date from, Date to) {
+		if (metrics != null) {
+			long start = System.nanoTime();
+			applyFilter(filterText, from, to);
+			metrics.filtered(System.nanoTime() - start);
+		} else {
+			applyFilter(filterText, from, to);
+		}
+	}
+
+	private void applyFilter(String filterText, Date from, Date to) {
 
 		try {
 
@@ -611,6 +974,20 @@ public class Table extends JTable implements Filterable {
 		fireTableChanged();
 	}
 
+	// Fits the column widths to a sample of the rows in the background, a previous fit which is still running is cancelled
+	public ColumnAutoFit autoFitColumns(boolean refine) {
+
+		if (columnAutoFit != null) {
+			columnAutoFit.cancel();
+		}
+
+		columnAutoFit = new ColumnAutoFit(this);
+		columnAutoFit.start(refine);
+
+		return columnAutoFit;
+
+	}
+
 	public boolean stopEditing() {
 		if (getCellEditor() != null) {
 			return getCellEditor().stopCellEditing();
@@ -690,11 +1067,11 @@ public class Table extends JTable implements Filterable {
 		}
 
 		if (getSelectedRowCount() == 1) {
-			for (int i = 0; i < getModel().getColumnCount(); i++) {
-				int viewIndex = convertColumnIndexToView(i);
-				if (viewIndex >= 0 && cellButtons.containsKey(i)) {
+			for (Map.Entry<Integer, JButton> entry : cellButtons.entrySet()) {
+				int viewIndex = convertColumnIndexToView(entry.getKey());
+				if (viewIndex >= 0) {
 
-					JButton cellButton = cellButtons.get(i);
+					JButton cellButton = entry.getValue();
 
 					Rectangle bounds = getCellRect(getSelectedRow(), viewIndex, false);
 					cellButton.setBounds(bounds.x + bounds.width - 24, bounds.y + 1, 23, bounds.height - 2);
@@ -707,43 +1084,100 @@ public class Table extends JTable implements Filterable {
 
 	}
 
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		if (getParent() instanceof JViewport) {
+			scrollViewport = (JViewport) getParent();
+			scrollViewport.addChangeListener(viewportListener);
+			lastViewPosition = scrollViewport.getViewPosition();
+		}
+	}
+
+	@Override
+	public void removeNotify() {
+		if (scrollViewport != null) {
+			scrollViewport.removeChangeListener(viewportListener);
+			scrollViewport = null;
+		}
+		scrollTimer.stop();
+		scrolling = false;
+		super.removeNotify();
+	}
+
 	@Override
 	public String getToolTipText(MouseEvent e) {
 
 		// TODO: During scrolling the tool-tip is shown in weird locations, this is a bit of a hack to fix that
-		if (System.currentTimeMillis() > lastScroll + MINIMUM_TOOLTIP_DELAY_AFTER_SCROLL) {
+		if (!scrolling) {
 
 			int row = rowAtPoint(e.getPoint());
 			int col = columnAtPoint(e.getPoint());
 
 			if (row >= 0 && col >= 0) {
 
-				Object value = getValueAt(row, col);
+				// Tool-tips are cached per cell until the model, sorting, filtering or columns change
+				long key = ((long) row << 32) | (col & 0xFFFFFFFFL);
+				String text = toolTipCache.get(key);
+				if (text == null) {
+					text = createToolTipText(row, col);
+					if (text == null) {
+						text = ""; //$NON-NLS-1$
+					}
+					toolTipCache.put(key, text);
+				}
 
-				if (value != null) {
+				return text.isEmpty() ? null : text;
 
-					TableCellRenderer renderer = getCellRenderer(row, col);
-					if (renderer != null) {
+			}
 
-						Component component = renderer.getTableCellRendererComponent(this, value, false, false, row, col);
-						if (component instanceof JLabel) {
-							return ((JLabel) component).getText();
-						}
+		}
 
-					}
+		return null;
+
+	}
+
+	protected String createToolTipText(int row, int col) {
+
+		Object value = getValueAt(row, col);
+
+		if (value != null) {
 
-					return value.toString();
+			TableCellRenderer renderer = getCellRenderer(row, col);
+			if (renderer instanceof ToolTipTextProvider) {
+				return ((ToolTipTextProvider) renderer).getToolTipText(this, value, row, col);
+			} else if (renderer != null) {
 
+				Component component = renderer.getTableCellRendererComponent(this, value, false, false, row, col);
+				if (component instanceof JLabel) {
+					return ((JLabel) component).getText();
 				}
 
 			}
 
+			return value.toString();
+
 		}
 
 		return null;
 
 	}
 
+	public void invalidateToolTips() {
+		// Also called by the super constructor, before the cache is created
+		if (toolTipCache != null) {
+			toolTipCache.invalidate();
+		}
+	}
+
+	// The queue used by the remote cell editors to commit their values
+	public RemoteCellCommitQueue getCommitQueue() {
+		if (commitQueue == null) {
+			commitQueue = new RemoteCellCommitQueue(this);
+		}
+		return commitQueue;
+	}
+
 	public UndoManager getUndoManager() {
 		return undoManager;
 	}
@@ -784,7 +1218,7 @@ public class Table extends JTable implements Filterable {
 
 	public class TableRowTransferHandler extends TransferHandler {
 
-		private final DataFlavor localObjectFlavor = new ActivationDataFlavor(ArrayList.class, DataFlavor.javaJVMLocalObjectMimeType, "Integer Row Index"); //$NON-NLS-1$
+		private final DataFlavor localObjectFlavor = new ActivationDataFlavor(BitSet.class, DataFlavor.javaJVMLocalObjectMimeType, "Row Selection"); //$NON-NLS-1$
 		private final Table table;
 		private final Reorderable tableModel;
 
@@ -802,19 +1236,13 @@ public class Table extends JTable implements Filterable {
 			assert (c == table);
 			// return new DataHandler(new Integer(table.getSelectedRow()), localObjectFlavor.getMimeType());
 
-			ArrayList<Integer> selectedRows = new ArrayList<Integer>();
-			for (int row : table.getSelectedRows()) {
-				selectedRows.add(row);
-			}
-
-			return new DataHandler(selectedRows, localObjectFlavor.getMimeType());
+			return new DataHandler(table.getSelectedRowSet(), localObjectFlavor.getMimeType());
 		}
 
 		@Override
 		public boolean canImport(TransferHandler.TransferSupport info) {
 
-			// TODO: Reordering of multiple rows is not yet working
-			if (table.getSelectedRowCount() != 1) {
+			if (table.getSelectedRowCount() == 0) {
 				return false;
 			}
 
@@ -852,44 +1280,32 @@ public class Table extends JTable implements Filterable {
 
 			try {
 
-				@SuppressWarnings("unchecked")
-				ArrayList<Integer> selectedRows = (ArrayList<Integer>) info.getTransferable().getTransferData(localObjectFlavor);
-
-				/*
-				 * proefje.. Collections.sort(selectedRows, new Comparator<Integer>() {
-				 * 
-				 * @Override public int compare(Integer o1, Integer o2) { return Integer.compare(o2, o1); } });
-				 */
-
-				for (int fromIndexModel : selectedRows) {
-
-					fromIndexModel = convertRowIndexToModel(fromIndexModel);
+				BitSet selectedRows = (BitSet) info.getTransferable().getTransferData(localObjectFlavor);
 
-					// Integer fromIndex = (Integer)info.getTransferable().getTransferData(localObjectFlavor);
-					if (fromIndexModel > -1 && fromIndexModel != toIndexModel) {
-
-						ReorderUndoable undoable = new ReorderUndoable(table, tableModel, fromIndexModel, toIndexModel);
-
-						// table.getSelectionModel().removeSelectionInterval(fromIndex, fromIndex);
-						tableModel.reorder(fromIndexModel, toIndexModel);
-
-						sorter.sort();
-
-						if (toIndexModel > fromIndexModel) {
-							toIndexModel--;
-						}
-						// table.getSelectionModel().addSelectionInterval(toIndex, toIndex);
-						toIndexView = convertRowIndexToView(toIndexModel);
-						table.getSelectionModel().setSelectionInterval(toIndexView, toIndexView);
+				int[] fromIndicesModel = new int[selectedRows.cardinality()];
+				int count = 0;
+				for (int selectedRow = selectedRows.nextSetBit(0); selectedRow >= 0; selectedRow = selectedRows.nextSetBit(selectedRow + 1)) {
+					int fromIndexModel = convertRowIndexToModel(selectedRow);
+					if (fromIndexModel > -1) {
+						fromIndicesModel[count++] = fromIndexModel;
+					}
+				}
+				fromIndicesModel = Arrays.copyOf(fromIndicesModel, count);
+				Arrays.sort(fromIndicesModel);
 
-						if (undoManager != null) {
-							undoManager.addEdit(undoable);
-						}
+				// The whole selection is moved as one block, unless the block wouldn't move at all
+				int blockStart = count > 0 ? Reorderable.getBlockStart(fromIndicesModel, toIndexModel) : -1;
+				if (count > 0 && !(fromIndicesModel[0] == blockStart && fromIndicesModel[count - 1] == blockStart + count - 1)) {
 
-						dataImported = true;
+					ReorderUndoable undoable = new ReorderUndoable(table, tableModel, fromIndicesModel, toIndexModel);
+					undoable.redo();
 
+					if (undoManager != null) {
+						undoManager.addEdit(undoable);
 					}
 
+					dataImported = true;
+
 				}
 
 			} catch (Exception e) {
@@ -912,6 +1328,10 @@ public class Table extends JTable implements Filterable {
 
 		public void tableWillChange();
 
+		public default void cellUpdatesFlushed() {
+
+		}
+
 	}
 
 }
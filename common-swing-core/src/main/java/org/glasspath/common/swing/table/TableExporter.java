@@ -0,0 +1,471 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.awt.Toolkit;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+import javax.swing.table.TableModel;
+
+import org.glasspath.common.swing.FrameContext;
+import org.glasspath.common.swing.dialog.ProgressDialog;
+import org.glasspath.common.swing.resources.CommonResources;
+
+// Exports the rows of a table in view order (sorted and filtered) and the columns of the column model (so hidden
+// columns are skipped), values are formatted like the renderers do. The view is captured when the exporter is
+// created (on the EDT), after that the values are read in chunks on the EDT and formatted and written by the
+// calling thread, so only one chunk of values and text is kept in memory
+public class TableExporter {
+
+	public enum Format {
+
+		CSV(',', "\r\n"), //$NON-NLS-1$
+		TSV('\t', "\n"); //$NON-NLS-1$
+
+		private final char separator;
+		private final String lineSeparator;
+
+		private Format(char separator, String lineSeparator) {
+			this.separator = separator;
+			this.lineSeparator = lineSeparator;
+		}
+
+	}
+
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+	public static final int MAX_STRING_FLAVOR_ROWS = 10000;
+	public static final int BUFFER_SIZE = 64 * 1024;
+	public static final DataFlavor TEXT_READER_FLAVOR = createReaderFlavor();
+
+	private final JTable table;
+	private final Format format;
+	private final int[] rows;
+	private final int[] columns;
+	private final String[] columnNames;
+	private final List<Function<Object, String>> formatters = new ArrayList<>();
+	private boolean headerIncluded = true;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private volatile boolean cancelled = false;
+
+	public TableExporter(JTable table, Format format) {
+		this(table, format, false);
+	}
+
+	public TableExporter(JTable table, Format format, boolean selectedRowsOnly) {
+
+		this.table = table;
+		this.format = format;
+
+		if (selectedRowsOnly) {
+
+			ListSelectionModel selectionModel = table.getSelectionModel();
+
+			int count = 0;
+			int[] selectedRows = new int[table.getSelectedRowCount()];
+			for (int row = Math.max(selectionModel.getMinSelectionIndex(), 0); row <= selectionModel.getMaxSelectionIndex() && count < selectedRows.length; row++) {
+				if (selectionModel.isSelectedIndex(row)) {
+					selectedRows[count++] = table.convertRowIndexToModel(row);
+				}
+			}
+			this.rows = selectedRows;
+
+		} else {
+
+			this.rows = new int[table.getRowCount()];
+			for (int row = 0; row < rows.length; row++) {
+				rows[row] = table.convertRowIndexToModel(row);
+			}
+
+		}
+
+		columns = new int[table.getColumnCount()];
+		columnNames = new String[columns.length];
+		for (int column = 0; column < columns.length; column++) {
+
+			TableColumn tableColumn = table.getColumnModel().getColumn(column);
+			columns[column] = tableColumn.getModelIndex();
+			columnNames[column] = tableColumn.getHeaderValue() != null ? tableColumn.getHeaderValue().toString() : table.getColumnName(column);
+
+			TableCellRenderer renderer = tableColumn.getCellRenderer();
+			if (renderer == null) {
+				renderer = table.getDefaultRenderer(table.getColumnClass(column));
+			}
+
+			if (renderer instanceof TextFormattable) {
+				formatters.add(((TextFormattable) renderer).createTextFormatter());
+			} else {
+				formatters.add(value -> value != null ? value.toString() : ""); //$NON-NLS-1$
+			}
+
+		}
+
+	}
+
+	public int getRowCount() {
+		return rows.length;
+	}
+
+	public boolean isHeaderIncluded() {
+		return headerIncluded;
+	}
+
+	public void setHeaderIncluded(boolean headerIncluded) {
+		this.headerIncluded = headerIncluded;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(chunkSize, 1);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	// Writes all rows, the consumer is called (on the writing thread) with the number of rows written after every chunk,
+	// returns false if the export was cancelled
+	public boolean write(Writer writer, IntConsumer progress) throws IOException {
+
+		if (headerIncluded) {
+			writeHeader(writer);
+		}
+
+		Object[][] values = new Object[Math.min(chunkSize, rows.length)][columns.length];
+
+		for (int start = 0; start < rows.length; start += chunkSize) {
+
+			if (cancelled) {
+				return false;
+			}
+
+			int end = Math.min(start + chunkSize, rows.length);
+			readChunk(values, start, end);
+			writeChunk(writer, values, end - start);
+
+			if (progress != null) {
+				progress.accept(end);
+			}
+
+		}
+
+		return !cancelled;
+
+	}
+
+	private void writeHeader(Writer writer) throws IOException {
+		for (int column = 0; column < columns.length; column++) {
+			if (column > 0) {
+				writer.write(format.separator);
+			}
+			writeText(writer, columnNames[column]);
+		}
+		writer.write(format.lineSeparator);
+	}
+
+	private void readChunk(Object[][] values, int start, int end) throws IOException {
+
+		Runnable reader = new Runnable() {
+
+			@Override
+			public void run() {
+
+				TableModel model = table.getModel();
+				int rowCount = model.getRowCount();
+				int columnCount = model.getColumnCount();
+
+				for (int i = start; i < end; i++) {
+					for (int column = 0; column < columns.length; column++) {
+						values[i - start][column] = rows[i] < rowCount && columns[column] < columnCount ? model.getValueAt(rows[i], columns[column]) : null;
+					}
+				}
+
+			}
+		};
+
+		// The model is only accessed on the EDT, one chunk at a time so the EDT isn't blocked
+		if (SwingUtilities.isEventDispatchThread()) {
+			reader.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(reader);
+			} catch (InterruptedException e) {
+				cancelled = true;
+				Thread.currentThread().interrupt();
+			} catch (InvocationTargetException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+
+	}
+
+	private void writeChunk(Writer writer, Object[][] values, int count) throws IOException {
+
+		for (int i = 0; i < count; i++) {
+
+			for (int column = 0; column < columns.length; column++) {
+
+				if (column > 0) {
+					writer.write(format.separator);
+				}
+
+				writeText(writer, formatters.get(column).apply(values[i][column]));
+				values[i][column] = null;
+
+			}
+
+			writer.write(format.lineSeparator);
+
+		}
+
+	}
+
+	private void writeText(Writer writer, String text) throws IOException {
+
+		if (format == Format.TSV) {
+			writer.write(text.replace('\t', ' ').replace('\r', ' ').replace('\n', ' '));
+		} else if (text.indexOf(format.separator) >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+			writer.write('"');
+			writer.write(text.replace("\"", "\"\"")); //$NON-NLS-1$ //$NON-NLS-2$
+			writer.write('"');
+		} else {
+			writer.write(text);
+		}
+
+	}
+
+	public boolean writeToFile(File file, IntConsumer progress) throws IOException {
+
+		boolean completed = false;
+
+		try (Writer writer = new BufferedWriter(Channels.newWriter(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+			completed = write(writer, progress);
+		} finally {
+			if (!completed) {
+				file.delete();
+			}
+		}
+
+		return completed;
+
+	}
+
+	// Exports to the file on a background thread, the progress is shown in a progress dialog which can be used to cancel the export
+	public void exportToFile(FrameContext context, File file) {
+
+		// Cancelling is passed on right away, so the export stops after the current chunk
+		ProgressDialog progressDialog = new ProgressDialog(context, CommonResources.getString("Export"), null) { //$NON-NLS-1$
+
+			@Override
+			protected void cancel() {
+				TableExporter.this.cancel();
+				super.cancel();
+			}
+		};
+		progressDialog.getHeaderLabel().setText(CommonResources.getString("ExportingRows")); //$NON-NLS-1$
+		progressDialog.updateProgress(file.getAbsolutePath());
+
+		Thread thread = new Thread(new Runnable() {
+
+			private int lastProgress = -1;
+
+			@Override
+			public void run() {
+
+				IOException exception = null;
+				try {
+					writeToFile(file, rowCount -> {
+						int percentage = rows.length > 0 ? (int) ((long) rowCount * 100 / rows.length) : 100;
+						if (percentage != lastProgress) {
+							lastProgress = percentage;
+							SwingUtilities.invokeLater(new Runnable() {
+
+								@Override
+								public void run() {
+									if (!cancelled) {
+										progressDialog.updateProgress(rowCount + " / " + rows.length, percentage); //$NON-NLS-1$
+									}
+								}
+							});
+						}
+					});
+				} catch (IOException e) {
+					exception = e;
+				}
+
+				final IOException error = exception;
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						if (error != null) {
+							progressDialog.updateProgress(CommonResources.getString("ExportFailed") + ": " + error.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+						} else {
+							progressDialog.setVisible(false);
+							progressDialog.dispose();
+						}
+					}
+				});
+
+			}
+		}, "TableExporter"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	// The text is only created when the clipboard contents are requested, TEXT_READER_FLAVOR creates the text while it is being read.
+	// The string flavor creates the whole text at once in getTransferData() (which is usually called on the EDT), so it is
+	// only offered for exports of up to MAX_STRING_FLAVOR_ROWS rows, larger exports can only be pasted as a Reader
+	public Transferable createTransferable() {
+
+		boolean stringFlavorSupported = TEXT_READER_FLAVOR == null || rows.length <= MAX_STRING_FLAVOR_ROWS;
+
+		return new Transferable() {
+
+			@Override
+			public DataFlavor[] getTransferDataFlavors() {
+				if (TEXT_READER_FLAVOR == null) {
+					return new DataFlavor[] { DataFlavor.stringFlavor };
+				} else if (stringFlavorSupported) {
+					return new DataFlavor[] { DataFlavor.stringFlavor, TEXT_READER_FLAVOR };
+				} else {
+					return new DataFlavor[] { TEXT_READER_FLAVOR };
+				}
+			}
+
+			@Override
+			public boolean isDataFlavorSupported(DataFlavor flavor) {
+				return (stringFlavorSupported && DataFlavor.stringFlavor.equals(flavor)) || (TEXT_READER_FLAVOR != null && TEXT_READER_FLAVOR.equals(flavor));
+			}
+
+			@Override
+			public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+				if (stringFlavorSupported && DataFlavor.stringFlavor.equals(flavor)) {
+					StringWriter writer = new StringWriter();
+					write(writer, null);
+					return writer.toString();
+				} else if (TEXT_READER_FLAVOR != null && TEXT_READER_FLAVOR.equals(flavor)) {
+					return new ExportReader();
+				} else {
+					throw new UnsupportedFlavorException(flavor);
+				}
+			}
+		};
+
+	}
+
+	public void copyToClipboard() {
+		Toolkit.getDefaultToolkit().getSystemClipboard().setContents(createTransferable(), null);
+	}
+
+	private static DataFlavor createReaderFlavor() {
+		try {
+			return new DataFlavor("text/plain;class=java.io.Reader"); //$NON-NLS-1$
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private class ExportReader extends Reader {
+
+		private final StringWriter buffer = new StringWriter();
+		private final Object[][] values = new Object[Math.min(chunkSize, rows.length)][columns.length];
+		private int position = 0;
+		private int nextRow = 0;
+		private boolean headerWritten = !headerIncluded;
+
+		private boolean fill() throws IOException {
+
+			buffer.getBuffer().setLength(0);
+			position = 0;
+
+			if (!headerWritten) {
+				writeHeader(buffer);
+				headerWritten = true;
+			} else if (nextRow < rows.length && !cancelled) {
+				int end = Math.min(nextRow + chunkSize, rows.length);
+				readChunk(values, nextRow, end);
+				writeChunk(buffer, values, end - nextRow);
+				nextRow = end;
+			}
+
+			return buffer.getBuffer().length() > 0;
+
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+
+			if (len == 0) {
+				return 0;
+			} else if (position >= buffer.getBuffer().length() && !fill()) {
+				return -1;
+			}
+
+			int count = Math.min(len, buffer.getBuffer().length() - position);
+			buffer.getBuffer().getChars(position, position + count, cbuf, off);
+			position += count;
+
+			return count;
+
+		}
+
+		@Override
+		public void close() {
+			nextRow = rows.length;
+			buffer.getBuffer().setLength(0);
+		}
+
+	}
+
+}
@@ -0,0 +1,641 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.CellRendererPane;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowSorter;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
+import javax.swing.event.TableColumnModelEvent;
+import javax.swing.event.TableColumnModelListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
+
+import org.glasspath.common.swing.color.ColorUtils;
+
+// Summary row which is painted aligned with the columns of the table, the aggregates are
+// updated incrementally from model, sorter and selection events instead of full scans
+public class TableFooter extends JComponent implements TableModelListener, RowSorterListener, ListSelectionListener, TableColumnModelListener, PropertyChangeListener, ChangeListener {
+
+	public enum Aggregate {
+		SUM, AVERAGE, MIN, MAX, COUNT
+	}
+
+	public enum Scope {
+		ALL, VIEW, SELECTION
+	}
+
+	private final Table table;
+	private final Map<Integer, ColumnAggregate> aggregates = new HashMap<>();
+	private final CellRendererPane rendererPane = new CellRendererPane();
+
+	private TableModel model = null;
+	private RowSorter<?> rowSorter = null;
+	private ListSelectionModel selectionModel = null;
+	private JViewport viewport = null;
+	private Scope scope = Scope.ALL;
+	private boolean[] included = new boolean[0];
+	private int rowCount = 0;
+	private boolean resyncPending = false;
+	private int resyncFirst = Integer.MAX_VALUE;
+	private int resyncLast = -1;
+	private boolean modelEventPending = false;
+
+	public TableFooter(Table table) {
+
+		this.table = table;
+
+		add(rendererPane);
+		setBackground(ColorUtils.TITLE_BAR_COLOR);
+		setOpaque(true);
+
+		table.addPropertyChangeListener(this);
+		table.getColumnModel().addColumnModelListener(this);
+
+		setModel(table.getModel());
+		setRowSorter(table.getRowSorter());
+		setSelectionModel(table.getSelectionModel());
+		updateViewport();
+
+		rebuild();
+
+	}
+
+	public Table getTable() {
+		return table;
+	}
+
+	public void dispose() {
+
+		table.removePropertyChangeListener(this);
+		table.getColumnModel().removeColumnModelListener(this);
+
+		setModel(null);
+		setRowSorter(null);
+		setSelectionModel(null);
+
+		if (viewport != null) {
+			viewport.removeChangeListener(this);
+			viewport = null;
+		}
+
+	}
+
+	public Scope getScope() {
+		return scope;
+	}
+
+	public void setScope(Scope scope) {
+		this.scope = scope;
+		rebuild();
+	}
+
+	public void setAggregate(int modelColumn, Aggregate aggregate) {
+
+		if (aggregate != null) {
+			ColumnAggregate columnAggregate = new ColumnAggregate(modelColumn, aggregate);
+			aggregates.put(modelColumn, columnAggregate);
+			columnAggregate.rebuild();
+		} else {
+			aggregates.remove(modelColumn);
+		}
+
+		repaint();
+
+	}
+
+	public Aggregate getAggregate(int modelColumn) {
+		ColumnAggregate columnAggregate = aggregates.get(modelColumn);
+		return columnAggregate != null ? columnAggregate.aggregate : null;
+	}
+
+	public Object getValue(int modelColumn) {
+		ColumnAggregate columnAggregate = aggregates.get(modelColumn);
+		return columnAggregate != null ? columnAggregate.getValue() : null;
+	}
+
+	private void setModel(TableModel model) {
+		if (this.model != null) {
+			this.model.removeTableModelListener(this);
+		}
+		this.model = model;
+		if (model != null) {
+			model.addTableModelListener(this);
+		}
+	}
+
+	private void setRowSorter(RowSorter<?> rowSorter) {
+		if (this.rowSorter != null) {
+			this.rowSorter.removeRowSorterListener(this);
+		}
+		this.rowSorter = rowSorter;
+		if (rowSorter != null) {
+			rowSorter.addRowSorterListener(this);
+		}
+	}
+
+	private void setSelectionModel(ListSelectionModel selectionModel) {
+		if (this.selectionModel != null) {
+			this.selectionModel.removeListSelectionListener(this);
+		}
+		this.selectionModel = selectionModel;
+		if (selectionModel != null) {
+			selectionModel.addListSelectionListener(this);
+		}
+	}
+
+	private void updateViewport() {
+
+		JViewport newViewport = table.getParent() instanceof JViewport ? (JViewport) table.getParent() : null;
+		if (newViewport != viewport) {
+
+			if (viewport != null) {
+				viewport.removeChangeListener(this);
+			}
+
+			viewport = newViewport;
+
+			if (viewport != null) {
+				viewport.addChangeListener(this);
+			}
+
+		}
+
+	}
+
+	public void rebuild() {
+
+		rowCount = model != null ? model.getRowCount() : 0;
+		included = new boolean[rowCount];
+		for (int row = 0; row < rowCount; row++) {
+			included[row] = isIncluded(row);
+		}
+
+		for (ColumnAggregate columnAggregate : aggregates.values()) {
+			columnAggregate.rebuild();
+		}
+
+		repaint();
+
+	}
+
+	private boolean isIncluded(int modelRow) {
+
+		if (scope == Scope.ALL) {
+			return true;
+		}
+
+		int viewRow = table.convertRowIndexToView(modelRow);
+		if (scope == Scope.VIEW) {
+			return viewRow >= 0;
+		} else {
+			return viewRow >= 0 && selectionModel != null && selectionModel.isSelectedIndex(viewRow);
+		}
+
+	}
+
+	private double readValue(int modelRow, int modelColumn) {
+		Object value = modelColumn < model.getColumnCount() ? model.getValueAt(modelRow, modelColumn) : null;
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	private void setIncluded(int modelRow, boolean include) {
+
+		if (included[modelRow] != include) {
+
+			included[modelRow] = include;
+
+			for (ColumnAggregate columnAggregate : aggregates.values()) {
+				if (include) {
+					columnAggregate.add(columnAggregate.values[modelRow]);
+				} else {
+					columnAggregate.remove(columnAggregate.values[modelRow]);
+				}
+			}
+
+		}
+
+	}
+
+	private void resync(int firstModelRow, int lastModelRow) {
+		for (int row = Math.max(firstModelRow, 0); row <= lastModelRow && row < rowCount; row++) {
+			setIncluded(row, isIncluded(row));
+		}
+	}
+
+	private void scheduleResync(int firstModelRow, int lastModelRow) {
+
+		if (scope == Scope.ALL) {
+			return;
+		}
+
+		if (firstModelRow <= lastModelRow) {
+			resyncFirst = Math.min(resyncFirst, firstModelRow);
+			resyncLast = Math.max(resyncLast, lastModelRow);
+		}
+
+		// The row sorter is updated by the table after the model listeners are called, so
+		// membership of the view or the selection is compared once the event is processed
+		if (!resyncPending) {
+
+			resyncPending = true;
+
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+
+					int first = resyncFirst;
+					int last = resyncLast;
+
+					resyncPending = false;
+					modelEventPending = false;
+					resyncFirst = Integer.MAX_VALUE;
+					resyncLast = -1;
+
+					resync(first, last);
+					repaint();
+
+				}
+			});
+
+		}
+
+	}
+
+	// Keeps the range of a pending resync on the same rows when rows are inserted or deleted
+	private void shiftResync(int firstModelRow, int count) {
+		if (resyncPending && resyncLast >= firstModelRow) {
+			resyncFirst = resyncFirst >= firstModelRow ? Math.max(resyncFirst + count, firstModelRow) : resyncFirst;
+			resyncLast = Math.max(resyncLast + count, firstModelRow);
+		}
+	}
+
+	@Override
+	public void tableChanged(TableModelEvent e) {
+
+		int firstRow = e.getFirstRow();
+		int lastRow = e.getLastRow();
+
+		if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+			rebuild();
+			return;
+		}
+
+		if (e.getType() == TableModelEvent.INSERT) {
+
+			int count = lastRow - firstRow + 1;
+
+			shiftResync(firstRow, count);
+
+			boolean[] newIncluded = new boolean[rowCount + count];
+			System.arraycopy(included, 0, newIncluded, 0, firstRow);
+			System.arraycopy(included, firstRow, newIncluded, firstRow + count, rowCount - firstRow);
+			included = newIncluded;
+			rowCount += count;
+
+			for (ColumnAggregate columnAggregate : aggregates.values()) {
+				columnAggregate.insertRows(firstRow, count);
+			}
+
+			for (int row = firstRow; row <= lastRow; row++) {
+				setIncluded(row, scope == Scope.ALL);
+			}
+
+		} else if (e.getType() == TableModelEvent.DELETE) {
+
+			int count = lastRow - firstRow + 1;
+
+			for (int row = firstRow; row <= lastRow; row++) {
+				setIncluded(row, false);
+			}
+
+			boolean[] newIncluded = new boolean[rowCount - count];
+			System.arraycopy(included, 0, newIncluded, 0, firstRow);
+			System.arraycopy(included, lastRow + 1, newIncluded, firstRow, rowCount - lastRow - 1);
+			included = newIncluded;
+			rowCount -= count;
+
+			for (ColumnAggregate columnAggregate : aggregates.values()) {
+				columnAggregate.deleteRows(firstRow, count);
+			}
+
+			shiftResync(firstRow, -count);
+
+		} else {
+
+			for (ColumnAggregate columnAggregate : aggregates.values()) {
+				if (e.getColumn() == TableModelEvent.ALL_COLUMNS || e.getColumn() == columnAggregate.column) {
+					for (int row = firstRow; row <= lastRow && row < rowCount; row++) {
+						columnAggregate.update(row, readValue(row, columnAggregate.column));
+					}
+				}
+			}
+
+		}
+
+		// Only the inserted or updated rows can have changed membership of the view or selection, the
+		// selection of other rows is updated by the table for deleted rows (see valueChanged())
+		if (model.getRowCount() != rowCount) {
+			rebuild();
+		} else {
+			if (scope != Scope.ALL) {
+				modelEventPending = true;
+				scheduleResync(firstRow, e.getType() == TableModelEvent.DELETE ? firstRow - 1 : lastRow);
+			}
+			repaint();
+		}
+
+	}
+
+	@Override
+	public void sorterChanged(RowSorterEvent e) {
+
+		// The sorter also reports the model event (which is processed by the sorter after this footer), the
+		// rows of the model event are already scheduled, other changes (like a new filter) resync all rows
+		if (scope != Scope.ALL && !modelEventPending) {
+			scheduleResync(0, rowCount - 1);
+		}
+
+	}
+
+	@Override
+	public void valueChanged(ListSelectionEvent e) {
+
+		if (scope == Scope.SELECTION) {
+
+			// Only the rows in the range of the event can have changed
+			for (int viewRow = e.getFirstIndex(); viewRow <= e.getLastIndex() && viewRow < table.getRowCount(); viewRow++) {
+				int modelRow = table.convertRowIndexToModel(viewRow);
+				if (modelRow >= 0 && modelRow < rowCount) {
+					setIncluded(modelRow, isIncluded(modelRow));
+				}
+			}
+
+			repaint();
+
+		}
+
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+
+		String propertyName = evt.getPropertyName();
+		if ("model".equals(propertyName)) { //$NON-NLS-1$
+			setModel(table.getModel());
+			rebuild();
+		} else if ("rowSorter".equals(propertyName)) { //$NON-NLS-1$
+			setRowSorter(table.getRowSorter());
+			rebuild();
+		} else if ("selectionModel".equals(propertyName)) { //$NON-NLS-1$
+			setSelectionModel(table.getSelectionModel());
+			rebuild();
+		} else if ("columnModel".equals(propertyName)) { //$NON-NLS-1$
+			if (evt.getOldValue() instanceof TableColumnModel) {
+				((TableColumnModel) evt.getOldValue()).removeColumnModelListener(this);
+			}
+			table.getColumnModel().addColumnModelListener(this);
+			repaint();
+		} else if ("ancestor".equals(propertyName)) { //$NON-NLS-1$
+			updateViewport();
+		}
+
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		repaint();
+	}
+
+	@Override
+	public void columnAdded(TableColumnModelEvent e) {
+		repaint();
+	}
+
+	@Override
+	public void columnRemoved(TableColumnModelEvent e) {
+		repaint();
+	}
+
+	@Override
+	public void columnMoved(TableColumnModelEvent e) {
+		repaint();
+	}
+
+	@Override
+	public void columnMarginChanged(ChangeEvent e) {
+		repaint();
+	}
+
+	@Override
+	public void columnSelectionChanged(ListSelectionEvent e) {
+
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(table.getPreferredSize().width, table.getRowHeight());
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+
+		if (aggregates.isEmpty() || table.getColumnCount() == 0) {
+			return;
+		}
+
+		int viewX = viewport != null ? viewport.getViewPosition().x : 0;
+
+		int firstColumn = table.columnAtPoint(new Point(viewX, 0));
+		if (firstColumn < 0) {
+			return;
+		}
+
+		for (int column = firstColumn; column < table.getColumnCount(); column++) {
+
+			Rectangle cellRect = table.getCellRect(-1, column, true);
+			int x = cellRect.x - viewX;
+			if (x >= getWidth()) {
+				break;
+			}
+
+			ColumnAggregate columnAggregate = aggregates.get(table.convertColumnIndexToModel(column));
+			if (columnAggregate != null) {
+
+				Object value = columnAggregate.getValue();
+
+				TableCellRenderer renderer = columnAggregate.aggregate == Aggregate.COUNT ? table.getDefaultRenderer(Object.class) : table.getCellRenderer(0, column);
+				Component component = renderer.getTableCellRendererComponent(table, value, false, false, -1, column);
+
+				if (component instanceof JComponent) {
+					((JComponent) component).setOpaque(false);
+					((JComponent) component).setBorder(Table.DEFAULT_CELL_BORDER);
+				}
+				component.setFont(table.getFont().deriveFont(Font.BOLD));
+				component.setForeground(table.getForeground());
+
+				rendererPane.paintComponent(g, component, this, x, 0, cellRect.width, getHeight(), true);
+
+			}
+
+		}
+
+		rendererPane.removeAll();
+
+	}
+
+	private class ColumnAggregate {
+
+		private final int column;
+		private final Aggregate aggregate;
+		private double[] values = new double[0];
+		private final CompensatedSum sum = new CompensatedSum();
+		private int count = 0;
+		private final TreeMap<Double, Integer> extremes;
+
+		private ColumnAggregate(int column, Aggregate aggregate) {
+			this.column = column;
+			this.aggregate = aggregate;
+			this.extremes = aggregate == Aggregate.MIN || aggregate == Aggregate.MAX ? new TreeMap<>() : null;
+		}
+
+		private void rebuild() {
+
+			values = new double[rowCount];
+			sum.clear();
+			count = 0;
+			if (extremes != null) {
+				extremes.clear();
+			}
+
+			for (int row = 0; row < rowCount; row++) {
+				values[row] = readValue(row, column);
+				if (included[row]) {
+					add(values[row]);
+				}
+			}
+
+		}
+
+		private void add(double value) {
+			if (!Double.isNaN(value)) {
+				sum.add(value);
+				count++;
+				if (extremes != null) {
+					extremes.merge(value, 1, Integer::sum);
+				}
+			}
+		}
+
+		private void remove(double value) {
+			if (!Double.isNaN(value)) {
+				sum.subtract(value);
+				if (--count == 0) {
+					sum.clear();
+				}
+				if (extremes != null) {
+					Integer valueCount = extremes.get(value);
+					if (valueCount != null && valueCount > 1) {
+						extremes.put(value, valueCount - 1);
+					} else {
+						extremes.remove(value);
+					}
+				}
+			}
+		}
+
+		private void update(int row, double value) {
+			if (included[row]) {
+				remove(values[row]);
+				add(value);
+			}
+			values[row] = value;
+		}
+
+		private void insertRows(int firstRow, int count) {
+
+			double[] newValues = new double[values.length + count];
+			System.arraycopy(values, 0, newValues, 0, firstRow);
+			System.arraycopy(values, firstRow, newValues, firstRow + count, values.length - firstRow);
+			values = newValues;
+
+			for (int row = firstRow; row < firstRow + count; row++) {
+				values[row] = readValue(row, column);
+			}
+
+		}
+
+		private void deleteRows(int firstRow, int count) {
+			double[] newValues = Arrays.copyOf(values, values.length - count);
+			System.arraycopy(values, firstRow + count, newValues, firstRow, values.length - firstRow - count);
+			values = newValues;
+		}
+
+		private Object getValue() {
+			switch (aggregate) {
+			case SUM:
+				return sum.get();
+			case AVERAGE:
+				return count > 0 ? sum.get() / count : null;
+			case MIN:
+				return extremes.isEmpty() ? null : extremes.firstKey();
+			case MAX:
+				return extremes.isEmpty() ? null : extremes.lastKey();
+			case COUNT:
+				return count;
+			default:
+				return null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * Collects paint, sort, filter and listener timings of a {@link Table}, see {@link Table#setMetricsEnabled(boolean)}. The timings are
+ * recorded by the table and it's UI on the event dispatch thread, a {@link Snapshot} can be taken to log or display them.
+ */
+public class TableMetrics {
+
+	private final List<Listener> listeners = new ArrayList<>();
+
+	private int frameDepth = 0;
+	private long frameStart = 0;
+	private int frameCellCount = 0;
+	private long frameRendererTime = 0;
+
+	private Class<?> cellRendererClass = null;
+	private int cellColumn = -1;
+	private long cellPrepareTime = 0;
+
+	private final Timing frames = new Timing();
+	private long maxFrameTime = 0;
+	private long cellCount = 0;
+	private final Timing borders = new Timing();
+	private final Timing sorts = new Timing();
+	private final Timing filters = new Timing();
+	private final Timing listenerDispatches = new Timing();
+	private final Map<Class<?>, Timing> renderers = new HashMap<>();
+	private final Map<Integer, Timing> columns = new HashMap<>();
+
+	public TableMetrics() {
+
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	public void framePaintStarted() {
+		if (frameDepth++ == 0) {
+			frameStart = System.nanoTime();
+			frameCellCount = 0;
+			frameRendererTime = 0;
+		}
+	}
+
+	public void framePaintFinished() {
+
+		if (frameDepth > 0 && --frameDepth == 0) {
+
+			long time = System.nanoTime() - frameStart;
+			frames.add(time);
+			maxFrameTime = Math.max(maxFrameTime, time);
+
+			if (listeners.size() > 0) {
+				Frame frame = new Frame(time, frameCellCount, frameRendererTime);
+				for (Listener listener : listeners) {
+					listener.framePainted(frame);
+				}
+			}
+
+		}
+
+	}
+
+	// Called after the renderer was prepared, the paint time of the cell (see cellPainted()) is added to the same renderer and column
+	public void cellPrepared(TableCellRenderer renderer, int modelColumn, long time) {
+		cellRendererClass = renderer != null ? renderer.getClass() : null;
+		cellColumn = modelColumn;
+		cellPrepareTime = time;
+	}
+
+	public void cellPainted(long time) {
+
+		long cellTime = cellPrepareTime + time;
+
+		cellCount++;
+		frameCellCount++;
+		frameRendererTime += cellTime;
+
+		if (cellRendererClass != null) {
+			getTiming(renderers, cellRendererClass).add(cellTime);
+		}
+		if (cellColumn >= 0) {
+			getTiming(columns, cellColumn).add(cellTime);
+		}
+
+		cellRendererClass = null;
+		cellColumn = -1;
+		cellPrepareTime = 0;
+
+	}
+
+	public void borderPainted(long time) {
+		borders.add(time);
+	}
+
+	public void sorted(long time) {
+		sorts.add(time);
+	}
+
+	public void filtered(long time) {
+		filters.add(time);
+	}
+
+	public void listenersDispatched(long time) {
+		listenerDispatches.add(time);
+	}
+
+	public Snapshot getSnapshot() {
+
+		Map<String, Timing> rendererTimings = new LinkedHashMap<>();
+		for (Map.Entry<Class<?>, Timing> entry : renderers.entrySet()) {
+			rendererTimings.put(entry.getKey().getName(), entry.getValue().copy());
+		}
+
+		Map<Integer, Timing> columnTimings = new LinkedHashMap<>();
+		for (Map.Entry<Integer, Timing> entry : columns.entrySet()) {
+			columnTimings.put(entry.getKey(), entry.getValue().copy());
+		}
+
+		return new Snapshot(frames.copy(), maxFrameTime, cellCount, borders.copy(), sorts.copy(), filters.copy(), listenerDispatches.copy(), rendererTimings, columnTimings);
+
+	}
+
+	public void reset() {
+		frames.reset();
+		maxFrameTime = 0;
+		cellCount = 0;
+		borders.reset();
+		sorts.reset();
+		filters.reset();
+		listenerDispatches.reset();
+		renderers.clear();
+		columns.clear();
+	}
+
+	private static <K> Timing getTiming(Map<K, Timing> timings, K key) {
+		Timing timing = timings.get(key);
+		if (timing == null) {
+			timing = new Timing();
+			timings.put(key, timing);
+		}
+		return timing;
+	}
+
+	public static interface Listener {
+
+		public void framePainted(Frame frame);
+
+	}
+
+	public static class Frame {
+
+		private final long paintTime;
+		private final int cellCount;
+		private final long rendererTime;
+
+		public Frame(long paintTime, int cellCount, long rendererTime) {
+			this.paintTime = paintTime;
+			this.cellCount = cellCount;
+			this.rendererTime = rendererTime;
+		}
+
+		// In nanoseconds
+		public long getPaintTime() {
+			return paintTime;
+		}
+
+		public int getCellCount() {
+			return cellCount;
+		}
+
+		// Time spent preparing and painting the cell renderers, in nanoseconds
+		public long getRendererTime() {
+			return rendererTime;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.2f ms, %d cells, %.2f ms in renderers", paintTime / 1000000.0, cellCount, rendererTime / 1000000.0); //$NON-NLS-1$
+		}
+
+	}
+
+	public static class Timing {
+
+		private long count = 0;
+		private long totalTime = 0;
+
+		private void add(long time) {
+			count++;
+			totalTime += time;
+		}
+
+		private void reset() {
+			count = 0;
+			totalTime = 0;
+		}
+
+		private Timing copy() {
+			Timing timing = new Timing();
+			timing.count = count;
+			timing.totalTime = totalTime;
+			return timing;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		// In nanoseconds
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		public long getAverageTime() {
+			return count > 0 ? totalTime / count : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d x %.3f ms = %.2f ms", count, getAverageTime() / 1000000.0, totalTime / 1000000.0); //$NON-NLS-1$
+		}
+
+	}
+
+	public static class Snapshot {
+
+		private final Timing frames;
+		private final long maxFrameTime;
+		private final long cellCount;
+		private final Timing borders;
+		private final Timing sorts;
+		private final Timing filters;
+		private final Timing listenerDispatches;
+		private final Map<String, Timing> renderers;
+		private final Map<Integer, Timing> columns;
+
+		private Snapshot(Timing frames, long maxFrameTime, long cellCount, Timing borders, Timing sorts, Timing filters, Timing listenerDispatches, Map<String, Timing> renderers, Map<Integer, Timing> columns) {
+			this.frames = frames;
+			this.maxFrameTime = maxFrameTime;
+			this.cellCount = cellCount;
+			this.borders = borders;
+			this.sorts = sorts;
+			this.filters = filters;
+			this.listenerDispatches = listenerDispatches;
+			this.renderers = Collections.unmodifiableMap(renderers);
+			this.columns = Collections.unmodifiableMap(columns);
+		}
+
+		public Timing getFrames() {
+			return frames;
+		}
+
+		public long getMaxFrameTime() {
+			return maxFrameTime;
+		}
+
+		public long getCellCount() {
+			return cellCount;
+		}
+
+		// The striped viewport border, which is painted separate from the table
+		public Timing getBorders() {
+			return borders;
+		}
+
+		public Timing getSorts() {
+			return sorts;
+		}
+
+		public Timing getFilters() {
+			return filters;
+		}
+
+		public Timing getListenerDispatches() {
+			return listenerDispatches;
+		}
+
+		// Prepare and paint time of the cells per renderer class name
+		public Map<String, Timing> getRenderers() {
+			return renderers;
+		}
+
+		// Prepare and paint time of the cells per model column
+		public Map<Integer, Timing> getColumns() {
+			return columns;
+		}
+
+		@Override
+		public String toString() {
+
+			StringBuilder builder = new StringBuilder();
+			builder.append("Frames: ").append(frames).append(String.format(" (max %.2f ms), cells: ", maxFrameTime / 1000000.0)).append(cellCount).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+			builder.append("Borders: ").append(borders).append('\n'); //$NON-NLS-1$
+			builder.append("Sorts: ").append(sorts).append('\n'); //$NON-NLS-1$
+			builder.append("Filters: ").append(filters).append('\n'); //$NON-NLS-1$
+			builder.append("Listeners: ").append(listenerDispatches).append('\n'); //$NON-NLS-1$
+			for (Map.Entry<String, Timing> entry : renderers.entrySet()) {
+				builder.append("Renderer ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			for (Map.Entry<Integer, Timing> entry : columns.entrySet()) {
+				builder.append("Column ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+
+			return builder.toString();
+
+		}
+
+	}
+
+}
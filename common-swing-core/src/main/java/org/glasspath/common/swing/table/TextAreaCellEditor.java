@@ -29,11 +29,13 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.text.PlainDocument;
 
 public class TextAreaCellEditor extends DefaultCellEditor {
 
 	private final JTextArea textArea;
 	private final JScrollPane scrollPane;
+	private boolean largeTextMode = false;
 
 	public TextAreaCellEditor() {
 
@@ -53,17 +55,39 @@ public class TextAreaCellEditor extends DefaultCellEditor {
 
 			@Override
 			public void setValue(Object value) {
-				textArea.setText((value != null) ? value.toString() : ""); //$NON-NLS-1$
+				if (largeTextMode) {
+					textArea.setDocument(new LargeTextDocument(value instanceof CharSequence ? (CharSequence) value : (value != null ? value.toString() : ""))); //$NON-NLS-1$
+				} else {
+					textArea.setText((value != null) ? value.toString() : ""); //$NON-NLS-1$
+				}
 			}
 
 			@Override
 			public Object getCellEditorValue() {
-				return textArea.getText();
+				if (largeTextMode && textArea.getDocument() instanceof LargeTextDocument) {
+					return ((LargeTextDocument) textArea.getDocument()).getSnapshot();
+				} else {
+					return textArea.getText();
+				}
 			}
 		};
 
 	}
 
+	public boolean isLargeTextMode() {
+		return largeTextMode;
+	}
+
+	// See RemoteCellTextAreaEditor.setLargeTextMode()
+	public void setLargeTextMode(boolean largeTextMode) {
+		this.largeTextMode = largeTextMode;
+		if (largeTextMode) {
+			textArea.setLineWrap(false);
+		} else if (textArea.getDocument() instanceof LargeTextDocument) {
+			textArea.setDocument(new PlainDocument());
+		}
+	}
+
 	@Override
 	public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
 		super.getTableCellEditorComponent(table, value, isSelected, row, column);
@@ -30,6 +30,8 @@ import javax.swing.table.DefaultTableCellRenderer;
 
 public class TextAreaCellRenderer extends DefaultTableCellRenderer {
 
+	public static final int MAX_FIRST_LINE_LENGTH = 1000;
+
 	public TextAreaCellRenderer() {
 
 	}
@@ -38,22 +40,41 @@ public class TextAreaCellRenderer extends DefaultTableCellRenderer {
 	public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
 		JLabel label = (JLabel) super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 
-		if (value instanceof String) {
+		if (value instanceof CharSequence) {
+			label.setText(getFirstLine((CharSequence) value));
+		} else {
+			label.setText(""); //$NON-NLS-1$
+		}
 
-			String s = (String) value;
+		return label;
 
-			int breakIndex = s.indexOf("\n"); //$NON-NLS-1$
-			if (breakIndex >= 0) {
-				s = s.substring(0, breakIndex) + "..."; //$NON-NLS-1$
-			}
+	}
 
-			label.setText(s);
+	// Only the first line is shown, the text is searched up to MAX_FIRST_LINE_LENGTH characters
+	// so large texts (like LargeTextDocument.TextSnapshot) don't have to be materialized
+	public static String getFirstLine(CharSequence text) {
 
+		int length = Math.min(text.length(), MAX_FIRST_LINE_LENGTH);
+
+		int breakIndex;
+		if (text instanceof LargeTextDocument.TextSnapshot) {
+			breakIndex = ((LargeTextDocument.TextSnapshot) text).indexOf('\n', 0, length);
 		} else {
-			label.setText(""); //$NON-NLS-1$
+			breakIndex = -1;
+			for (int i = 0; i < length && breakIndex < 0; i++) {
+				if (text.charAt(i) == '\n') {
+					breakIndex = i;
+				}
+			}
 		}
 
-		return label;
+		if (breakIndex >= 0) {
+			return text.subSequence(0, breakIndex).toString() + "..."; //$NON-NLS-1$
+		} else if (length < text.length()) {
+			return text.subSequence(0, length).toString() + "..."; //$NON-NLS-1$
+		} else {
+			return text.toString();
+		}
 
 	}
 
@@ -0,0 +1,467 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table.ui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JViewport;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowSorter;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
+import javax.swing.event.TableColumnModelEvent;
+import javax.swing.event.TableColumnModelListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
+
+public class RowImageCache implements TableModelListener, RowSorterListener, ListSelectionListener, TableColumnModelListener, PropertyChangeListener, FocusListener {
+
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024L * 1024L;
+	public static final int MAX_UPDATED_ROWS = 64;
+
+	private final LinkedHashMap<Integer, RowImage> rowImages = new LinkedHashMap<>(64, 0.75F, true);
+	private final Statistics statistics = new Statistics();
+
+	private JTable table = null;
+	private TableModel model = null;
+	private RowSorter<?> rowSorter = null;
+	private ListSelectionModel selectionModel = null;
+	private TableColumnModel columnModel = null;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long bytes = 0;
+
+	public RowImageCache() {
+
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	public void install(JTable table) {
+
+		this.table = table;
+
+		table.addPropertyChangeListener(this);
+		table.addFocusListener(this);
+
+		setModel(table.getModel());
+		setRowSorter(table.getRowSorter());
+		setSelectionModel(table.getSelectionModel());
+		setColumnModel(table.getColumnModel());
+
+		invalidate();
+
+	}
+
+	public void uninstall() {
+
+		if (table != null) {
+
+			table.removePropertyChangeListener(this);
+			table.removeFocusListener(this);
+
+			setModel(null);
+			setRowSorter(null);
+			setSelectionModel(null);
+			setColumnModel(null);
+
+			table = null;
+
+		}
+
+		invalidate();
+
+	}
+
+	private void setModel(TableModel model) {
+		if (this.model != null) {
+			this.model.removeTableModelListener(this);
+		}
+		this.model = model;
+		if (model != null) {
+			model.addTableModelListener(this);
+		}
+	}
+
+	private void setRowSorter(RowSorter<?> rowSorter) {
+		if (this.rowSorter != null) {
+			this.rowSorter.removeRowSorterListener(this);
+		}
+		this.rowSorter = rowSorter;
+		if (rowSorter != null) {
+			rowSorter.addRowSorterListener(this);
+		}
+	}
+
+	private void setSelectionModel(ListSelectionModel selectionModel) {
+		if (this.selectionModel != null) {
+			this.selectionModel.removeListSelectionListener(this);
+		}
+		this.selectionModel = selectionModel;
+		if (selectionModel != null) {
+			selectionModel.addListSelectionListener(this);
+		}
+	}
+
+	private void setColumnModel(TableColumnModel columnModel) {
+		if (this.columnModel != null) {
+			this.columnModel.removeColumnModelListener(this);
+		}
+		this.columnModel = columnModel;
+		if (columnModel != null) {
+			columnModel.addColumnModelListener(this);
+		}
+	}
+
+	public void invalidate() {
+		rowImages.clear();
+		bytes = 0;
+	}
+
+	public void invalidateRow(int row) {
+		RowImage rowImage = rowImages.remove(row);
+		if (rowImage != null) {
+			bytes -= rowImage.bytes;
+		}
+	}
+
+	public boolean canPaint(Graphics g) {
+		return table != null && g instanceof Graphics2D && maxBytes > 0 && table.getDropLocation() == null && !table.isPaintingForPrint();
+	}
+
+	public void paint(Graphics g, RowPainter painter) {
+
+		long start = System.nanoTime();
+
+		Rectangle clip = g.getClipBounds();
+		Rectangle visibleRect = table.getVisibleRect();
+
+		if (clip == null || visibleRect.width <= 0 || table.getRowCount() == 0) {
+			painter.paintRows(g);
+			return;
+		}
+
+		// Row images are only as wide as the visible part of the table, scrolling horizontally
+		// invalidates them but keeps the memory usage independent of the number of columns
+		int x = visibleRect.x;
+		int width = visibleRect.width;
+
+		AffineTransform transform = ((Graphics2D) g).getTransform();
+		double scaleX = transform.getScaleX();
+		double scaleY = transform.getScaleY();
+
+		int firstRow = table.rowAtPoint(clip.getLocation());
+		int lastRow = table.rowAtPoint(new Point(clip.x, clip.y + clip.height - 1));
+		if (firstRow < 0) {
+			firstRow = 0;
+		}
+		if (lastRow < 0) {
+			lastRow = table.getRowCount() - 1;
+		}
+
+		for (int row = firstRow; row <= lastRow; row++) {
+
+			Rectangle rowRect = table.getCellRect(row, 0, true);
+
+			RowImage rowImage = rowImages.get(row);
+			if (rowImage != null && rowImage.matches(x, width, rowRect.height, scaleX, scaleY)) {
+				statistics.hits++;
+			} else {
+
+				if (rowImage != null) {
+					invalidateRow(row);
+				}
+
+				rowImage = createRowImage(g, painter, getRowBackground(row), x, rowRect.y, width, rowRect.height, scaleX, scaleY);
+
+				rowImages.put(row, rowImage);
+				bytes += rowImage.bytes;
+				statistics.misses++;
+
+			}
+
+			g.drawImage(rowImage.image, x, rowRect.y, width, rowRect.height, null);
+
+		}
+
+		evict();
+
+		statistics.frames++;
+		statistics.lastFrameNanos = System.nanoTime() - start;
+		statistics.totalFrameNanos += statistics.lastFrameNanos;
+
+	}
+
+	private RowImage createRowImage(Graphics g, RowPainter painter, Color background, int x, int y, int width, int height, double scaleX, double scaleY) {
+
+		BufferedImage image = new BufferedImage((int) Math.ceil(width * scaleX), (int) Math.ceil(height * scaleY), BufferedImage.TYPE_INT_ARGB);
+
+		Graphics2D g2d = image.createGraphics();
+		g2d.setRenderingHints(((Graphics2D) g).getRenderingHints());
+		g2d.setFont(g.getFont());
+		g2d.scale(scaleX, scaleY);
+		g2d.translate(-x, -y);
+		g2d.setClip(x, y, width, height);
+
+		// The striped background is normally painted by the viewport border, paint
+		// it in the image as well so text is rendered on an opaque background
+		if (background != null) {
+			g2d.setColor(background);
+			g2d.fillRect(x, y, width, height);
+		}
+
+		painter.paintRows(g2d);
+		g2d.dispose();
+
+		return new RowImage(image, x, width, height, scaleX, scaleY);
+
+	}
+
+	private Color getRowBackground(int row) {
+
+		if (table.getParent() instanceof JViewport && table.getParent().getParent() instanceof JScrollPane) {
+
+			JScrollPane scrollPane = (JScrollPane) table.getParent().getParent();
+			if (scrollPane.getViewportBorder() instanceof StripedViewportBorder) {
+				return ((StripedViewportBorder) scrollPane.getViewportBorder()).getRowColor(row);
+			}
+
+		}
+
+		return table.isOpaque() ? table.getBackground() : null;
+
+	}
+
+	private void evict() {
+
+		Iterator<RowImage> iterator = rowImages.values().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			bytes -= iterator.next().bytes;
+			iterator.remove();
+		}
+
+	}
+
+	@Override
+	public void tableChanged(TableModelEvent e) {
+
+		if (e.getType() == TableModelEvent.UPDATE && e.getFirstRow() >= 0 && e.getLastRow() - e.getFirstRow() < MAX_UPDATED_ROWS) {
+
+			for (int row = e.getFirstRow(); row <= e.getLastRow() && row < model.getRowCount(); row++) {
+				int viewRow = table.convertRowIndexToView(row);
+				if (viewRow >= 0) {
+					invalidateRow(viewRow);
+				}
+			}
+
+		} else {
+			invalidate();
+		}
+
+	}
+
+	@Override
+	public void sorterChanged(RowSorterEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void valueChanged(ListSelectionEvent e) {
+
+		// Renderers (like Table.prepareRendererColors) depend on the selection as
+		// a whole (selected row count, focused cell), so all rows are invalidated
+		invalidate();
+
+	}
+
+	@Override
+	public void columnAdded(TableColumnModelEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnRemoved(TableColumnModelEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnMoved(TableColumnModelEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnMarginChanged(ChangeEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void columnSelectionChanged(ListSelectionEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+
+		String propertyName = evt.getPropertyName();
+		if ("paintingForPrint".equals(propertyName)) { //$NON-NLS-1$
+			return; // Offscreen rendering (see TableImageRenderer) doesn't change the rendered rows
+		} else if ("model".equals(propertyName)) { //$NON-NLS-1$
+			setModel(table.getModel());
+		} else if ("rowSorter".equals(propertyName)) { //$NON-NLS-1$
+			setRowSorter(table.getRowSorter());
+		} else if ("selectionModel".equals(propertyName)) { //$NON-NLS-1$
+			setSelectionModel(table.getSelectionModel());
+		} else if ("columnModel".equals(propertyName)) { //$NON-NLS-1$
+			setColumnModel(table.getColumnModel());
+		}
+
+		// Fonts, colors, row height etc. all affect the rendered rows
+		invalidate();
+
+	}
+
+	@Override
+	public void focusGained(FocusEvent e) {
+		invalidate();
+	}
+
+	@Override
+	public void focusLost(FocusEvent e) {
+		invalidate();
+	}
+
+	private static class RowImage {
+
+		private final BufferedImage image;
+		private final int x;
+		private final int width;
+		private final int height;
+		private final double scaleX;
+		private final double scaleY;
+		private final long bytes;
+
+		private RowImage(BufferedImage image, int x, int width, int height, double scaleX, double scaleY) {
+			this.image = image;
+			this.x = x;
+			this.width = width;
+			this.height = height;
+			this.scaleX = scaleX;
+			this.scaleY = scaleY;
+			this.bytes = 4L * image.getWidth() * image.getHeight();
+		}
+
+		private boolean matches(int x, int width, int height, double scaleX, double scaleY) {
+			return this.x == x && this.width == width && this.height == height && this.scaleX == scaleX && this.scaleY == scaleY;
+		}
+
+	}
+
+	public static class Statistics {
+
+		private long hits = 0;
+		private long misses = 0;
+		private long frames = 0;
+		private long lastFrameNanos = 0;
+		private long totalFrameNanos = 0;
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public double getHitRatio() {
+			long total = hits + misses;
+			return total > 0 ? (double) hits / total : 0.0;
+		}
+
+		public long getFrames() {
+			return frames;
+		}
+
+		public long getLastFrameNanos() {
+			return lastFrameNanos;
+		}
+
+		public long getAverageFrameNanos() {
+			return frames > 0 ? totalFrameNanos / frames : 0;
+		}
+
+		public void reset() {
+			hits = 0;
+			misses = 0;
+			frames = 0;
+			lastFrameNanos = 0;
+			totalFrameNanos = 0;
+		}
+
+		@Override
+		public String toString() {
+			return "hits: " + hits + ", misses: " + misses + ", hit ratio: " + String.format("%.2f", getHitRatio()) + ", avg frame: " + (getAverageFrameNanos() / 1000) + "us"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		}
+
+	}
+
+	public static interface RowPainter {
+
+		public void paintRows(Graphics g);
+
+	}
+
+}
@@ -37,7 +37,11 @@ import javax.swing.ListSelectionModel;
 import javax.swing.border.AbstractBorder;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
-import javax.swing.table.TableColumn;
+import javax.swing.table.TableColumnModel;
+
+import org.glasspath.common.swing.color.ColorUtils;
+import org.glasspath.common.swing.table.GroupedTableModel;
+import org.glasspath.common.swing.table.TableMetrics;
 
 /**
  * Creates a border for a {@link JViewport} that draws a striped background corresponding to the row positions of the given {@link JTable}.
@@ -75,8 +79,17 @@ public class StripedViewportBorder extends AbstractBorder implements ListSelecti
 
 	@Override
 	public void paintBorder(Component c, Graphics g, int x, int y, int width, int height) {
+
+		TableMetrics metrics = TableUI.getMetrics(table);
+		long start = metrics != null ? System.nanoTime() : 0L;
+
 		paintStripedBackground(g, y);
 		paintVerticalGridLines(g, y, height);
+
+		if (metrics != null) {
+			metrics.borderPainted(System.nanoTime() - start);
+		}
+
 	}
 
 	private void paintStripedBackground(Graphics g, int borderY) {
@@ -108,28 +121,48 @@ public class StripedViewportBorder extends AbstractBorder implements ListSelecti
 
 	}
 
-	private Color getRowColor(int row) {
+	public Color getRowColor(int row) {
+		return getRowColor(table, row, stripeColor, paintSelectedRow);
+	}
+
+	public static Color getRowColor(JTable table, int row, Color stripeColor, boolean paintSelectedRow) {
 		if (paintSelectedRow && table.isRowSelected(row)) {
 			return table.getSelectionBackground();
+		} else if (isGroupHeader(table, row)) {
+			return ColorUtils.TITLE_BAR_COLOR;
 		} else {
 			return row % 2 == 0 ? table.getBackground() : stripeColor;
 		}
 	}
 
+	private static boolean isGroupHeader(JTable table, int row) {
+		return table.getModel() instanceof GroupedTableModel && row < table.getRowCount() && ((GroupedTableModel) table.getModel()).isGroupHeader(table.convertRowIndexToModel(row));
+	}
+
 	private void paintVerticalGridLines(Graphics g, int y, int height) {
 
 		final Graphics2D g2d = (Graphics2D) g;
 
+		// only paint the grid lines of the columns in the visible window, start
+		// at the first visible column and stop at the right side of the clip
+		Point viewPosition = viewport.getViewPosition();
+		int firstColumn = table.columnAtPoint(new Point(viewPosition.x, 0));
+		if (firstColumn < 0) {
+			return;
+		}
+
+		Rectangle clip = g.getClipBounds();
+		int maxX = clip != null ? clip.x + clip.width : viewport.getLocation().x + viewport.getWidth();
+
 		// paint the column grid dividers for the non-existent rows.
-		int x = 0 - viewport.getViewPosition().x + viewport.getLocation().x;
+		int x = table.getCellRect(-1, firstColumn, true).x - viewPosition.x + viewport.getLocation().x;
 		g.setColor(gridColor);
 
-		for (int i = 0; i < table.getColumnCount(); i++) {
-
-			TableColumn column = table.getColumnModel().getColumn(i);
+		TableColumnModel columnModel = table.getColumnModel();
+		for (int i = firstColumn; i < columnModel.getColumnCount() && x <= maxX; i++) {
 
 			// increase the x position by the width of the current column.
-			x += column.getWidth();
+			x += columnModel.getColumn(i).getWidth();
 			// g.setColor(table.getGridColor());
 
 			// draw the grid line (not sure what the -1 is for, but BasicTableUI
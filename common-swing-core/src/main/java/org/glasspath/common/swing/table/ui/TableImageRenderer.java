@@ -0,0 +1,549 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.table.ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import javax.imageio.ImageIO;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.JTableHeader;
+
+// Renders (a range of rows and columns of) a table to images of a fixed size, the table doesn't have to be
+// shown so this also works in headless mode. Tiles are painted one at a time on the EDT using the table's
+// UI and renderers (which aren't thread safe), encoding the tiles can be done in parallel
+public class TableImageRenderer {
+
+	public static final int DEFAULT_TILE_SIZE = 1024;
+
+	private final JTable table;
+	private int tileWidth = DEFAULT_TILE_SIZE;
+	private int tileHeight = DEFAULT_TILE_SIZE;
+	private int firstRow = 0;
+	private int lastRow = -1;
+	private int firstColumn = 0;
+	private int lastColumn = -1;
+	private boolean headerIncluded = true;
+
+	// Table area which is rendered, calculated on the EDT when rendering starts
+	private Rectangle tableBounds = null;
+	private int headerHeight = 0;
+
+	public TableImageRenderer(JTable table) {
+		this.table = table;
+	}
+
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+	public int getTileHeight() {
+		return tileHeight;
+	}
+
+	public void setTileSize(int tileWidth, int tileHeight) {
+		this.tileWidth = Math.max(tileWidth, 1);
+		this.tileHeight = Math.max(tileHeight, 1);
+	}
+
+	// A last row or column of -1 renders up to the last row or column of the table
+	public void setRows(int firstRow, int lastRow) {
+		this.firstRow = Math.max(firstRow, 0);
+		this.lastRow = lastRow;
+	}
+
+	public void setColumns(int firstColumn, int lastColumn) {
+		this.firstColumn = Math.max(firstColumn, 0);
+		this.lastColumn = lastColumn;
+	}
+
+	public boolean isHeaderIncluded() {
+		return headerIncluded;
+	}
+
+	public void setHeaderIncluded(boolean headerIncluded) {
+		this.headerIncluded = headerIncluded;
+	}
+
+	// Size of the complete image, which is split in tiles
+	public Dimension getImageSize() throws IOException {
+		runOnEventDispatchThread(this::updateBounds);
+		return new Dimension(tableBounds.width, headerHeight + tableBounds.height);
+	}
+
+	private void updateBounds() {
+
+		// Tables which were never shown don't have a size yet
+		if (table.getWidth() <= 0 || table.getHeight() <= 0) {
+			table.setSize(table.getPreferredSize());
+		}
+
+		int rowCount = table.getRowCount();
+		int columnCount = table.getColumnCount();
+		int toRow = lastRow < 0 ? rowCount - 1 : Math.min(lastRow, rowCount - 1);
+		int toColumn = lastColumn < 0 ? columnCount - 1 : Math.min(lastColumn, columnCount - 1);
+
+		if (firstRow > toRow || firstColumn > toColumn) {
+			tableBounds = new Rectangle();
+		} else {
+			tableBounds = table.getCellRect(firstRow, firstColumn, true).union(table.getCellRect(toRow, toColumn, true));
+		}
+
+		JTableHeader header = table.getTableHeader();
+		if (headerIncluded && header != null) {
+			headerHeight = header.getPreferredSize().height;
+			header.setSize(table.getWidth(), headerHeight);
+		} else {
+			headerHeight = 0;
+		}
+
+	}
+
+	// Renders the given area of the image (in image coordinates)
+	public BufferedImage renderTile(Rectangle area) throws IOException {
+
+		BufferedImage image = new BufferedImage(Math.max(area.width, 1), Math.max(area.height, 1), BufferedImage.TYPE_INT_RGB);
+
+		runOnEventDispatchThread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				if (tableBounds == null) {
+					updateBounds();
+				}
+
+				Graphics2D g2d = image.createGraphics();
+				try {
+					paint(g2d, area);
+				} finally {
+					g2d.dispose();
+				}
+
+			}
+		});
+
+		return image;
+
+	}
+
+	private void paint(Graphics2D g2d, Rectangle area) {
+
+		g2d.setColor(table.getBackground());
+		g2d.fillRect(0, 0, area.width, area.height);
+		g2d.translate(-area.x, -area.y);
+
+		if (headerHeight > 0 && area.y < headerHeight) {
+
+			Graphics2D headerGraphics = (Graphics2D) g2d.create();
+			headerGraphics.clipRect(area.x, area.y, area.width, headerHeight - area.y);
+			headerGraphics.translate(-tableBounds.x, 0);
+			table.getTableHeader().print(headerGraphics);
+			headerGraphics.dispose();
+
+		}
+
+		if (area.y + area.height > headerHeight) {
+
+			Graphics2D tableGraphics = (Graphics2D) g2d.create();
+			tableGraphics.clipRect(area.x, Math.max(area.y, headerHeight), area.width, area.y + area.height - Math.max(area.y, headerHeight));
+			tableGraphics.clipRect(0, headerHeight, tableBounds.width, tableBounds.height);
+			tableGraphics.translate(-tableBounds.x, headerHeight - tableBounds.y);
+
+			paintStripes(tableGraphics);
+
+			// JComponent.print() paints the table like it's printed, so the row image cache isn't used and no
+			// double buffering is done (the selection is painted, clear it first if it shouldn't be in the image)
+			table.print(tableGraphics);
+
+			paintGridLines(tableGraphics);
+
+			tableGraphics.dispose();
+
+		}
+
+	}
+
+	// Same striping as StripedViewportBorder paints behind the (transparent) table in a scroll pane
+	private void paintStripes(Graphics2D g2d) {
+
+		Rectangle clip = g2d.getClipBounds();
+		if (clip == null) {
+			return;
+		}
+
+		Color stripeColor = table.getBackground();
+		boolean paintSelectedRow = false;
+		if (table.getUI() instanceof TableUI) {
+			TableUI ui = (TableUI) table.getUI();
+			if (ui.isStriped()) {
+				stripeColor = ui.getStripedColor();
+			}
+			paintSelectedRow = ui.isPaintSelectedRow();
+		}
+
+		int row = table.rowAtPoint(new Point(clip.x, clip.y));
+		if (row < 0) {
+			return;
+		}
+
+		for (; row < table.getRowCount(); row++) {
+
+			Rectangle rowRect = table.getCellRect(row, 0, true);
+			if (rowRect.y >= clip.y + clip.height) {
+				break;
+			}
+
+			g2d.setColor(StripedViewportBorder.getRowColor(table, row, stripeColor, paintSelectedRow));
+			g2d.fillRect(clip.x, rowRect.y, clip.width, rowRect.height);
+
+		}
+
+	}
+
+	private void paintGridLines(Graphics2D g2d) {
+
+		if (!(table.getUI() instanceof TableUI) || !((TableUI) table.getUI()).isStriped()) {
+			return;
+		}
+
+		Rectangle clip = g2d.getClipBounds();
+		if (clip == null) {
+			return;
+		}
+
+		int column = table.columnAtPoint(new Point(clip.x, clip.y));
+		if (column < 0) {
+			return;
+		}
+
+		g2d.setColor(((TableUI) table.getUI()).getGridColor());
+		for (; column < table.getColumnCount(); column++) {
+
+			Rectangle columnRect = table.getCellRect(-1, column, true);
+			if (columnRect.x > clip.x + clip.width) {
+				break;
+			}
+
+			int x = columnRect.x + columnRect.width - 1;
+			g2d.drawLine(x, clip.y, x, clip.y + clip.height);
+
+		}
+
+	}
+
+	// Paints all tiles (left to right, top to bottom) and passes them to the consumer on the calling thread
+	public void renderTiles(TileConsumer consumer) throws IOException {
+
+		Dimension size = getImageSize();
+
+		for (int y = 0, tileY = 0; y < size.height; y += tileHeight, tileY++) {
+			for (int x = 0, tileX = 0; x < size.width; x += tileWidth, tileX++) {
+				Rectangle area = new Rectangle(x, y, Math.min(tileWidth, size.width - x), Math.min(tileHeight, size.height - y));
+				consumer.tileRendered(tileX, tileY, area, renderTile(area));
+			}
+		}
+
+	}
+
+	// Tiles are still painted one at a time, but the consumer is called in parallel on a pool of the given number of threads,
+	// the number of tiles waiting to be consumed is bounded so memory usage doesn't depend on the size of the table
+	public void renderTiles(TileConsumer consumer, int threads) throws IOException {
+
+		if (threads <= 1) {
+			renderTiles(consumer);
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Semaphore permits = new Semaphore(threads * 2);
+		List<Future<?>> futures = new ArrayList<>();
+
+		try {
+
+			renderTiles(new TileConsumer() {
+
+				@Override
+				public void tileRendered(int tileX, int tileY, Rectangle area, BufferedImage tile) throws IOException {
+
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException(e);
+					}
+
+					futures.add(executor.submit(() -> {
+						try {
+							consumer.tileRendered(tileX, tileY, area, tile);
+						} finally {
+							permits.release();
+						}
+						return null;
+					}));
+
+				}
+			});
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	// Writes every tile to it's own file (tile_<y>_<x>.<format>) in the given directory
+	public void writeTiles(File directory, String formatName) throws IOException {
+		renderTiles(new TileConsumer() {
+
+			@Override
+			public void tileRendered(int tileX, int tileY, Rectangle area, BufferedImage tile) throws IOException {
+				ImageIO.write(tile, formatName, new File(directory, "tile_" + tileY + "_" + tileX + "." + formatName)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		}, Runtime.getRuntime().availableProcessors());
+	}
+
+	// Returns an image which renders horizontal strips of one tile high when they are requested, ImageIO writers
+	// request the pixels row by row so a complete table can be written without creating the complete image
+	public RenderedImage createImage() throws IOException {
+		return new StripImage(getImageSize());
+	}
+
+	public void writeImage(File file, String formatName) throws IOException {
+		if (!ImageIO.write(createImage(), formatName, file)) {
+			throw new IOException("No image writer found for format: " + formatName); //$NON-NLS-1$
+		}
+	}
+
+	private static void runOnEventDispatchThread(Runnable runnable) throws IOException {
+		if (SwingUtilities.isEventDispatchThread()) {
+			runnable.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(runnable);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (InvocationTargetException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+	public static interface TileConsumer {
+
+		public void tileRendered(int tileX, int tileY, Rectangle area, BufferedImage tile) throws IOException;
+
+	}
+
+	private class StripImage implements RenderedImage {
+
+		private final int width;
+		private final int height;
+		private final int stripHeight;
+		private final ColorModel colorModel;
+		private final SampleModel sampleModel;
+		private int stripIndex = -1;
+		private Raster strip = null;
+
+		private StripImage(Dimension size) {
+
+			this.width = Math.max(size.width, 1);
+			this.height = Math.max(size.height, 1);
+			this.stripHeight = Math.min(tileHeight, height);
+
+			BufferedImage prototype = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+			this.colorModel = prototype.getColorModel();
+			this.sampleModel = prototype.getSampleModel().createCompatibleSampleModel(width, stripHeight);
+
+		}
+
+		private Raster getStrip(int index) {
+
+			if (index != stripIndex) {
+
+				int y = index * stripHeight;
+				try {
+					strip = renderTile(new Rectangle(0, y, width, Math.min(stripHeight, height - y))).getRaster().createTranslatedChild(0, y);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				stripIndex = index;
+
+			}
+
+			return strip;
+
+		}
+
+		@Override
+		public Vector<RenderedImage> getSources() {
+			return null;
+		}
+
+		@Override
+		public Object getProperty(String name) {
+			return Image.UndefinedProperty;
+		}
+
+		@Override
+		public String[] getPropertyNames() {
+			return null;
+		}
+
+		@Override
+		public ColorModel getColorModel() {
+			return colorModel;
+		}
+
+		@Override
+		public SampleModel getSampleModel() {
+			return sampleModel;
+		}
+
+		@Override
+		public int getWidth() {
+			return width;
+		}
+
+		@Override
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public int getMinX() {
+			return 0;
+		}
+
+		@Override
+		public int getMinY() {
+			return 0;
+		}
+
+		@Override
+		public int getNumXTiles() {
+			return 1;
+		}
+
+		@Override
+		public int getNumYTiles() {
+			return (height + stripHeight - 1) / stripHeight;
+		}
+
+		@Override
+		public int getMinTileX() {
+			return 0;
+		}
+
+		@Override
+		public int getMinTileY() {
+			return 0;
+		}
+
+		@Override
+		public int getTileWidth() {
+			return width;
+		}
+
+		@Override
+		public int getTileHeight() {
+			return stripHeight;
+		}
+
+		@Override
+		public int getTileGridXOffset() {
+			return 0;
+		}
+
+		@Override
+		public int getTileGridYOffset() {
+			return 0;
+		}
+
+		@Override
+		public Raster getTile(int tileX, int tileY) {
+			return getStrip(tileY);
+		}
+
+		@Override
+		public Raster getData() {
+			return getData(new Rectangle(0, 0, width, height));
+		}
+
+		@Override
+		public Raster getData(Rectangle rect) {
+			WritableRaster raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(rect.width, rect.height), new Point(rect.x, rect.y));
+			return copyData(raster);
+		}
+
+		@Override
+		public WritableRaster copyData(WritableRaster raster) {
+
+			if (raster == null) {
+				raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(width, height), new Point(0, 0));
+			}
+
+			int firstStrip = Math.max(raster.getMinY(), 0) / stripHeight;
+			int lastStrip = Math.min(raster.getMinY() + raster.getHeight(), height) - 1;
+			for (int index = firstStrip; index <= lastStrip / stripHeight; index++) {
+				raster.setRect(getStrip(index));
+			}
+
+			return raster;
+
+		}
+
+	}
+
+}
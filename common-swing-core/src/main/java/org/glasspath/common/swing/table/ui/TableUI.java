@@ -38,9 +38,16 @@ import javax.swing.JTable;
 import javax.swing.JViewport;
 import javax.swing.border.AbstractBorder;
 import javax.swing.border.Border;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.TableColumnModelEvent;
+import javax.swing.event.TableColumnModelListener;
 import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumnModel;
 
 import org.glasspath.common.swing.color.ColorUtils;
+import org.glasspath.common.swing.table.Table;
+import org.glasspath.common.swing.table.TableMetrics;
 import org.glasspath.common.swing.theme.Theme;
 
 import com.formdev.flatlaf.ui.FlatTableUI;
@@ -68,6 +75,7 @@ public class TableUI extends FlatTableUI {
 	}
 
 	private static final CellRendererPane CELL_RENDER_PANE = new CellRendererPane();
+	private static final String STRIPED_LISTENERS_PROPERTY = "TableUI.stripedListeners"; //$NON-NLS-1$
 
 	private final boolean striped;
 	private final boolean paintSelectedRow;
@@ -75,6 +83,7 @@ public class TableUI extends FlatTableUI {
 
 	private Color stripedColor = EVEN_ROW_COLOR;
 	private Color gridColor = TABLE_GRID_COLOR;
+	private RowImageCache rowImageCache = null;
 
 	public TableUI() {
 		this(true, true, false);
@@ -94,6 +103,14 @@ public class TableUI extends FlatTableUI {
 		this.repaintOnSelectionChange = repaintOnSelectionChange;
 	}
 
+	public boolean isStriped() {
+		return striped;
+	}
+
+	public boolean isPaintSelectedRow() {
+		return paintSelectedRow;
+	}
+
 	public Color getStripedColor() {
 		return stripedColor;
 	}
@@ -110,6 +127,26 @@ public class TableUI extends FlatTableUI {
 		this.gridColor = gridColor;
 	}
 
+	public boolean isRowImageCacheEnabled() {
+		return rowImageCache != null;
+	}
+
+	public void setRowImageCacheEnabled(boolean enabled) {
+		if (enabled && rowImageCache == null) {
+			rowImageCache = new RowImageCache();
+			if (table != null) {
+				rowImageCache.install(table);
+			}
+		} else if (!enabled && rowImageCache != null) {
+			rowImageCache.uninstall();
+			rowImageCache = null;
+		}
+	}
+
+	public RowImageCache getRowImageCache() {
+		return rowImageCache;
+	}
+
 	@Override
 	public void installUI(JComponent c) {
 		super.installUI(c);
@@ -126,6 +163,45 @@ public class TableUI extends FlatTableUI {
 		makeHeaderFillEmptySpace(table); // TODO: Make sure this isn't causing memory leaks
 		makeStriped(table, striped ? stripedColor : table.getBackground(), gridColor, paintSelectedRow, repaintOnSelectionChange);
 
+		if (rowImageCache != null) {
+			rowImageCache.install(table);
+		}
+
+	}
+
+	@Override
+	public void uninstallUI(JComponent c) {
+		if (rowImageCache != null) {
+			rowImageCache.uninstall();
+		}
+		unmakeStriped(table);
+		super.uninstallUI(c);
+	}
+
+	@Override
+	public void paint(Graphics g, JComponent c) {
+
+		TableMetrics metrics = getMetrics(table);
+		if (metrics != null) {
+			metrics.framePaintStarted();
+		}
+
+		try {
+			if (rowImageCache != null && rowImageCache.canPaint(g)) {
+				rowImageCache.paint(g, graphics -> super.paint(graphics, c));
+			} else {
+				super.paint(g, c);
+			}
+		} finally {
+			if (metrics != null) {
+				metrics.framePaintFinished();
+			}
+		}
+
+	}
+
+	public static TableMetrics getMetrics(JTable table) {
+		return table instanceof Table ? ((Table) table).getMetrics() : null;
 	}
 
 	protected CellRendererPane createCustomCellRendererPane() {
@@ -146,7 +222,14 @@ public class TableUI extends FlatTableUI {
 				}
 				*/
 
-				super.paintComponent(graphics, component, container, x, y, w, h, shouldValidate);
+				TableMetrics metrics = getMetrics(table);
+				if (metrics != null) {
+					long start = System.nanoTime();
+					super.paintComponent(graphics, component, container, x, y, w, h, shouldValidate);
+					metrics.cellPainted(System.nanoTime() - start);
+				} else {
+					super.paintComponent(graphics, component, container, x, y, w, h, shouldValidate);
+				}
 
 			}
 		};
@@ -155,17 +238,67 @@ public class TableUI extends FlatTableUI {
 
 	public static void makeStriped(JTable table, Color stipeColor, Color gridColor, boolean paintSelectedRow, boolean repaintOnSelectionChange) {
 
-		table.addPropertyChangeListener("ancestor", createAncestorPropertyChangeListener(table, stipeColor, gridColor, paintSelectedRow, repaintOnSelectionChange)); //$NON-NLS-1$
+		// The listeners of a previous call (the UI is installed again when the look and feel changes) are replaced
+		unmakeStriped(table);
+
+		StripedListeners listeners = new StripedListeners(createAncestorPropertyChangeListener(table, stipeColor, gridColor, paintSelectedRow, repaintOnSelectionChange), createColumnModelListener(table));
+		table.addPropertyChangeListener("ancestor", listeners.ancestorListener); //$NON-NLS-1$
+		table.getColumnModel().addColumnModelListener(listeners.columnModelListener);
+		table.addPropertyChangeListener("columnModel", listeners.columnModelPropertyListener); //$NON-NLS-1$
+		table.putClientProperty(STRIPED_LISTENERS_PROPERTY, listeners);
+
+	}
+
+	// Removes the listeners installed by makeStriped()
+	public static void unmakeStriped(JTable table) {
 
-		// install a listener to cause the whole table to repaint when a column is resized. we do
-		// this because the extended grid lines may need to be repainted. this could be cleaned up,
-		// but for now, it works fine.
-		for (int i = 0; i < table.getColumnModel().getColumnCount(); i++) {
-			table.getColumnModel().getColumn(i).addPropertyChangeListener(createAncestorPropertyChangeListener(table, stipeColor, gridColor, paintSelectedRow, repaintOnSelectionChange));
+		Object listeners = table.getClientProperty(STRIPED_LISTENERS_PROPERTY);
+		if (listeners instanceof StripedListeners) {
+			table.removePropertyChangeListener("ancestor", ((StripedListeners) listeners).ancestorListener); //$NON-NLS-1$
+			table.getColumnModel().removeColumnModelListener(((StripedListeners) listeners).columnModelListener);
+			table.removePropertyChangeListener("columnModel", ((StripedListeners) listeners).columnModelPropertyListener); //$NON-NLS-1$
+			table.putClientProperty(STRIPED_LISTENERS_PROPERTY, null);
 		}
 
 	}
 
+	private static TableColumnModelListener createColumnModelListener(JTable table) {
+
+		// install a listener to cause the whole viewport to repaint when a column is resized. we do
+		// this because the extended grid lines may need to be repainted. a single column model
+		// listener is used instead of a listener per column, this keeps wide tables cheap
+		return new TableColumnModelListener() {
+
+			@Override
+			public void columnMarginChanged(ChangeEvent e) {
+				if (table.getParent() instanceof JViewport) {
+					table.getParent().repaint();
+				}
+			}
+
+			@Override
+			public void columnMoved(TableColumnModelEvent e) {
+
+			}
+
+			@Override
+			public void columnAdded(TableColumnModelEvent e) {
+
+			}
+
+			@Override
+			public void columnRemoved(TableColumnModelEvent e) {
+
+			}
+
+			@Override
+			public void columnSelectionChanged(ListSelectionEvent e) {
+
+			}
+		};
+
+	}
+
 	private static PropertyChangeListener createAncestorPropertyChangeListener(JTable table, Color stipeColor, Color gridColor, boolean paintSelectedRow, boolean repaintOnSelectionChange) {
 
 		return new PropertyChangeListener() {
@@ -253,4 +386,33 @@ public class TableUI extends FlatTableUI {
 
 	}
 
+	private static class StripedListeners {
+
+		private final PropertyChangeListener ancestorListener;
+		private final TableColumnModelListener columnModelListener;
+		private final PropertyChangeListener columnModelPropertyListener;
+
+		private StripedListeners(PropertyChangeListener ancestorListener, TableColumnModelListener columnModelListener) {
+
+			this.ancestorListener = ancestorListener;
+			this.columnModelListener = columnModelListener;
+
+			// The column model listener is moved to the new column model when the column model of the table is replaced
+			this.columnModelPropertyListener = new PropertyChangeListener() {
+
+				@Override
+				public void propertyChange(PropertyChangeEvent event) {
+					if (event.getOldValue() instanceof TableColumnModel) {
+						((TableColumnModel) event.getOldValue()).removeColumnModelListener(columnModelListener);
+					}
+					if (event.getNewValue() instanceof TableColumnModel) {
+						((TableColumnModel) event.getNewValue()).addColumnModelListener(columnModelListener);
+					}
+				}
+			};
+
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -22,36 +22,310 @@
  */
 package org.glasspath.common.swing.undo;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
 import javax.swing.undo.UndoManager;
 import javax.swing.undo.UndoableEdit;
 
 public class DefaultUndoManager extends UndoManager implements IUndoManager {
 
+	// Estimated size of edits which don't implement SizeEstimable
+	public static final long DEFAULT_EDIT_SIZE = 256;
+	public static final long DEFAULT_OBJECT_SIZE = 64;
+
 	private final List<UndoManagerListener> listeners = new ArrayList<>();
+	private long coalesceWindow = 0;
+	private long lastEditTime = 0;
+	private long sizeLimit = -1;
+	private long estimatedSize = 0;
+	private final Map<UndoableEdit, Long> editSizes = new IdentityHashMap<>();
+	private final Map<UndoableEdit, long[]> spilledEdits = new IdentityHashMap<>();
+	private File spillFile = null;
+	private RandomAccessFile spillData = null;
+	private final TreeMap<Long, Long> freeSpace = new TreeMap<>();
+	private int trimmedEditCount = 0;
+	private Transaction transaction = null;
+	private int transactionDepth = 0;
+	private volatile boolean confined = false;
+	private final Queue<UndoableEdit> pendingEdits = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
 
 	public DefaultUndoManager() {
 
 	}
 
+	public synchronized long getCoalesceWindow() {
+		return coalesceWindow;
+	}
+
+	// Edits added within the window (in milliseconds) after the last edit are offered to the
+	// last edit if it's Coalescible, so repeated edits of the same target become one edit, 0 disables it
+	public synchronized void setCoalesceWindow(long coalesceWindow) {
+		this.coalesceWindow = coalesceWindow;
+	}
+
+	public synchronized long getSizeLimit() {
+		return sizeLimit;
+	}
+
+	// Limits the estimated size (see SizeEstimable) of the edits kept in memory, when the limit is exceeded the state
+	// of the oldest Spillable edits is written to a spill file and read back when those edits are undone, -1 disables it
+	// (and the estimation of the size)
+	public synchronized void setSizeLimit(long sizeLimit) {
+		this.sizeLimit = sizeLimit;
+		recalculateEstimatedSize();
+		spillEdits(-1, -1);
+	}
+
+	public synchronized long getEstimatedSize() {
+		return estimatedSize;
+	}
+
+	public synchronized int getSpilledEditCount() {
+		return spilledEdits.size();
+	}
+
+	public boolean isConfined() {
+		return confined;
+	}
+
+	// When confined the state is only accessed on the event dispatch thread, edits added on other threads are queued (without locking)
+	// and added on the event dispatch thread in the order they were added, undo() and redo() must be called on the event dispatch thread
+	public void setConfined(boolean confined) {
+		this.confined = confined;
+	}
+
+	public synchronized boolean isInTransaction() {
+		return transaction != null;
+	}
+
+	// Returns the edit added last to the open transaction, or null if no transaction is open or no edit was added yet
+	protected synchronized UndoableEdit getLastTransactionEdit() {
+		if (transaction != null && !transaction.getEdits().isEmpty()) {
+			return transaction.getEdits().get(transaction.getEdits().size() - 1);
+		} else {
+			return null;
+		}
+	}
+
+	// Edits added until the transaction is committed are grouped into one edit, the listeners are only
+	// notified about the transaction, nested transactions become part of the outermost transaction
+	// When confined the queued edits are added first, so edits added before the transaction was started (on
+	// other threads) aren't part of the transaction and edits added before it's committed or rolled back are
+	public synchronized void beginTransaction(String name) {
+
+		drainConfined();
+
+		if (transactionDepth++ == 0) {
+			transaction = new Transaction(name);
+		}
+
+	}
+
+	public synchronized void commitTransaction() {
+
+		drainConfined();
+
+		if (transactionDepth == 0) {
+			throw new IllegalStateException("No transaction in progress"); //$NON-NLS-1$
+		} else if (--transactionDepth == 0) {
+
+			Transaction committed = transaction;
+			transaction = null;
+
+			committed.end();
+			if (committed.isSignificant()) {
+				addEdit(committed);
+			} else {
+				committed.die();
+			}
+
+		}
+
+	}
+
+	// Undoes the edits added since the outermost transaction was started and discards them
+	public synchronized void rollback() {
+
+		drainConfined();
+
+		if (transactionDepth == 0) {
+			throw new IllegalStateException("No transaction in progress"); //$NON-NLS-1$
+		}
+
+		Transaction rolledBack = transaction;
+		transaction = null;
+		transactionDepth = 0;
+
+		rolledBack.end();
+		if (rolledBack.canUndo()) {
+			rolledBack.undo();
+		}
+		rolledBack.die();
+
+	}
+
 	@Override
-	public synchronized boolean addEdit(UndoableEdit edit) {
-		boolean result = super.addEdit(edit);
+	public boolean addEdit(UndoableEdit edit) {
 
-		for (UndoManagerListener listener : listeners) {
-			listener.editAdded(edit);
+		if (confined) {
+
+			if (!SwingUtilities.isEventDispatchThread()) {
+
+				pendingEdits.add(edit);
+
+				if (drainScheduled.compareAndSet(false, true)) {
+					SwingUtilities.invokeLater(new Runnable() {
+
+						@Override
+						public void run() {
+							drainPendingEdits();
+						}
+					});
+				}
+
+				return true;
+
+			}
+
+			drainPendingEdits();
+
+			return addEditNow(edit);
+
+		} else {
+			synchronized (this) {
+				return addEditNow(edit);
+			}
+		}
+
+	}
+
+	private void drainPendingEdits() {
+
+		drainScheduled.set(false);
+
+		UndoableEdit edit;
+		while ((edit = pendingEdits.poll()) != null) {
+			if (confined) {
+				addEditNow(edit);
+			} else {
+				synchronized (this) {
+					addEditNow(edit);
+				}
+			}
 		}
 
-		return result;
+	}
 
+	private void checkConfinement() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException("Confined undo manager accessed outside the event dispatch thread"); //$NON-NLS-1$
+		}
+	}
+
+	private void drainConfined() {
+		if (confined) {
+			checkConfinement();
+			drainPendingEdits();
+		}
+	}
+
+	private boolean addEditNow(UndoableEdit edit) {
+
+		if (transaction != null) {
+			return transaction.addEdit(edit);
+		}
+
+		long time = System.nanoTime();
+
+		// Only coalesce with the last edit when it hasn't been undone
+		UndoableEdit lastEdit = lastEdit();
+		if (coalesceWindow > 0 && isInProgress() && lastEdit instanceof Coalescible && editToBeRedone() == null && time - lastEditTime <= coalesceWindow * 1000000L && ((Coalescible) lastEdit).coalesce(edit)) {
+
+			lastEditTime = time;
+			if (sizeLimit >= 0) {
+				updateEditSize(lastEdit);
+				spillEdits(-1, -1);
+			}
+
+			for (UndoManagerListener listener : listeners) {
+				listener.lastEditReplaced(lastEdit);
+			}
+
+			return true;
+
+		}
+
+		int count = edits.size();
+		trimmedEditCount = 0;
+
+		if (super.addEdit(edit)) {
+
+			lastEditTime = time;
+			if (sizeLimit >= 0) {
+				updateEstimatedSize(edit, count - trimmedEditCount);
+			}
+
+			for (UndoManagerListener listener : listeners) {
+				listener.editAdded(edit);
+			}
+
+			return true;
+
+		} else {
+			return false;
+		}
+
+	}
+
+	// Called for edits which are removed because of the limit or because they were undone before a new edit was added
+	@Override
+	protected void trimEdits(int from, int to) {
+		for (int i = from; i <= to; i++) {
+			forgetEdit(edits.get(i));
+		}
+		trimmedEditCount += Math.max(to - from + 1, 0);
+		super.trimEdits(from, to);
 	}
 
 	@Override
 	public void undo() throws CannotUndoException {
+
+		if (confined) {
+			checkConfinement();
+			drainPendingEdits();
+			restoreSpilledEditsForUndo();
+		} else {
+			synchronized (this) {
+				restoreSpilledEditsForUndo();
+			}
+		}
+
 		super.undo();
 
 		for (UndoManagerListener listener : listeners) {
@@ -62,6 +336,17 @@ public class DefaultUndoManager extends UndoManager implements IUndoManager {
 
 	@Override
 	public void redo() throws CannotRedoException {
+
+		if (confined) {
+			checkConfinement();
+			drainPendingEdits();
+			restoreSpilledEditsForRedo();
+		} else {
+			synchronized (this) {
+				restoreSpilledEditsForRedo();
+			}
+		}
+
 		super.redo();
 
 		for (UndoManagerListener listener : listeners) {
@@ -70,6 +355,298 @@ public class DefaultUndoManager extends UndoManager implements IUndoManager {
 
 	}
 
+	@Override
+	public synchronized void discardAllEdits() {
+
+		super.discardAllEdits();
+		pendingEdits.clear();
+
+		editSizes.clear();
+		spilledEdits.clear();
+		freeSpace.clear();
+		estimatedSize = 0;
+
+		if (spillData != null) {
+			try {
+				spillData.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			spillData = null;
+			spillFile.delete();
+			spillFile = null;
+		}
+
+		for (UndoManagerListener listener : listeners) {
+			listener.editsDiscarded();
+		}
+
+	}
+
+	// Only the edits which are undone by the next undo are restored (from the edit to be undone up to the edit to be redone)
+	private void restoreSpilledEditsForUndo() {
+		UndoableEdit edit = editToBeUndone();
+		if (edit != null) {
+			UndoableEdit next = editToBeRedone();
+			int from = edits.lastIndexOf(edit);
+			int to = next != null ? edits.lastIndexOf(next) - 1 : edits.size() - 1;
+			try {
+				restoreSpilledEdits(from, to);
+			} catch (IOException | ClassNotFoundException e) {
+				e.printStackTrace();
+				throw new CannotUndoException();
+			}
+			spillEdits(from, to);
+		}
+	}
+
+	// Only the edits which are redone by the next redo are restored (from the edit to be undone up to the edit to be redone)
+	private void restoreSpilledEditsForRedo() {
+		UndoableEdit edit = editToBeRedone();
+		if (edit != null) {
+			UndoableEdit previous = editToBeUndone();
+			int from = previous != null ? edits.lastIndexOf(previous) + 1 : 0;
+			int to = edits.lastIndexOf(edit);
+			try {
+				restoreSpilledEdits(from, to);
+			} catch (IOException | ClassNotFoundException e) {
+				e.printStackTrace();
+				throw new CannotRedoException();
+			}
+			spillEdits(from, to);
+		}
+	}
+
+	// Keeps the estimated size up to date after an edit was added, count is the number of edits which weren't trimmed
+	private void updateEstimatedSize(UndoableEdit edit, int count) {
+
+		if (edits.size() == count + 1 && edits.lastElement() == edit) {
+			updateEditSize(edit);
+		} else if (edits.size() == count && edits.lastElement() != edit) {
+			// The edit was absorbed by the last edit (see UndoableEdit.addEdit())
+			updateEditSize(edits.lastElement());
+		} else {
+			// The last edit was replaced (see UndoableEdit.replaceEdit()), this is rare so all sizes are estimated again
+			recalculateEstimatedSize();
+		}
+
+		spillEdits(-1, -1);
+
+	}
+
+	private void recalculateEstimatedSize() {
+
+		Set<UndoableEdit> currentEdits = Collections.newSetFromMap(new IdentityHashMap<>());
+		currentEdits.addAll(edits);
+
+		Iterator<Map.Entry<UndoableEdit, long[]>> iterator = spilledEdits.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<UndoableEdit, long[]> entry = iterator.next();
+			if (!currentEdits.contains(entry.getKey())) {
+				iterator.remove();
+				freeRecord(entry.getValue());
+			}
+		}
+
+		editSizes.clear();
+		estimatedSize = 0;
+
+		if (sizeLimit >= 0) {
+			for (UndoableEdit edit : edits) {
+				updateEditSize(edit);
+			}
+		}
+
+	}
+
+	private void updateEditSize(UndoableEdit edit) {
+		long size = estimateEditSize(edit);
+		Long previousSize = editSizes.put(edit, size);
+		estimatedSize += previousSize != null ? size - previousSize : size;
+	}
+
+	private void forgetEdit(UndoableEdit edit) {
+
+		Long size = editSizes.remove(edit);
+		if (size != null) {
+			estimatedSize -= size;
+		}
+
+		long[] record = spilledEdits.remove(edit);
+		if (record != null) {
+			freeRecord(record);
+		}
+
+	}
+
+	// Spills the oldest edits until the estimated size is within the limit, the last edit and the
+	// edits from/to (which are about to be undone or redone) are kept in memory
+	private void spillEdits(int from, int to) {
+		for (int i = 0; sizeLimit >= 0 && estimatedSize > sizeLimit && i < edits.size() - 1; i++) {
+
+			UndoableEdit edit = edits.get(i);
+			if ((i < from || i > to) && edit instanceof Spillable && !spilledEdits.containsKey(edit) && spill(edit)) {
+				updateEditSize(edit);
+			}
+
+		}
+	}
+
+	private boolean spill(UndoableEdit edit) {
+
+		Serializable state = ((Spillable) edit).spill();
+		if (state == null) {
+			return false;
+		}
+
+		try {
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeObject(state);
+			}
+
+			if (spillData == null) {
+				spillFile = File.createTempFile("undo", ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+				spillFile.deleteOnExit();
+				spillData = new RandomAccessFile(spillFile, "rw"); //$NON-NLS-1$
+			}
+
+			long offset = allocateRecord(bytes.size());
+			spillData.seek(offset);
+			spillData.write(bytes.toByteArray());
+
+			spilledEdits.put(edit, new long[] { offset, bytes.size() });
+
+			return true;
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			((Spillable) edit).restore(state);
+			return false;
+		}
+
+	}
+
+	private void restoreSpilledEdits(int from, int to) throws IOException, ClassNotFoundException {
+
+		for (int i = Math.max(from, 0); i <= to && i < edits.size(); i++) {
+
+			UndoableEdit edit = edits.get(i);
+			long[] record = spilledEdits.remove(edit);
+			if (record != null) {
+
+				byte[] bytes = new byte[(int) record[1]];
+				spillData.seek(record[0]);
+				spillData.readFully(bytes);
+
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+					((Spillable) edit).restore((Serializable) in.readObject());
+				}
+
+				freeRecord(record);
+				if (sizeLimit >= 0) {
+					updateEditSize(edit);
+				}
+
+			}
+
+		}
+
+	}
+
+	// Returns the offset of the first free range in the spill file which fits the length, or the end of the file
+	private long allocateRecord(long length) throws IOException {
+
+		for (Map.Entry<Long, Long> entry : freeSpace.entrySet()) {
+
+			long offset = entry.getKey();
+			long freeLength = entry.getValue();
+			if (freeLength >= length) {
+
+				freeSpace.remove(offset);
+				if (freeLength > length) {
+					freeSpace.put(offset + length, freeLength - length);
+				}
+
+				return offset;
+
+			}
+
+		}
+
+		return spillData.length();
+
+	}
+
+	// Adds the record of a restored or removed edit to the free space, adjacent free ranges are merged and
+	// free space at the end of the file is truncated, so the spill file doesn't grow beyond the spilled state
+	private void freeRecord(long[] record) {
+
+		long offset = record[0];
+		long length = record[1];
+
+		Map.Entry<Long, Long> previous = freeSpace.lowerEntry(offset);
+		if (previous != null && previous.getKey() + previous.getValue() == offset) {
+			freeSpace.remove(previous.getKey());
+			offset = previous.getKey();
+			length += previous.getValue();
+		}
+
+		Long nextLength = freeSpace.remove(offset + length);
+		if (nextLength != null) {
+			length += nextLength;
+		}
+
+		try {
+			if (spilledEdits.isEmpty()) {
+				freeSpace.clear();
+				spillData.setLength(0);
+			} else if (offset + length >= spillData.length()) {
+				spillData.setLength(offset);
+			} else {
+				freeSpace.put(offset, length);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			freeSpace.put(offset, length);
+		}
+
+	}
+
+	protected long estimateEditSize(UndoableEdit edit) {
+		return edit instanceof SizeEstimable ? ((SizeEstimable) edit).getEstimatedSize() : DEFAULT_EDIT_SIZE;
+	}
+
+	// Rough estimate of the memory retained by a value of an edit
+	public static long estimateSize(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof CharSequence) {
+			return 40 + 2L * ((CharSequence) value).length();
+		} else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+			return 16;
+		} else if (value instanceof Date) {
+			return 24;
+		} else if (value instanceof byte[]) {
+			return 16 + ((byte[]) value).length;
+		} else if (value instanceof Object[]) {
+			long size = 16;
+			for (Object element : (Object[]) value) {
+				size += 8 + estimateSize(element);
+			}
+			return size;
+		} else if (value instanceof Collection) {
+			long size = 32;
+			for (Object element : (Collection<?>) value) {
+				size += 8 + estimateSize(element);
+			}
+			return size;
+		} else {
+			return DEFAULT_OBJECT_SIZE;
+		}
+	}
+
 	@Override
 	public void addListener(UndoManagerListener listener) {
 		listeners.add(listener);
@@ -80,6 +657,150 @@ public class DefaultUndoManager extends UndoManager implements IUndoManager {
 		listeners.remove(listener);
 	}
 
+	public static interface Batchable {
+
+		// Called before and after a group of edits is undone or redone, so the changes can be applied (and fired) at once
+		public void beginBatch();
+
+		public void endBatch();
+
+	}
+
+	public static interface BatchUndoable {
+
+		public Collection<? extends Batchable> getBatchTargets();
+
+	}
+
+	public static interface SizeEstimable {
+
+		public long getEstimatedSize();
+
+	}
+
+	public static interface Coalescible {
+
+		// Returns true if the edit (added within the coalesce window) was merged into this edit
+		public boolean coalesce(UndoableEdit edit);
+
+	}
+
+	public static interface Spillable extends SizeEstimable {
+
+		// Returns the state which can be written to disk and releases it, or null if the edit can't be spilled
+		public Serializable spill();
+
+		// Called with the state returned by spill() before the edit is undone or redone
+		public void restore(Serializable state);
+
+	}
+
+	public static class Transaction extends CompoundEdit implements SizeEstimable {
+
+		private final String name;
+		private boolean undone = false;
+
+		public Transaction(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<UndoableEdit> getEdits() {
+			return Collections.unmodifiableList(edits);
+		}
+
+		// Used for transactions which are restored (see UndoJournal) in the undone state, without undoing the edits
+		void setUndone() {
+			undone = true;
+		}
+
+		@Override
+		public boolean canUndo() {
+			return !undone && super.canUndo();
+		}
+
+		@Override
+		public boolean canRedo() {
+			return (undone && !isInProgress()) || super.canRedo();
+		}
+
+		@Override
+		public String getPresentationName() {
+			return name != null ? name : super.getPresentationName();
+		}
+
+		@Override
+		public String getUndoPresentationName() {
+			return name != null ? UIManager.getString("AbstractUndoableEdit.undoText") + " " + name : super.getUndoPresentationName(); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		@Override
+		public String getRedoPresentationName() {
+			return name != null ? UIManager.getString("AbstractUndoableEdit.redoText") + " " + name : super.getRedoPresentationName(); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			Collection<Batchable> targets = getBatchTargets();
+			beginBatch(targets);
+			try {
+				super.undo();
+			} finally {
+				endBatch(targets);
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			Collection<Batchable> targets = getBatchTargets();
+			beginBatch(targets);
+			try {
+				super.redo();
+				undone = false;
+			} finally {
+				endBatch(targets);
+			}
+		}
+
+		private Collection<Batchable> getBatchTargets() {
+
+			Set<Batchable> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (UndoableEdit edit : edits) {
+				if (edit instanceof BatchUndoable) {
+					targets.addAll(((BatchUndoable) edit).getBatchTargets());
+				}
+			}
+
+			return targets;
+
+		}
+
+		private static void beginBatch(Collection<Batchable> targets) {
+			for (Batchable target : targets) {
+				target.beginBatch();
+			}
+		}
+
+		private static void endBatch(Collection<Batchable> targets) {
+			for (Batchable target : targets) {
+				target.endBatch();
+			}
+		}
+
+		@Override
+		public long getEstimatedSize() {
+			long size = DEFAULT_OBJECT_SIZE;
+			for (UndoableEdit edit : edits) {
+				size += edit instanceof SizeEstimable ? ((SizeEstimable) edit).getEstimatedSize() : DEFAULT_EDIT_SIZE;
+			}
+			return size;
+		}
+
+	}
+
 	public static interface UndoManagerListener {
 
 		public void editAdded(UndoableEdit edit);
@@ -88,6 +809,15 @@ public class DefaultUndoManager extends UndoManager implements IUndoManager {
 
 		public void redoPerformed();
 
+		// Called instead of editAdded() when the added edit was merged into the last edit (see Coalescible)
+		public default void lastEditReplaced(UndoableEdit edit) {
+
+		}
+
+		public default void editsDiscarded() {
+
+		}
+
 	}
 
 }
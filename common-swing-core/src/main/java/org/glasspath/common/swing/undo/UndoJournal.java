@@ -0,0 +1,772 @@
+/*
+ * This file is part of Glasspath Common.
+ * Copyright (C) 2011 - 2022 Remco Poelstra
+ * Authors: Remco Poelstra
+ * 
+ * This program is offered under a commercial and under the AGPL license.
+ * For commercial licensing, contact us at https://glasspath.org. For AGPL licensing, see below.
+ * 
+ * AGPL licensing:
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.glasspath.common.swing.undo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.swing.undo.UndoableEdit;
+
+import org.glasspath.common.swing.undo.DefaultUndoManager.Transaction;
+import org.glasspath.common.swing.undo.DefaultUndoManager.UndoManagerListener;
+
+/**
+ * Appends the edits, undos and redos of a {@link DefaultUndoManager} to a file, so the history can be restored after a crash. Records are
+ * encoded on the calling thread and written (and synced) in groups by a background thread, the file is compacted when it grows.
+ */
+public class UndoJournal implements UndoManagerListener {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+	public static final long DEFAULT_COMPACT_SIZE = 1024 * 1024;
+
+	private static final byte ADD = 1;
+	private static final byte UNDO = 2;
+	private static final byte REDO = 3;
+	private static final byte DISCARD = 4;
+	private static final byte CHECKPOINT = 5;
+	private static final byte REPLACE = 6;
+	private static final byte[] CLOSE = new byte[0];
+
+	private static final String TRANSACTION_TYPE = "transaction"; //$NON-NLS-1$
+
+	private static final byte NULL_VALUE = 0;
+	private static final byte STRING_VALUE = 1;
+	private static final byte INTEGER_VALUE = 2;
+	private static final byte LONG_VALUE = 3;
+	private static final byte DOUBLE_VALUE = 4;
+	private static final byte FLOAT_VALUE = 5;
+	private static final byte BOOLEAN_VALUE = 6;
+	private static final byte DATE_VALUE = 7;
+	private static final byte BIG_DECIMAL_VALUE = 8;
+	private static final byte SERIALIZABLE_VALUE = 9;
+
+	private final File file;
+	private final Map<String, EditCodec> codecs = new LinkedHashMap<>();
+	private final BlockingQueue<byte[]> queue;
+	private long compactSize = DEFAULT_COMPACT_SIZE;
+	private volatile int limit = 0;
+	private volatile boolean recordsLost = false;
+	private DefaultUndoManager undoManager = null;
+	private Thread writerThread = null;
+
+	// Only accessed by the writer thread
+	private final History history = new History();
+	private FileOutputStream fileOut = null;
+	private DataOutputStream out = null;
+	private long fileSize = 0;
+	private long compactedSize = 0;
+
+	public UndoJournal(File file) {
+		this(file, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public UndoJournal(File file, int queueCapacity) {
+		this.file = file;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void addCodec(EditCodec codec) {
+		codecs.put(codec.getType(), codec);
+	}
+
+	public long getCompactSize() {
+		return compactSize;
+	}
+
+	// The file is rewritten with only the current history when it grows beyond this size (and twice the size of the last compaction)
+	public void setCompactSize(long compactSize) {
+		this.compactSize = compactSize;
+	}
+
+	public boolean isRecordsLost() {
+		return recordsLost;
+	}
+
+	// Reads the history of a previous session, should be called before the journal is started (which truncates the file)
+	public Session readSession() throws IOException {
+
+		if (!file.exists()) {
+			return null;
+		}
+
+		History history = new History();
+		long length = file.length();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+			while (true) {
+
+				byte[] record;
+				try {
+
+					int recordLength = in.readInt();
+					if (recordLength <= 0 || recordLength > length) {
+						break;
+					}
+
+					record = new byte[recordLength];
+					in.readFully(record);
+
+				} catch (EOFException e) {
+					break; // The last record wasn't written completely
+				}
+
+				history.apply(record, 0);
+
+			}
+
+		}
+
+		List<UndoableEdit> edits = new ArrayList<>();
+		for (byte[] record : history.edits) {
+			edits.add(decodeEdit(new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1))));
+		}
+
+		return new Session(edits, history.cursor, history.checkpoint);
+
+	}
+
+	public synchronized void start(DefaultUndoManager undoManager) throws IOException {
+
+		if (writerThread != null) {
+			throw new IllegalStateException("Journal already started"); //$NON-NLS-1$
+		}
+
+		openFile(false);
+
+		this.undoManager = undoManager;
+		limit = undoManager.getLimit();
+		undoManager.addListener(this);
+
+		writerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				write();
+			}
+		}, "UndoJournal"); //$NON-NLS-1$
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+	}
+
+	// Writes the remaining records and stops the writer thread
+	public void close() {
+
+		Thread thread;
+		synchronized (this) {
+
+			if (writerThread == null) {
+				return;
+			}
+
+			undoManager.removeListener(this);
+			undoManager = null;
+
+			thread = writerThread;
+			writerThread = null;
+
+		}
+
+		try {
+			queue.put(CLOSE);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	// Should be called when the content is opened or saved, a session can only be restored from the last checkpoint
+	public synchronized void checkpoint() {
+
+		// When records were lost the history is discarded, from here on the journal is complete again
+		if (recordsLost && offer(new byte[] { DISCARD })) {
+			recordsLost = false;
+		}
+
+		enqueue(new byte[] { CHECKPOINT });
+
+	}
+
+	@Override
+	public void editAdded(UndoableEdit edit) {
+		enqueueEdit(ADD, edit);
+	}
+
+	// The last edit absorbed a new edit, it's record is replaced by the merged edit
+	@Override
+	public void lastEditReplaced(UndoableEdit edit) {
+		enqueueEdit(REPLACE, edit);
+	}
+
+	private void enqueueEdit(byte kind, UndoableEdit edit) {
+
+		byte[] record = null;
+		try {
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream recordOut = new DataOutputStream(bytes);
+			recordOut.writeByte(kind);
+			if (encodeEdit(edit, recordOut)) {
+				record = bytes.toByteArray();
+			}
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// Edits which can't be encoded discard the history, so it's never restored without them
+		enqueue(record != null ? record : new byte[] { DISCARD });
+
+	}
+
+	@Override
+	public void undoPerformed() {
+		enqueue(new byte[] { UNDO });
+	}
+
+	@Override
+	public void redoPerformed() {
+		enqueue(new byte[] { REDO });
+	}
+
+	@Override
+	public void editsDiscarded() {
+		enqueue(new byte[] { DISCARD });
+	}
+
+	private synchronized void enqueue(byte[] record) {
+
+		// Never blocks the calling thread, when the queue is full the records are dropped until the next checkpoint
+		if (!recordsLost && !offer(record)) {
+			recordsLost = true;
+		}
+
+	}
+
+	private boolean offer(byte[] record) {
+		return writerThread != null && queue.offer(record);
+	}
+
+	private boolean encodeEdit(UndoableEdit edit, DataOutputStream out) throws IOException {
+
+		if (edit instanceof Transaction) {
+
+			Transaction transaction = (Transaction) edit;
+			List<UndoableEdit> edits = transaction.getEdits();
+
+			out.writeUTF(TRANSACTION_TYPE);
+			out.writeBoolean(transaction.getName() != null);
+			if (transaction.getName() != null) {
+				out.writeUTF(transaction.getName());
+			}
+			out.writeInt(edits.size());
+
+			for (UndoableEdit transactionEdit : edits) {
+				if (!encodeEdit(transactionEdit, out)) {
+					return false;
+				}
+			}
+
+			return true;
+
+		} else {
+
+			for (EditCodec codec : codecs.values()) {
+				if (codec.accepts(edit)) {
+					out.writeUTF(codec.getType());
+					codec.write(edit, out);
+					return true;
+				}
+			}
+
+			return false;
+
+		}
+
+	}
+
+	private UndoableEdit decodeEdit(DataInputStream in) throws IOException {
+
+		String type = in.readUTF();
+
+		if (TRANSACTION_TYPE.equals(type)) {
+
+			Transaction transaction = new Transaction(in.readBoolean() ? in.readUTF() : null);
+
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				transaction.addEdit(decodeEdit(in));
+			}
+			transaction.end();
+
+			return transaction;
+
+		} else {
+
+			EditCodec codec = codecs.get(type);
+			if (codec == null) {
+				throw new IOException("No codec for edit type: " + type); //$NON-NLS-1$
+			}
+
+			return codec.read(in);
+
+		}
+
+	}
+
+	private void write() {
+
+		List<byte[]> records = new ArrayList<>();
+		boolean closing = false;
+
+		try {
+
+			while (!closing) {
+
+				// All records which are queued while writing are written and synced as one group
+				records.add(queue.take());
+				queue.drainTo(records);
+
+				for (byte[] record : records) {
+					if (record == CLOSE) {
+						closing = true;
+					} else {
+						history.apply(record, limit);
+						writeRecord(out, record);
+						fileSize += 4 + record.length;
+					}
+				}
+				records.clear();
+
+				out.flush();
+				fileOut.getChannel().force(false);
+
+				if (fileSize > compactSize && fileSize > 2 * compactedSize) {
+					compact();
+				}
+
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			e.printStackTrace();
+			recordsLost = true;
+		} finally {
+			closeFile();
+		}
+
+	}
+
+	private void compact() throws IOException {
+
+		File compactFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		long size = 0;
+
+		try (FileOutputStream compactFileOut = new FileOutputStream(compactFile)) {
+
+			DataOutputStream compactOut = new DataOutputStream(new BufferedOutputStream(compactFileOut));
+			for (byte[] record : history.getRecords()) {
+				writeRecord(compactOut, record);
+				size += 4 + record.length;
+			}
+
+			compactOut.flush();
+			compactFileOut.getChannel().force(false);
+
+		}
+
+		closeFile();
+		Files.move(compactFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		openFile(true);
+
+		fileSize = size;
+		compactedSize = size;
+
+	}
+
+	private void openFile(boolean append) throws IOException {
+		fileOut = new FileOutputStream(file, append);
+		out = new DataOutputStream(new BufferedOutputStream(fileOut));
+		if (!append) {
+			fileSize = 0;
+			compactedSize = 0;
+		}
+	}
+
+	private void closeFile() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			out = null;
+			fileOut = null;
+		}
+	}
+
+	private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+		out.writeInt(record.length);
+		out.write(record);
+	}
+
+	// Returns true for the immutable value types which are written without serialization, a copy
+	// which is read back can be used instead of the original value because identity doesn't matter
+	public static boolean isValueType(Object value) {
+		return value == null || value instanceof CharSequence || value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Float
+				|| value instanceof Boolean || value.getClass() == Date.class || value instanceof BigDecimal;
+	}
+
+	public static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL_VALUE);
+		} else if (value instanceof CharSequence) {
+			out.writeByte(STRING_VALUE);
+			writeString(out, value.toString());
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER_VALUE);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG_VALUE);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE_VALUE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT_VALUE);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN_VALUE);
+			out.writeBoolean((Boolean) value);
+		} else if (value.getClass() == Date.class) {
+			out.writeByte(DATE_VALUE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(BIG_DECIMAL_VALUE);
+			out.writeUTF(value.toString());
+		} else if (value instanceof Serializable) {
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+				objectOut.writeObject(value);
+			}
+
+			out.writeByte(SERIALIZABLE_VALUE);
+			out.writeInt(bytes.size());
+			out.write(bytes.toByteArray());
+
+		} else {
+			throw new IOException("Value can't be written: " + value.getClass().getName()); //$NON-NLS-1$
+		}
+	}
+
+	public static Object readValue(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case NULL_VALUE:
+			return null;
+		case STRING_VALUE:
+			return readString(in);
+		case INTEGER_VALUE:
+			return in.readInt();
+		case LONG_VALUE:
+			return in.readLong();
+		case DOUBLE_VALUE:
+			return in.readDouble();
+		case FLOAT_VALUE:
+			return in.readFloat();
+		case BOOLEAN_VALUE:
+			return in.readBoolean();
+		case DATE_VALUE:
+			return new Date(in.readLong());
+		case BIG_DECIMAL_VALUE:
+			return new BigDecimal(in.readUTF());
+		case SERIALIZABLE_VALUE:
+
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+
+			try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+				return objectIn.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+
+		default:
+			throw new IOException("Unknown value type: " + type); //$NON-NLS-1$
+		}
+	}
+
+	// writeUTF() is limited to 64K, large texts are written as chars
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeInt(value.length());
+		out.writeChars(value);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		char[] chars = new char[in.readInt()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+
+	// Restored transactions are marked as undone, so they can be redone without undoing the edits first
+	private static void setUndone(UndoableEdit edit) {
+		if (edit instanceof Transaction) {
+			((Transaction) edit).setUndone();
+			for (UndoableEdit transactionEdit : ((Transaction) edit).getEdits()) {
+				setUndone(transactionEdit);
+			}
+		}
+	}
+
+	public static interface EditCodec {
+
+		// Identifies the edits of this codec in the journal, so it should be the same in every session
+		public String getType();
+
+		public boolean accepts(UndoableEdit edit);
+
+		public void write(UndoableEdit edit, DataOutput out) throws IOException;
+
+		public UndoableEdit read(DataInput in) throws IOException;
+
+	}
+
+	public static class Session {
+
+		private final List<UndoableEdit> edits;
+		private final int indexOfNextAdd;
+		private final int checkpoint;
+
+		private Session(List<UndoableEdit> edits, int indexOfNextAdd, int checkpoint) {
+			this.edits = edits;
+			this.indexOfNextAdd = indexOfNextAdd;
+			this.checkpoint = checkpoint;
+		}
+
+		public List<UndoableEdit> getEdits() {
+			return Collections.unmodifiableList(edits);
+		}
+
+		public int getIndexOfNextAdd() {
+			return indexOfNextAdd;
+		}
+
+		// Index of the edits in the state of the content when it was last opened or saved, or -1 if unknown
+		public int getCheckpoint() {
+			return checkpoint;
+		}
+
+		public boolean canRestore() {
+			return checkpoint >= 0;
+		}
+
+		public boolean hasChanges() {
+			return canRestore() && checkpoint != indexOfNextAdd;
+		}
+
+		// The content should be in the state of the last checkpoint (as it was saved), the edits after the checkpoint are redone
+		// and the history is added to the undo manager, the journal (which may be null) should be started before restoring
+		public void restore(DefaultUndoManager undoManager, UndoJournal journal) {
+
+			if (!canRestore()) {
+				throw new IllegalStateException("Session has no checkpoint"); //$NON-NLS-1$
+			}
+
+			long coalesceWindow = undoManager.getCoalesceWindow();
+			undoManager.setCoalesceWindow(0);
+
+			try {
+
+				for (int i = 0; i < checkpoint; i++) {
+					undoManager.addEdit(edits.get(i));
+				}
+
+				if (journal != null) {
+					journal.checkpoint();
+				}
+
+				for (int i = checkpoint; i < edits.size(); i++) {
+					UndoableEdit edit = edits.get(i);
+					setUndone(edit);
+					edit.redo();
+					undoManager.addEdit(edit);
+				}
+
+				for (int i = edits.size(); i > indexOfNextAdd; i--) {
+					undoManager.undo();
+				}
+
+			} finally {
+				undoManager.setCoalesceWindow(coalesceWindow);
+			}
+
+		}
+
+	}
+
+	// The history as it's rebuilt from the records, edits are kept in their encoded form
+	private static class History {
+
+		private final List<byte[]> edits = new ArrayList<>();
+		private int cursor = 0;
+		private int checkpoint = -1;
+
+		private void apply(byte[] record, int limit) {
+
+			switch (record[0]) {
+
+			case ADD:
+
+				edits.subList(cursor, edits.size()).clear();
+				if (checkpoint > cursor) {
+					checkpoint = -1;
+				}
+
+				edits.add(record);
+				cursor++;
+
+				if (limit > 0 && edits.size() > limit) {
+					edits.remove(0);
+					cursor--;
+					checkpoint = checkpoint > 0 ? checkpoint - 1 : -1;
+				}
+
+				break;
+
+			case REPLACE:
+
+				// Only the last edit can be replaced, when the checkpoint is right after it the
+				// saved content doesn't contain the merged change, so it can't be restored anymore
+				if (cursor > 0 && cursor == edits.size()) {
+
+					byte[] edit = record.clone();
+					edit[0] = ADD;
+					edits.set(cursor - 1, edit);
+
+					if (checkpoint == cursor) {
+						checkpoint = -1;
+					}
+
+				} else {
+					discard();
+				}
+
+				break;
+
+			case UNDO:
+				if (cursor > 0) {
+					cursor--;
+				} else {
+					discard(); // An edit which isn't in the journal was undone
+				}
+				break;
+
+			case REDO:
+				if (cursor < edits.size()) {
+					cursor++;
+				} else {
+					discard();
+				}
+				break;
+
+			case DISCARD:
+				discard();
+				break;
+
+			case CHECKPOINT:
+				checkpoint = cursor;
+				break;
+
+			default:
+				break;
+
+			}
+
+		}
+
+		private void discard() {
+			edits.clear();
+			cursor = 0;
+			checkpoint = -1;
+		}
+
+		// The records which rebuild the current history
+		private List<byte[]> getRecords() {
+
+			List<byte[]> records = new ArrayList<>();
+
+			for (int i = 0; i <= edits.size(); i++) {
+				if (i == checkpoint) {
+					records.add(new byte[] { CHECKPOINT });
+				}
+				if (i < edits.size()) {
+					records.add(edits.get(i));
+				}
+			}
+
+			for (int i = edits.size(); i > cursor; i--) {
+				records.add(new byte[] { UNDO });
+			}
+
+			return records;
+
+		}
+
+	}
+
+}
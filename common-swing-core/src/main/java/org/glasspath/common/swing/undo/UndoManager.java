@@ -24,10 +24,12 @@ package org.glasspath.common.swing.undo;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEdit;
@@ -39,9 +41,14 @@ import org.glasspath.common.swing.ContentListener;
 
 public class UndoManager extends DefaultUndoManager {
 
+	public static final int DEFAULT_LIMIT = 1000;
+	public static final long DEFAULT_SIZE_LIMIT = 16 * 1024 * 1024;
+	public static final long DEFAULT_COALESCE_WINDOW = 500;
+
 	private final ApplicationContext context;
 	private AbstractAction undoAction;
 	private AbstractAction redoAction;
+	private final AtomicBoolean updateScheduled = new AtomicBoolean(false);
 
 	public UndoManager(ApplicationContext context) {
 
@@ -61,7 +68,10 @@ public class UndoManager extends DefaultUndoManager {
 			}
 		});
 
-		setLimit(50); // TODO: Make limit configurable in preferences dialog
+		// The history is limited by the estimated size of the edits, the state of older edits is spilled to disk
+		setLimit(DEFAULT_LIMIT); // TODO: Make limit configurable in preferences dialog
+		setSizeLimit(DEFAULT_SIZE_LIMIT);
+		setCoalesceWindow(DEFAULT_COALESCE_WINDOW);
 
 		undoAction = new AbstractAction() {
 
@@ -117,30 +127,54 @@ public class UndoManager extends DefaultUndoManager {
 
 	}
 
+	// The actions and the content changed state are updated once per event-dispatch turn, instead of for every edit
+	private void scheduleUpdate() {
+
+		if (updateScheduled.compareAndSet(false, true)) {
+
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+
+					updateScheduled.set(false);
+
+					updateActions();
+					context.setContentChanged(true);
+
+				}
+			});
+
+		}
+
+	}
+
+	// While a transaction is open the edits are added to the transaction instead of the history
 	public UndoableEdit getNextUndoableEdit() {
-		return editToBeUndone();
+		if (isInTransaction()) {
+			return getLastTransactionEdit();
+		} else {
+			return editToBeUndone();
+		}
 	}
 
 	@Override
-	public synchronized boolean addEdit(UndoableEdit anEdit) {
+	public boolean addEdit(UndoableEdit anEdit) {
 		boolean result = super.addEdit(anEdit);
-		updateActions();
-		context.setContentChanged(true);
+		scheduleUpdate();
 		return result;
 	}
 
 	@Override
-	public synchronized void undo() throws CannotUndoException {
+	public void undo() throws CannotUndoException {
 		super.undo();
-		updateActions();
-		context.setContentChanged(true);
+		scheduleUpdate();
 	}
 
 	@Override
-	public synchronized void redo() throws CannotRedoException {
+	public void redo() throws CannotRedoException {
 		super.redo();
-		updateActions();
-		context.setContentChanged(true);
+		scheduleUpdate();
 	}
 
 }